@@ -19,6 +19,14 @@ import edu.wpi.first.wpilibj.DriverStation.Alliance;
 import edu.wpi.first.wpilibj.PowerDistribution;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.util.AllocationMeter;
+import frc.robot.util.AsyncLogReceiver;
+import frc.robot.util.DecimatingReceiver;
+import frc.robot.util.FieldLayout;
+import frc.robot.util.LogKey;
+import frc.robot.util.LoggingPolicy;
+import frc.robot.util.LoggingPolicy.Tier;
+import frc.robot.util.LoopProfiler;
 import org.littletonrobotics.junction.LogFileUtil;
 import org.littletonrobotics.junction.LoggedRobot;
 import org.littletonrobotics.junction.Logger;
@@ -37,10 +45,20 @@ import org.littletonrobotics.junction.wpilog.WPILOGWriter;
  * Logging" by 6328.
  */
 public class Robot extends LoggedRobot {
+  private static final LogKey LOG_WRITER_LOG_KEY = LogKey.of("Logging/FileWriter");
+  private static final LoopProfiler.Section LOOP_SECTION = LoopProfiler.section("Robot.loopFunc()");
+  private static final LoopProfiler.Section LOGGER_SECTION =
+      LoopProfiler.section("Logger.periodicBeforeUser()");
+  private static final LoopProfiler.Section SCHEDULER_SECTION =
+      LoopProfiler.section("CommandScheduler.run()");
+
   private Command m_autonomousCommand;
 
   private RobotContainer m_robotContainer;
 
+  /** The log file writer, or null when replaying. */
+  private AsyncLogReceiver logWriter = null;
+
   public static Mode currentMode;
 
   /** An enum representing which mode the robot is in. */
@@ -62,6 +80,8 @@ public class Robot extends LoggedRobot {
   @Override
   @SuppressWarnings("all")
   public void robotInit() {
+    // Parse the AprilTag layout in the background while the logger and subsystems start up.
+    FieldLayout.preload();
     Logger.recordMetadata("Git Branch", BuildConstants.GIT_BRANCH);
     Logger.recordMetadata("Git Commit Date", BuildConstants.GIT_DATE);
     Logger.recordMetadata("Git SHA", BuildConstants.GIT_SHA);
@@ -78,13 +98,19 @@ public class Robot extends LoggedRobot {
     // GONE PRACTICALLY INSTANTLY IF YOU DONT.
     switch (currentMode) {
       case REAL -> {
-        Logger.addDataReceiver(new WPILOGWriter());
-        Logger.addDataReceiver(new NT4Publisher());
+        logWriter = createLogWriter();
+        Logger.addDataReceiver(logWriter);
+        Logger.addDataReceiver(
+            new DecimatingReceiver(
+                new NT4Publisher(), createLoggingPolicy().setDecimateInputs(true)));
         new PowerDistribution(1, PowerDistribution.ModuleType.kRev);
       }
       case SIM -> {
-        Logger.addDataReceiver(new WPILOGWriter());
-        Logger.addDataReceiver(new NT4Publisher());
+        logWriter = createLogWriter();
+        Logger.addDataReceiver(logWriter);
+        Logger.addDataReceiver(
+            new DecimatingReceiver(
+                new NT4Publisher(), createLoggingPolicy().setDecimateInputs(true)));
       }
       case REPLAY -> {
         setUseTiming(false);
@@ -101,6 +127,62 @@ public class Robot extends LoggedRobot {
     // and put our
     // autonomous chooser on the dashboard.
     m_robotContainer = new RobotContainer();
+    LoopProfiler.startCommandTiming();
+  }
+
+  /** Runs one loop, timing it and the part of the logger that runs before it. */
+  @Override
+  protected void loopFunc() {
+    LoopProfiler.startLoop();
+    if (currentMode != Mode.REPLAY) {
+      // The cycle's timestamp is taken as the logger starts its periodic work, so the time since
+      // then is how long the logger took before handing over to the robot code
+      LOGGER_SECTION.recordDuration((Logger.getRealTimestamp() - Logger.getTimestamp()) * 1000);
+    }
+    long startNanos = System.nanoTime();
+    super.loopFunc();
+    LOOP_SECTION.record(startNanos);
+    LoopProfiler.endLoop();
+  }
+
+  /**
+   * Creates the log file writer. It runs on its own thread, writes diagnostic outputs at their
+   * policy's rate, and leaves them out entirely if it falls behind.
+   */
+  private static AsyncLogReceiver createLogWriter() {
+    LoggingPolicy policy = createLoggingPolicy();
+    return new AsyncLogReceiver(new DecimatingReceiver(new WPILOGWriter(), policy), policy);
+  }
+
+  /**
+   * Creates the policy for how often each key is logged. Untagged keys are logged every loop.
+   *
+   * <p>Inputs are only thinned out where the policy allows it, which should never be the log file,
+   * since log replay needs every input from every loop.
+   */
+  private static LoggingPolicy createLoggingPolicy() {
+    return new LoggingPolicy()
+        // Setpoints
+        .tag("RealOutputs/SwerveStates", Tier.CONTROL)
+        .tag("RealOutputs/Odometry/TrajectorySetpoint", Tier.CONTROL)
+        // Tuning outputs
+        .tag("RealOutputs/SwerveSubsystem", Tier.DIAGNOSTIC)
+        .tag("RealOutputs/Shooter/autoAim", Tier.DIAGNOSTIC)
+        // Timing and allocation benchmarks
+        .tag("RealOutputs/Allocations", Tier.DIAGNOSTIC)
+        .tag("RealOutputs/Logging", Tier.DIAGNOSTIC)
+        .tag("RealOutputs/Odometry/PhoenixThread", Tier.DIAGNOSTIC)
+        .tag("RealOutputs/Odometry/SparkThread", Tier.DIAGNOSTIC)
+        .tag("RealOutputs/Odometry/Estimator", Tier.DIAGNOSTIC)
+        .tag("RealOutputs/Odometry/*AllocatedBytes", Tier.DIAGNOSTIC)
+        .tag("RealOutputs/Odometry/SnapshotAgeMs", Tier.DIAGNOSTIC)
+        .tag("RealOutputs/VisionPoseEstimator", Tier.DIAGNOSTIC)
+        // Inputs, where allowed
+        .tag("Drive/* Module/*Amps", Tier.DIAGNOSTIC)
+        .tag("Drive/* Module/*Volts", Tier.DIAGNOSTIC)
+        .tag("Shooter/*/*Amps", Tier.DIAGNOSTIC)
+        .tag("Shooter/*/*Volts", Tier.DIAGNOSTIC)
+        .tag("VisionPoseEstimator/*/TrackedTags", Tier.DIAGNOSTIC);
   }
 
   /**
@@ -119,7 +201,18 @@ public class Robot extends LoggedRobot {
     // and running subsystem periodic() methods. This must be called from the
     // robot's periodic
     // block in order for anything in the Command-based framework to work.
+    long startBytes = AllocationMeter.getAllocatedBytes();
+    long startNanos = System.nanoTime();
     CommandScheduler.getInstance().run();
+    SCHEDULER_SECTION.record(startNanos);
+    if (AllocationMeter.isSupported()) {
+      // Heap allocated by every subsystem and command this loop, to compare changes against in sim
+      Logger.recordOutput(
+          "Allocations/MainLoopBytes", AllocationMeter.getAllocatedBytes() - startBytes);
+    }
+    if (logWriter != null) {
+      logWriter.logMetrics(LOG_WRITER_LOG_KEY);
+    }
   }
 
   /** This function is called once each time the robot enters Disabled mode. */
@@ -76,13 +76,16 @@ public class RobotContainer {
         // light = new LightSubsystem(new LightsIOBlinkin());
         break;
       case SIM:
+        ModuleIOSim[] simModules = {
+          new ModuleIOSim(), new ModuleIOSim(), new ModuleIOSim(), new ModuleIOSim()
+        };
         drivebase =
             new SwerveSubsystem(
-                new GyroIO() {},
-                new ModuleIOSim(),
-                new ModuleIOSim(),
-                new ModuleIOSim(),
-                new ModuleIOSim());
+                new GyroIOSim(simModules),
+                simModules[0],
+                simModules[1],
+                simModules[2],
+                simModules[3]);
         shooter =
             new Shooter(
                 new FeederIO() {},
@@ -114,7 +117,8 @@ public class RobotContainer {
     }
     NamedCommands.registerCommand(
         "Score in speaker",
-        shooter.getAutoSpeakerShotCommand(() -> drivebase.getPose().getTranslation()));
+        shooter.getAutoSpeakerShotCommand(
+            () -> drivebase.getPredictedPose(Shooter.AIM_LOOKAHEAD_SECS).getTranslation()));
     NamedCommands.registerCommand("Aim from subwoofer", shooter.getSubwooferShotCommand());
     NamedCommands.registerCommand("Aim from podium", shooter.getPodiumShotCommand());
     NamedCommands.registerCommand("Score note (already aimed)", shooter.shootDuringAuto());
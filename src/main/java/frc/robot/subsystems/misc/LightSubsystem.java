@@ -18,12 +18,15 @@ import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.subsystems.misc.interfaceLayers.LightsIO;
 import frc.robot.subsystems.misc.interfaceLayers.LightsIOInputsAutoLogged;
+import frc.robot.util.LoopProfiler;
 import java.util.function.BooleanSupplier;
 import org.littletonrobotics.junction.Logger;
 
 public class LightSubsystem extends SubsystemBase {
   LightsIO io;
   LightsIOInputsAutoLogged inputs = new LightsIOInputsAutoLogged();
+  private final LoopProfiler.Section periodicSection =
+      LoopProfiler.section(getName() + ".periodic()");
 
   public LightSubsystem(LightsIO io) {
     this.io = io;
@@ -31,9 +34,11 @@ public class LightSubsystem extends SubsystemBase {
 
   @Override
   public void periodic() {
+    long startNanos = System.nanoTime();
     io.setColorFromState(currentState);
     io.updateInputs(inputs);
     Logger.processInputs("Misc/lights", inputs);
+    periodicSection.record(startNanos);
   }
 
   public enum LightState {
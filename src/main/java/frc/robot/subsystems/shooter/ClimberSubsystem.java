@@ -20,12 +20,15 @@ import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.subsystems.shooter.interfaceLayers.ClimberIO;
 import frc.robot.subsystems.shooter.interfaceLayers.ClimberIOInputsAutoLogged;
+import frc.robot.util.LoopProfiler;
 import java.util.function.DoubleSupplier;
 import org.littletonrobotics.junction.Logger;
 
 public class ClimberSubsystem extends SubsystemBase {
   private final ClimberIO io;
   private ClimberIOInputsAutoLogged inputs = new ClimberIOInputsAutoLogged();
+  private final LoopProfiler.Section periodicSection =
+      LoopProfiler.section(getName() + ".periodic()");
 
   public ClimberSubsystem(ClimberIO io) {
     this.io = io;
@@ -33,8 +36,10 @@ public class ClimberSubsystem extends SubsystemBase {
 
   @Override
   public void periodic() {
+    long startNanos = System.nanoTime();
     io.updateInputs(inputs);
     Logger.processInputs("Shooter/climber", inputs);
+    periodicSection.record(startNanos);
   }
 
   public Command getClimberRaiseCommand() {
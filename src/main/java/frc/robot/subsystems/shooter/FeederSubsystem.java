@@ -18,11 +18,14 @@ import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.subsystems.shooter.interfaceLayers.FeederIO;
 import frc.robot.subsystems.shooter.interfaceLayers.FeederIOInputsAutoLogged;
+import frc.robot.util.LoopProfiler;
 import org.littletonrobotics.junction.Logger;
 
 public class FeederSubsystem extends SubsystemBase {
   private FeederIO io;
   private FeederIOInputsAutoLogged inputs = new FeederIOInputsAutoLogged();
+  private final LoopProfiler.Section periodicSection =
+      LoopProfiler.section(getName() + ".periodic()");
 
   public FeederSubsystem(FeederIO io) {
     this.io = io;
@@ -30,8 +33,10 @@ public class FeederSubsystem extends SubsystemBase {
 
   @Override
   public void periodic() {
+    long startNanos = System.nanoTime();
     io.updateInputs(inputs);
     Logger.processInputs("Shooter/feeder", inputs);
+    periodicSection.record(startNanos);
   }
 
   public Command getFeedCommand() {
@@ -14,18 +14,19 @@
 
 package frc.robot.subsystems.shooter;
 
-import static edu.wpi.first.units.Units.RPM;
-
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.subsystems.shooter.interfaceLayers.FlywheelIO;
 import frc.robot.subsystems.shooter.interfaceLayers.FlywheelIOInputsAutoLogged;
+import frc.robot.util.LoopProfiler;
 import org.littletonrobotics.junction.AutoLogOutput;
 import org.littletonrobotics.junction.Logger;
 
 public class FlywheelSubsystem extends SubsystemBase {
   private final FlywheelIO io;
   private FlywheelIOInputsAutoLogged inputs = new FlywheelIOInputsAutoLogged();
+  private final LoopProfiler.Section periodicSection =
+      LoopProfiler.section(getName() + ".periodic()");
 
   public FlywheelSubsystem(FlywheelIO io) {
     this.io = io;
@@ -33,8 +34,10 @@ public class FlywheelSubsystem extends SubsystemBase {
 
   @Override
   public void periodic() {
+    long startNanos = System.nanoTime();
     io.updateInputs(inputs);
     Logger.processInputs("Shooter/flywheel", inputs);
+    periodicSection.record(startNanos);
   }
 
   /**
@@ -59,13 +62,13 @@ public class FlywheelSubsystem extends SubsystemBase {
 
   @AutoLogOutput
   public boolean isUpToSpeed() {
-    if (inputs.topVelocitySetpoint.in(RPM) == 0 || inputs.bottomVelocitySetpoint.in(RPM) == 0) {
+    if (inputs.topVelocitySetpointRPM == 0 || inputs.bottomVelocitySetpointRPM == 0) {
       return false;
     }
 
-    return atSetpoint(inputs.topVelocity.in(RPM), inputs.topVelocitySetpoint.in(RPM))
-        && atSetpoint(inputs.bottomVelocity.in(RPM), inputs.bottomVelocitySetpoint.in(RPM))
-        && atSetpoint(inputs.guideVelocity.in(RPM), inputs.guideWheelSetpoint.in(RPM));
+    return atSetpoint(inputs.topVelocityRPM, inputs.topVelocitySetpointRPM)
+        && atSetpoint(inputs.bottomVelocityRPM, inputs.bottomVelocitySetpointRPM)
+        && atSetpoint(inputs.guideVelocityRPM, inputs.guideWheelSetpointRPM);
   }
 
   private boolean atSetpoint(double velocity, double setpoint) {
@@ -18,11 +18,14 @@ import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.subsystems.shooter.interfaceLayers.IntakeIO;
 import frc.robot.subsystems.shooter.interfaceLayers.IntakeIOInputsAutoLogged;
+import frc.robot.util.LoopProfiler;
 import org.littletonrobotics.junction.Logger;
 
 public class IntakeSubsystem extends SubsystemBase {
   private final IntakeIO io;
   private IntakeIOInputsAutoLogged inputs = new IntakeIOInputsAutoLogged();
+  private final LoopProfiler.Section periodicSection =
+      LoopProfiler.section(getName() + ".periodic()");
 
   public IntakeSubsystem(IntakeIO io) {
     this.io = io;
@@ -30,8 +33,10 @@ public class IntakeSubsystem extends SubsystemBase {
 
   @Override
   public void periodic() {
+    long startNanos = System.nanoTime();
     io.updateInputs(inputs);
     Logger.processInputs("Shooter/intake", inputs);
+    periodicSection.record(startNanos);
   }
 
   public Command getIntakeCommand() {
@@ -17,11 +17,14 @@ package frc.robot.subsystems.shooter;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.subsystems.shooter.interfaceLayers.NoteDetectorIO;
 import frc.robot.subsystems.shooter.interfaceLayers.NoteDetectorIOInputsAutoLogged;
+import frc.robot.util.LoopProfiler;
 import org.littletonrobotics.junction.Logger;
 
 public class NoteDetectorSubsystem extends SubsystemBase {
   private final NoteDetectorIO io;
   private NoteDetectorIOInputsAutoLogged inputs = new NoteDetectorIOInputsAutoLogged();
+  private final LoopProfiler.Section periodicSection =
+      LoopProfiler.section(getName() + ".periodic()");
 
   public NoteDetectorSubsystem(NoteDetectorIO io) {
     this.io = io;
@@ -29,8 +32,10 @@ public class NoteDetectorSubsystem extends SubsystemBase {
 
   @Override
   public void periodic() {
+    long startNanos = System.nanoTime();
     io.updateInputs(inputs);
     Logger.processInputs("Shooter/noteDetector", inputs);
+    periodicSection.record(startNanos);
   }
 
   public boolean hasNoteInShooter() {
@@ -21,6 +21,7 @@ import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.subsystems.shooter.interfaceLayers.PivotIO;
 import frc.robot.subsystems.shooter.interfaceLayers.PivotIOInputsAutoLogged;
+import frc.robot.util.LoopProfiler;
 import java.util.function.DoubleSupplier;
 import java.util.function.Supplier;
 import org.littletonrobotics.junction.AutoLogOutput;
@@ -29,6 +30,8 @@ import org.littletonrobotics.junction.Logger;
 public class PivotSubsystem extends SubsystemBase {
   private final PivotIO io;
   private PivotIOInputsAutoLogged inputs = new PivotIOInputsAutoLogged();
+  private final LoopProfiler.Section periodicSection =
+      LoopProfiler.section(getName() + ".periodic()");
 
   public PivotSubsystem(PivotIO io) {
     this.io = io;
@@ -36,8 +39,10 @@ public class PivotSubsystem extends SubsystemBase {
 
   @Override
   public void periodic() {
+    long startNanos = System.nanoTime();
     io.updateInputs(inputs);
     Logger.processInputs("Shooter/pivot", inputs);
+    periodicSection.record(startNanos);
   }
 
   /**
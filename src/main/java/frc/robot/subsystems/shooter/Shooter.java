@@ -40,6 +40,19 @@ import org.littletonrobotics.junction.Logger;
 
 /** A class containing all the logic and commands to make the shooter mechanism work. */
 public class Shooter {
+  /**
+   * How far ahead to predict the robot's position when auto-aiming, to account for the aim being
+   * applied a loop after it's calculated.
+   *
+   * <ul>
+   *   <li><b>Units:</b>
+   *       <ul>
+   *         <li>Seconds
+   *       </ul>
+   * </ul>
+   */
+  public static final double AIM_LOOKAHEAD_SECS = 0.02;
+
   private final FlywheelSubsystem flywheel;
   private final PivotSubsystem pivot;
   private final NoteDetectorSubsystem noteDetector;
@@ -191,7 +204,8 @@ public class Shooter {
   public Command getTeleopAutoAimCommand(
       SwerveSubsystem drivebase, DoubleSupplier xVel, DoubleSupplier yVel) {
     return parallel(
-        getAutoSpeakerShotCommand(() -> drivebase.getPose().getTranslation()),
+        getAutoSpeakerShotCommand(
+            () -> drivebase.getPredictedPose(AIM_LOOKAHEAD_SECS).getTranslation()),
         getSpeakerYawCommand(drivebase, xVel, yVel));
     // Michael was here));
   }
@@ -221,7 +235,7 @@ public class Shooter {
         yVel,
         () ->
             aimAtPosition(
-                drivebase.getPose().getTranslation(),
+                drivebase.getPredictedPose(AIM_LOOKAHEAD_SECS).getTranslation(),
                 new Translation2d(Robot.isOnRed() ? Field.FIELD_LENGTH.in(Meters) : 0, speakerY)));
   }
 
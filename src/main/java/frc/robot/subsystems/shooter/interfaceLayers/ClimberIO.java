@@ -14,8 +14,6 @@
 
 package frc.robot.subsystems.shooter.interfaceLayers;
 
-import static edu.wpi.first.units.Units.*;
-
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.units.*;
 import org.littletonrobotics.junction.AutoLog;
@@ -25,13 +23,13 @@ public interface ClimberIO {
   public class ClimberIOInputs {
     public Rotation2d leftAngle = new Rotation2d();
     public Rotation2d rightAngle = new Rotation2d();
-    public Measure<Velocity<Angle>> angularVelocity = RadiansPerSecond.of(0);
-    public Measure<Voltage> leftAppliedVoltage = Volts.of(0);
-    public Measure<Current> leftAppliedCurrent = Amps.of(0);
-    public Measure<Voltage> rightAppliedVoltage = Volts.of(0);
-    public Measure<Current> rightAppliedCurrent = Amps.of(0);
-    public Measure<Velocity<Angle>> leftVelocity = DegreesPerSecond.of(0);
-    public Measure<Velocity<Angle>> rightVelocity = DegreesPerSecond.of(0);
+    public double angularVelocityRadPerSec = 0;
+    public double leftAppliedVolts = 0;
+    public double leftAppliedAmps = 0;
+    public double rightAppliedVolts = 0;
+    public double rightAppliedAmps = 0;
+    public double leftVelocityRotationsPerSec = 0;
+    public double rightVelocityRotationsPerSec = 0;
   }
 
   public default void updateInputs(ClimberIOInputs inputs) {}
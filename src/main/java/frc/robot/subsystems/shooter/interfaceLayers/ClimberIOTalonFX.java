@@ -86,14 +86,14 @@ public class ClimberIOTalonFX implements ClimberIO {
         leftPosition,
         rightPosition);
 
-    inputs.leftAppliedVoltage = Volts.of(leftVoltage.getValueAsDouble());
-    inputs.rightAppliedVoltage = Volts.of(rightVoltage.getValueAsDouble());
-    inputs.leftAppliedCurrent = Amps.of(leftCurrent.getValueAsDouble());
-    inputs.rightAppliedCurrent = Amps.of(rightCurrent.getValueAsDouble());
+    inputs.leftAppliedVolts = leftVoltage.getValueAsDouble();
+    inputs.rightAppliedVolts = rightVoltage.getValueAsDouble();
+    inputs.leftAppliedAmps = leftCurrent.getValueAsDouble();
+    inputs.rightAppliedAmps = rightCurrent.getValueAsDouble();
     inputs.leftAngle = Rotation2d.fromRotations(leftPosition.getValueAsDouble());
     inputs.rightAngle = Rotation2d.fromRotations(rightPosition.getValueAsDouble());
-    inputs.leftVelocity = RotationsPerSecond.of(leftVelocity.getValueAsDouble());
-    inputs.rightVelocity = RotationsPerSecond.of(rightVelocity.getValueAsDouble());
+    inputs.leftVelocityRotationsPerSec = leftVelocity.getValueAsDouble();
+    inputs.rightVelocityRotationsPerSec = rightVelocity.getValueAsDouble();
   }
 
   @Override
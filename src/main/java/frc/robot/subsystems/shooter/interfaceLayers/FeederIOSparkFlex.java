@@ -14,8 +14,6 @@
 
 package frc.robot.subsystems.shooter.interfaceLayers;
 
-import static edu.wpi.first.units.Units.*;
-
 import com.revrobotics.CANSparkBase.IdleMode;
 import com.revrobotics.CANSparkFlex;
 import com.revrobotics.CANSparkLowLevel.MotorType;
@@ -51,11 +49,11 @@ public class FeederIOSparkFlex implements FeederIO {
 
   @Override
   public void updateInputs(FeederIOInputs inputs) {
-    inputs.appliedVoltage = Volts.of(motor.getBusVoltage() * motor.get());
-    inputs.appliedCurrent = Amps.of(motor.getOutputCurrent());
+    inputs.appliedVolts = motor.getBusVoltage() * motor.get();
+    inputs.appliedAmps = motor.getOutputCurrent();
     inputs.appliedOutput = motor.get();
-    inputs.position = Rotations.of(encoder.getPosition());
-    inputs.velocity = RPM.of(encoder.getVelocity());
+    inputs.positionRotations = encoder.getPosition();
+    inputs.velocityRPM = encoder.getVelocity();
   }
 
   @Override
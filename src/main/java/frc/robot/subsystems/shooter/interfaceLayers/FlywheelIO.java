@@ -14,47 +14,44 @@
 
 package frc.robot.subsystems.shooter.interfaceLayers;
 
-import static edu.wpi.first.units.Units.*;
-
-import edu.wpi.first.units.*;
 import org.littletonrobotics.junction.AutoLog;
 
 public interface FlywheelIO {
   @AutoLog
   public class FlywheelIOInputs {
-    public Measure<Velocity<Angle>> topVelocitySetpoint = RPM.of(0);
-    public Measure<Velocity<Angle>> bottomVelocitySetpoint = RPM.of(0);
-    public Measure<Velocity<Angle>> guideWheelSetpoint = RPM.of(0);
-    /** The position of the top shooter flywheel. */
-    public Measure<Angle> topPosition = Rotations.of(0);
-    /** The velocity of the top shooter flywheel. */
-    public Measure<Velocity<Angle>> topVelocity = RotationsPerSecond.of(0);
+    public double topVelocitySetpointRPM = 0;
+    public double bottomVelocitySetpointRPM = 0;
+    public double guideWheelSetpointRPM = 0;
+    /** The position of the top shooter flywheel, in rotations. */
+    public double topPositionRotations = 0;
+    /** The velocity of the top shooter flywheel, in RPM. */
+    public double topVelocityRPM = 0;
     /** The total output applied to the top motor by the closed loop control. */
     public double topAppliedOutput = 0;
     /** The voltage applied to the top motor by the motor controller. */
-    public Measure<Voltage> topAppliedVoltage = Volts.of(0);
+    public double topAppliedVolts = 0;
     /** The current applied to the top motor by the motor controller. */
-    public Measure<Current> topAppliedCurrent = Amps.of(0);
-    /** The position of the bottom shooter flywheel. */
-    public Measure<Angle> bottomPosition = Rotations.of(0);
-    /** The velocity of the bottom shooter flywheel. */
-    public Measure<Velocity<Angle>> bottomVelocity = RotationsPerSecond.of(0);
+    public double topAppliedAmps = 0;
+    /** The position of the bottom shooter flywheel, in rotations. */
+    public double bottomPositionRotations = 0;
+    /** The velocity of the bottom shooter flywheel, in RPM. */
+    public double bottomVelocityRPM = 0;
     /** The total output applied to the bottom motor by the closed loop control. */
     public double bottomAppliedOutput = 0;
     /** The voltage applied to the bottom motor by the motor controller. */
-    public Measure<Voltage> bottomAppliedVoltage = Volts.of(0);
+    public double bottomAppliedVolts = 0;
     /** The current applied to the bottom motor by the motor controller. */
-    public Measure<Current> bottomAppliedCurrent = Amps.of(0);
-    /** The position of the shooter guide wheels. */
-    public Measure<Angle> guidePosition = Rotations.of(0);
-    /** The velocity of the shooter guide wheels. */
-    public Measure<Velocity<Angle>> guideVelocity = RotationsPerSecond.of(0);
+    public double bottomAppliedAmps = 0;
+    /** The position of the shooter guide wheels, in rotations. */
+    public double guidePositionRotations = 0;
+    /** The velocity of the shooter guide wheels, in RPM. */
+    public double guideVelocityRPM = 0;
     /** The total output applied to the guide wheel motor by the closed loop control. */
     public double guideAppliedOutput = 0;
     /** The voltage applied to the guide wheel motor by the motor controller. */
-    public Measure<Voltage> guideAppliedVoltage = Volts.of(0);
+    public double guideAppliedVolts = 0;
     /** The current applied to the guide wheel motor by the motor controller. */
-    public Measure<Current> guideAppliedCurrent = Amps.of(0);
+    public double guideAppliedAmps = 0;
   }
 
   /** Updates the set of loggable inputs. */
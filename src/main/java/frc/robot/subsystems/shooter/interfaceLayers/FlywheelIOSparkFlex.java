@@ -14,8 +14,6 @@
 
 package frc.robot.subsystems.shooter.interfaceLayers;
 
-import static edu.wpi.first.units.Units.*;
-
 import com.revrobotics.CANSparkBase.IdleMode;
 import com.revrobotics.CANSparkFlex;
 import com.revrobotics.CANSparkLowLevel.MotorType;
@@ -104,27 +102,24 @@ public class FlywheelIOSparkFlex implements FlywheelIO {
 
   @Override
   public void updateInputs(FlywheelIOInputs inputs) {
-    inputs.topVelocitySetpoint = RPM.of(topSetpointRPM);
-    inputs.bottomVelocitySetpoint = RPM.of(bottomSetpointRPM);
-    inputs.guideWheelSetpoint = RPM.of(guideWheelSetpointRPM);
-    inputs.topPosition = Rotations.of(topFlywheelEncoder.getPosition());
-    inputs.topVelocity = RPM.of(topFlywheelEncoder.getVelocity());
+    inputs.topVelocitySetpointRPM = topSetpointRPM;
+    inputs.bottomVelocitySetpointRPM = bottomSetpointRPM;
+    inputs.guideWheelSetpointRPM = guideWheelSetpointRPM;
+    inputs.topPositionRotations = topFlywheelEncoder.getPosition();
+    inputs.topVelocityRPM = topFlywheelEncoder.getVelocity();
     inputs.topAppliedOutput = topFlywheel.getAppliedOutput();
-    inputs.topAppliedCurrent = Amps.of(topFlywheel.getOutputCurrent());
-    inputs.topAppliedVoltage =
-        Volts.of(topFlywheel.getAppliedOutput() * topFlywheel.getBusVoltage());
-    inputs.bottomPosition = Rotations.of(bottomFlywheelEncoder.getPosition());
-    inputs.bottomVelocity = RPM.of(bottomFlywheelEncoder.getVelocity());
+    inputs.topAppliedAmps = topFlywheel.getOutputCurrent();
+    inputs.topAppliedVolts = topFlywheel.getAppliedOutput() * topFlywheel.getBusVoltage();
+    inputs.bottomPositionRotations = bottomFlywheelEncoder.getPosition();
+    inputs.bottomVelocityRPM = bottomFlywheelEncoder.getVelocity();
     inputs.bottomAppliedOutput = bottomFlywheel.getAppliedOutput();
-    inputs.bottomAppliedCurrent = Amps.of(bottomFlywheel.getOutputCurrent());
-    inputs.bottomAppliedVoltage =
-        Volts.of(bottomFlywheel.getAppliedOutput() * bottomFlywheel.getBusVoltage());
-    inputs.guidePosition = Rotations.of(guideWheelEncoder.getPosition());
-    inputs.guideVelocity = RPM.of(guideWheelEncoder.getVelocity());
+    inputs.bottomAppliedAmps = bottomFlywheel.getOutputCurrent();
+    inputs.bottomAppliedVolts = bottomFlywheel.getAppliedOutput() * bottomFlywheel.getBusVoltage();
+    inputs.guidePositionRotations = guideWheelEncoder.getPosition();
+    inputs.guideVelocityRPM = guideWheelEncoder.getVelocity();
     inputs.guideAppliedOutput = guideWheel.getAppliedOutput();
-    inputs.guideAppliedCurrent = Amps.of(guideWheel.getOutputCurrent());
-    inputs.guideAppliedVoltage =
-        Volts.of(guideWheel.getAppliedOutput() * guideWheel.getBusVoltage());
+    inputs.guideAppliedAmps = guideWheel.getOutputCurrent();
+    inputs.guideAppliedVolts = guideWheel.getAppliedOutput() * guideWheel.getBusVoltage();
   }
 
   @Override
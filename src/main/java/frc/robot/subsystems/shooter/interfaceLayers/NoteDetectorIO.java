@@ -14,9 +14,6 @@
 
 package frc.robot.subsystems.shooter.interfaceLayers;
 
-import static edu.wpi.first.units.Units.Inches;
-
-import edu.wpi.first.units.*;
 import org.littletonrobotics.junction.AutoLog;
 
 public interface NoteDetectorIO {
@@ -24,12 +21,12 @@ public interface NoteDetectorIO {
   public class NoteDetectorIOInputs {
     /** If the detector at the shooter sees a note or not. */
     public boolean hasNoteInShooter = false;
-    /** The distance from an object that the shooter detector has measured. */
-    public Measure<Distance> shooterDetectedDistance = Inches.of(-1);
+    /** The distance from an object that the shooter detector has measured, in millimeters. */
+    public double shooterDetectedDistanceMillimeters = -1;
     /** If the detector at the shooter sees a note or not. */
     public boolean hasNoteInIntake = false;
-    /** The distance from an object that the shooter detector has measured. */
-    public Measure<Distance> intakeDetectedDistance = Inches.of(-1);
+    /** The distance from an object that the shooter detector has measured, in millimeters. */
+    public double intakeDetectedDistanceMillimeters = -1;
   }
 
   /** Updates the set of loggable inputs. */
@@ -23,6 +23,10 @@ import edu.wpi.first.math.filter.LinearFilter;
 import frc.robot.util.CANConstants.Shooter;
 
 public class NoteDetectorIOTimeOfFlight implements NoteDetectorIO {
+  /** The furthest away an object can be detected and still count as a note. */
+  private static final double NOTE_DETECTION_RANGE_MILLIMETERS =
+      Millimeters.convertFrom(15.5, Inches);
+
   private final TimeOfFlight shooterSensor;
   private final TimeOfFlight intakeSensor;
 
@@ -39,16 +43,18 @@ public class NoteDetectorIOTimeOfFlight implements NoteDetectorIO {
   @Override
   public void updateInputs(NoteDetectorIOInputs inputs) {
     if (shooterSensor.isRangeValid()) {
-      inputs.shooterDetectedDistance =
-          Millimeters.of(shooterRangeFilter.calculate(shooterSensor.getRange()));
-      inputs.hasNoteInShooter = inputs.shooterDetectedDistance.lte(Inches.of(15.5));
+      inputs.shooterDetectedDistanceMillimeters =
+          shooterRangeFilter.calculate(shooterSensor.getRange());
+      inputs.hasNoteInShooter =
+          inputs.shooterDetectedDistanceMillimeters <= NOTE_DETECTION_RANGE_MILLIMETERS;
     } else {
       inputs.hasNoteInShooter = false;
     }
     // if (intakeSensor.isRangeValid()) {
-    //   inputs.intakeDetectedDistance =
-    //       Millimeters.of(intakeRangeFilter.calculate(intakeSensor.getRange()));
-    //   inputs.hasNoteInIntake = inputs.intakeDetectedDistance.lte(Inches.of(15.5));
+    //   inputs.intakeDetectedDistanceMillimeters =
+    //       intakeRangeFilter.calculate(intakeSensor.getRange());
+    //   inputs.hasNoteInIntake =
+    //       inputs.intakeDetectedDistanceMillimeters <= NOTE_DETECTION_RANGE_MILLIMETERS;
     // } else {
     //   inputs.hasNoteInIntake = false;
     // }
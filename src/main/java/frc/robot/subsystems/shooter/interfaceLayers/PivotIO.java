@@ -14,8 +14,6 @@
 
 package frc.robot.subsystems.shooter.interfaceLayers;
 
-import static edu.wpi.first.units.Units.*;
-
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.units.*;
 import org.littletonrobotics.junction.AutoLog;
@@ -34,20 +32,20 @@ public interface PivotIO {
     public boolean isTooFarDown = false;
     /** The target angle of the pivot, if under closed loop control. */
     public Rotation2d angleSetpoint = new Rotation2d();
-    /** The velocity of the leader motor. */
-    public Measure<Velocity<Angle>> leaderVelocity = DegreesPerSecond.of(0);
-    /** The velocity of the follower motor. */
-    public Measure<Velocity<Angle>> followerVelocity = DegreesPerSecond.of(0);
-    /** The target velocity of the motors. */
-    public Measure<Velocity<Angle>> velocitySetpoint = DegreesPerSecond.of(0);
+    /** The velocity of the leader motor, in degrees per second. */
+    public double leaderVelocityDegPerSec = 0;
+    /** The velocity of the follower motor, in degrees per second. */
+    public double followerVelocityDegPerSec = 0;
+    /** The target velocity of the motors, in degrees per second. */
+    public double velocitySetpointDegPerSec = 0;
     /** The voltage applied to the motor by the motor controller. */
-    public Measure<Voltage> leaderAppliedVoltage = Volts.of(0);
+    public double leaderAppliedVolts = 0;
     /** The current applied to the motor by the motor controller. */
-    public Measure<Current> leaderAppliedCurrent = Amps.of(0);
+    public double leaderAppliedAmps = 0;
     /** The voltage applied to the motor by the motor controller. */
-    public Measure<Voltage> followerAppliedVoltage = Volts.of(0);
+    public double followerAppliedVolts = 0;
     /** The current applied to the motor by the motor controller. */
-    public Measure<Current> followerAppliedCurrent = Amps.of(0);
+    public double followerAppliedAmps = 0;
   }
 
   /** Updates the set of loggable inputs. */
@@ -98,14 +98,14 @@ public class PivotIOSim implements PivotIO {
       }
     }
 
-    inputs.leaderVelocity = RadiansPerSecond.of(armSim.getVelocityRadPerSec());
-    inputs.followerVelocity = RadiansPerSecond.of(armSim.getVelocityRadPerSec());
-    inputs.velocitySetpoint = velocitySetpoint;
-
-    inputs.leaderAppliedVoltage = appliedVoltage;
-    inputs.followerAppliedVoltage = appliedVoltage;
-    inputs.leaderAppliedCurrent = Amps.of(armSim.getCurrentDrawAmps());
-    inputs.followerAppliedCurrent = Amps.of(armSim.getCurrentDrawAmps());
+    inputs.leaderVelocityDegPerSec = Math.toDegrees(armSim.getVelocityRadPerSec());
+    inputs.followerVelocityDegPerSec = Math.toDegrees(armSim.getVelocityRadPerSec());
+    inputs.velocitySetpointDegPerSec = velocitySetpoint.in(DegreesPerSecond);
+
+    inputs.leaderAppliedVolts = appliedVoltage.in(Volts);
+    inputs.followerAppliedVolts = appliedVoltage.in(Volts);
+    inputs.leaderAppliedAmps = armSim.getCurrentDrawAmps();
+    inputs.followerAppliedAmps = armSim.getCurrentDrawAmps();
   }
 
   @Override
@@ -139,11 +139,11 @@ public class PivotIOSparkFlex implements PivotIO {
             RadiansPerSecond.of(
                 -anglePid.calculate(targetAngle.getRadians(), getAngle().getRadians()));
         inputs.angleSetpoint = targetAngle;
-        inputs.velocitySetpoint = targetVelocity;
+        inputs.velocitySetpointDegPerSec = targetVelocity.in(DegreesPerSecond);
         runMotor(targetVelocity);
       }
       case TARGET_VEL -> {
-        inputs.velocitySetpoint = targetVelocity;
+        inputs.velocitySetpointDegPerSec = targetVelocity.in(DegreesPerSecond);
         runMotor(targetVelocity);
       }
       case OPEN_LOOP -> {
@@ -152,15 +152,15 @@ public class PivotIOSparkFlex implements PivotIO {
       }
     }
 
-    inputs.leaderVelocity = DegreesPerSecond.of(leaderEncoder.getVelocity());
-    inputs.followerVelocity = DegreesPerSecond.of(followerEncoder.getVelocity());
+    inputs.leaderVelocityDegPerSec = leaderEncoder.getVelocity();
+    inputs.followerVelocityDegPerSec = followerEncoder.getVelocity();
 
     // inputs.appliedVoltage = Volts.of(leaderMotor.getBusVoltage() *
     // leaderMotor.get());
-    inputs.leaderAppliedVoltage = Volts.of(leaderSetpoint);
-    inputs.followerAppliedVoltage = Volts.of(followerSetpoint);
-    inputs.leaderAppliedCurrent = Amps.of(leaderMotor.getOutputCurrent());
-    inputs.leaderAppliedCurrent = Amps.of(followerMotor.getOutputCurrent());
+    inputs.leaderAppliedVolts = leaderSetpoint;
+    inputs.followerAppliedVolts = followerSetpoint;
+    inputs.leaderAppliedAmps = leaderMotor.getOutputCurrent();
+    inputs.followerAppliedAmps = followerMotor.getOutputCurrent();
   }
 
   @Override
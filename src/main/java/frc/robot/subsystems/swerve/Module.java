@@ -22,13 +22,15 @@ import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.units.*;
 import frc.robot.subsystems.swerve.interfaceLayers.ModuleIO;
 import frc.robot.subsystems.swerve.interfaceLayers.ModuleIOInputsAutoLogged;
+import frc.robot.util.LogKey;
 import org.littletonrobotics.junction.Logger;
 
 public class Module {
   /**
    * If set above 50 hertz and the motors are made by CTRE, then enables high frequency odometry,
    * allowing the odometry to measure position at a much higher rate, thus improving accuracy. Set
-   * below 50 to disable. Does nothing if the motors are made by REV.
+   * below 50 to disable. Also sets the odometry rate in sim. REV drivebases use {@link
+   * #SPARK_ODOMETRY_FREQUENCY} instead.
    *
    * <p>Setting this too high will cause issues with CAN usage. Not recommended to use if you don't
    * have a CANivore.
@@ -41,6 +43,35 @@ public class Module {
    * </ul>
    */
   public static final double ODOMETRY_FREQUENCY = 50;
+  /**
+   * The high frequency odometry rate of REV drivebases, sampled by the {@link
+   * frc.robot.subsystems.swerve.interfaceLayers.SparkOdometryThread}. Must be between 100 and 250
+   * hertz, as the Spark MAX position status frame can't be sent any faster than every 4 ms and the
+   * RIO CAN bus fills up quickly. Set below 50 to disable.
+   *
+   * <ul>
+   *   <li><b>Units:</b>
+   *       <ul>
+   *         <li>Hertz
+   *       </ul>
+   * </ul>
+   */
+  public static final double SPARK_ODOMETRY_FREQUENCY = 100;
+  /**
+   * The fastest rate odometry samples can arrive at on any drivebase, for sizing buffers of
+   * samples.
+   */
+  public static final double MAX_ODOMETRY_FREQUENCY =
+      Math.max(50, Math.max(ODOMETRY_FREQUENCY, SPARK_ODOMETRY_FREQUENCY));
+  /**
+   * If high frequency odometry samples should be aligned to a common time. Each signal in a sample
+   * is captured at a slightly different time, especially on a RIO bus or without Phoenix Pro. When
+   * this is true, every signal is interpolated onto the oldest capture time in the sample, at the
+   * cost of delaying the newest signals by up to one sample period. When this is false, the values
+   * are used as captured and the sample is stamped with the gyro's capture time, so the module
+   * positions are treated as if they were captured with the gyro even when they weren't.
+   */
+  public static final boolean ALIGN_ODOMETRY_SAMPLES = true;
   // Gear ratios for SDS MK4i L2, adjust as necessary
   /**
    * The gear ratio between the drive motor and the module wheel.
@@ -93,6 +124,8 @@ public class Module {
    * </ul>
    */
   private final int index;
+  /** The key the inputs are logged under, built once since it depends on the index. */
+  private final LogKey logKey;
 
   /**
    * The module's target rotation.
@@ -117,19 +150,6 @@ public class Module {
    */
   private double speedSetpoint = 0;
 
-  /**
-   * The current states of the swerve modules.
-   *
-   * <ul>
-   *   <li><b>Units:</b>
-   *       <ul>
-   *         <li>Azimuth: {@link Rotation2d}
-   *         <li>Driving: Meters per second
-   *       </ul>
-   * </ul>
-   */
-  private SwerveModulePosition[] odometryPositions = new SwerveModulePosition[] {};
-
   /**
    * Constructs a new swerve module.
    *
@@ -148,11 +168,13 @@ public class Module {
   public Module(ModuleIO io, int index) {
     this.io = io;
     this.index = index;
+    logKey = LogKey.of("Drive/" + index + " Module");
   }
 
   /**
-   * Update inputs without running the rest of the periodic logic. This is useful since these
-   * updates need to be properly thread-locked.
+   * Update inputs without running the rest of the periodic logic. This is useful since the gyro and
+   * every module need to read their odometry samples right after they are pulled from the odometry
+   * thread.
    */
   public void updateInputs() {
     io.updateInputs(inputs);
@@ -168,7 +190,7 @@ public class Module {
 
   /** Set the desired positions of the modules every robot tick. */
   public void periodic() {
-    Logger.processInputs("Drive/" + String.valueOf(index) + " Module", inputs);
+    Logger.processInputs(logKey.path(), inputs);
 
     switch (driveMode) {
       case CLOSEDLOOP -> {
@@ -195,15 +217,6 @@ public class Module {
         io.setAzimuthPosition(new Rotation2d());
       }
     }
-
-    // Calculate positions for odometry
-    int sampleCount = inputs.odometryTimestamps.length; // All signals are sampled together
-    odometryPositions = new SwerveModulePosition[sampleCount];
-    for (int i = 0; i < sampleCount; i++) {
-      double positionMeters = inputs.odometryDrivePositionsMeters[i];
-      Rotation2d angle = inputs.odometryAzimuthPositions[i];
-      odometryPositions[i] = new SwerveModulePosition(positionMeters, angle);
-    }
   }
 
   /** Runs the module with the specified setpoint state. Returns the optimized state. */
@@ -242,27 +255,42 @@ public class Module {
 
   /** Returns the current drive position of the module. */
   public Measure<Distance> getDrivePosition() {
-    return inputs.drivePosition;
+    return Meters.of(inputs.drivePositionMeters);
+  }
+
+  /** Returns the current drive position of the module, in meters. Doesn't allocate. */
+  public double getDrivePositionMeters() {
+    return inputs.drivePositionMeters;
   }
 
   /** Returns the current drive velocity of the module. */
   public Measure<Velocity<Distance>> getVelocity() {
-    return inputs.driveVelocity;
+    return MetersPerSecond.of(inputs.driveVelocityMetersPerSec);
+  }
+
+  /** Returns the current drive velocity of the module, in meters per second. Doesn't allocate. */
+  public double getVelocityMetersPerSec() {
+    return inputs.driveVelocityMetersPerSec;
   }
 
   /** Returns the module position (azimuth and drive position). */
   public SwerveModulePosition getModulePosition() {
-    return new SwerveModulePosition(getDrivePosition(), getAngle());
+    return new SwerveModulePosition(inputs.drivePositionMeters, getAngle());
   }
 
   /** Returns the module state (azimuth and drive velocity). */
   public SwerveModuleState getState() {
-    return new SwerveModuleState(getVelocity(), getAngle());
+    return new SwerveModuleState(inputs.driveVelocityMetersPerSec, getAngle());
+  }
+
+  /** Returns the drive positions of the samples received this cycle, in meters. */
+  public double[] getOdometryDrivePositionsMeters() {
+    return inputs.odometryDrivePositionsMeters;
   }
 
-  /** Returns the module positions received this cycle. */
-  public SwerveModulePosition[] getOdometryPositions() {
-    return odometryPositions;
+  /** Returns the azimuths of the samples received this cycle, in radians. */
+  public double[] getOdometryAzimuthPositionsRad() {
+    return inputs.odometryAzimuthPositionsRad;
   }
 
   /** Returns the timestamps of the samples received this cycle. */
@@ -0,0 +1,221 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.subsystems.swerve;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import java.util.Optional;
+
+/**
+ * A fixed-capacity history of the robot's pose and velocity, for looking up where the robot was at
+ * a past timestamp.
+ *
+ * <p>Samples are stored in a ring of primitive arrays, so adding a sample never allocates. Samples
+ * arrive at a nearly constant rate, so {@link #getPoseAt(double)} guesses the index of a timestamp
+ * from the average sample period and then walks at most a few entries to correct the guess, which
+ * makes lookups constant time in practice.
+ *
+ * <p>Not thread safe. Only use it from the main loop.
+ */
+public class PoseHistory {
+  /** How far into the future a pose can be extrapolated from the newest sample. */
+  public static final double MAX_EXTRAPOLATION_SECS = 0.25;
+
+  private final double[] timestamps;
+  private final double[] xMeters;
+  private final double[] yMeters;
+  private final double[] thetaRadians;
+  /** Field-relative X velocity, in meters per second. */
+  private final double[] vxMetersPerSec;
+  /** Field-relative Y velocity, in meters per second. */
+  private final double[] vyMetersPerSec;
+  private final double[] omegaRadiansPerSec;
+
+  /** The number of samples ever added. Sample {@code n} lives at index {@code n % capacity}. */
+  private long sampleCount = 0;
+  /** The running average time between samples, used to guess indices. */
+  private double averagePeriodSecs = 0;
+  /** Scratch space for {@link #getPoseAt(double)}. */
+  private final double[] lookupScratch = new double[3];
+
+  /**
+   * Constructs a new pose history.
+   *
+   * @param capacity The number of samples to keep.
+   */
+  public PoseHistory(int capacity) {
+    timestamps = new double[capacity];
+    xMeters = new double[capacity];
+    yMeters = new double[capacity];
+    thetaRadians = new double[capacity];
+    vxMetersPerSec = new double[capacity];
+    vyMetersPerSec = new double[capacity];
+    omegaRadiansPerSec = new double[capacity];
+  }
+
+  /**
+   * Adds a sample. Samples must be added in time order. A sample older than the newest one is
+   * ignored.
+   *
+   * @param timestamp The time of the sample, in seconds.
+   * @param pose The pose of the robot.
+   * @param vxMetersPerSec The field-relative X velocity of the robot.
+   * @param vyMetersPerSec The field-relative Y velocity of the robot.
+   * @param omegaRadiansPerSec The angular velocity of the robot, CCW+.
+   */
+  public void add(
+      double timestamp,
+      Pose2d pose,
+      double vxMetersPerSec,
+      double vyMetersPerSec,
+      double omegaRadiansPerSec) {
+    add(
+        timestamp,
+        pose.getX(),
+        pose.getY(),
+        pose.getRotation().getRadians(),
+        vxMetersPerSec,
+        vyMetersPerSec,
+        omegaRadiansPerSec);
+  }
+
+  /**
+   * Adds a sample without needing a {@link Pose2d}. See {@link #add(double, Pose2d, double, double,
+   * double)}.
+   */
+  public void add(
+      double timestamp,
+      double xMeters,
+      double yMeters,
+      double thetaRadians,
+      double vxMetersPerSec,
+      double vyMetersPerSec,
+      double omegaRadiansPerSec) {
+    if (sampleCount > 0) {
+      double period = timestamp - timestamps[index(sampleCount - 1)];
+      if (period < 0) {
+        return;
+      }
+      averagePeriodSecs =
+          averagePeriodSecs == 0 ? period : averagePeriodSecs * 0.95 + period * 0.05;
+    }
+    int i = index(sampleCount);
+    timestamps[i] = timestamp;
+    this.xMeters[i] = xMeters;
+    this.yMeters[i] = yMeters;
+    this.thetaRadians[i] = thetaRadians;
+    this.vxMetersPerSec[i] = vxMetersPerSec;
+    this.vyMetersPerSec[i] = vyMetersPerSec;
+    this.omegaRadiansPerSec[i] = omegaRadiansPerSec;
+    sampleCount++;
+  }
+
+  /** Removes every sample, such as after the pose is reset. */
+  public void clear() {
+    sampleCount = 0;
+    averagePeriodSecs = 0;
+  }
+
+  /** Returns the timestamp of the oldest sample still kept, or NaN if there are none. */
+  public double getOldestTimestamp() {
+    return sampleCount == 0 ? Double.NaN : timestamps[index(firstSample())];
+  }
+
+  /** Returns the timestamp of the newest sample, or NaN if there are none. */
+  public double getNewestTimestamp() {
+    return sampleCount == 0 ? Double.NaN : timestamps[index(sampleCount - 1)];
+  }
+
+  /**
+   * Returns the pose of the robot at a timestamp.
+   *
+   * <p>Between samples, the pose is linearly interpolated. Past the newest sample, it is
+   * extrapolated from the newest sample's velocity, up to {@link #MAX_EXTRAPOLATION_SECS}.
+   *
+   * @param timestamp The timestamp, in seconds.
+   * @return The pose, or empty if the timestamp is older than the history or too far in the future.
+   */
+  public Optional<Pose2d> getPoseAt(double timestamp) {
+    if (!getPoseAt(timestamp, lookupScratch)) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        new Pose2d(lookupScratch[0], lookupScratch[1], new Rotation2d(lookupScratch[2])));
+  }
+
+  /**
+   * Looks up the pose of the robot at a timestamp without allocating. See {@link
+   * #getPoseAt(double)}.
+   *
+   * @param timestamp The timestamp, in seconds.
+   * @param poseOut Filled in with the X, Y, and heading of the pose, in meters and radians.
+   * @return If the pose could be found. If false, {@code poseOut} is left unchanged.
+   */
+  public boolean getPoseAt(double timestamp, double[] poseOut) {
+    if (sampleCount == 0) {
+      return false;
+    }
+    long newest = sampleCount - 1;
+    int newestIndex = index(newest);
+    if (timestamp >= timestamps[newestIndex]) {
+      double dt = timestamp - timestamps[newestIndex];
+      if (dt > MAX_EXTRAPOLATION_SECS) {
+        return false;
+      }
+      poseOut[0] = xMeters[newestIndex] + vxMetersPerSec[newestIndex] * dt;
+      poseOut[1] = yMeters[newestIndex] + vyMetersPerSec[newestIndex] * dt;
+      poseOut[2] = thetaRadians[newestIndex] + omegaRadiansPerSec[newestIndex] * dt;
+      return true;
+    }
+    long oldest = firstSample();
+    if (timestamp < timestamps[index(oldest)]) {
+      return false;
+    }
+
+    // Guess the sample just before the timestamp, then walk to the right one
+    long before = newest;
+    if (averagePeriodSecs > 0) {
+      long stepsBack = (long) Math.ceil((timestamps[newestIndex] - timestamp) / averagePeriodSecs);
+      before = Math.max(oldest, newest - stepsBack);
+    }
+    while (before > oldest && timestamps[index(before)] > timestamp) {
+      before--;
+    }
+    while (before < newest - 1 && timestamps[index(before + 1)] <= timestamp) {
+      before++;
+    }
+
+    int a = index(before);
+    int b = index(before + 1);
+    double span = timestamps[b] - timestamps[a];
+    double t = span > 0 ? (timestamp - timestamps[a]) / span : 0;
+    double thetaDelta = MathUtil.angleModulus(thetaRadians[b] - thetaRadians[a]);
+    poseOut[0] = MathUtil.interpolate(xMeters[a], xMeters[b], t);
+    poseOut[1] = MathUtil.interpolate(yMeters[a], yMeters[b], t);
+    poseOut[2] = thetaRadians[a] + thetaDelta * t;
+    return true;
+  }
+
+  /** Returns the number of the oldest sample still kept. */
+  private long firstSample() {
+    return Math.max(0, sampleCount - timestamps.length);
+  }
+
+  /** Returns the ring index of a sample number. */
+  private int index(long sample) {
+    return (int) (sample % timestamps.length);
+  }
+}
@@ -0,0 +1,57 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.subsystems.swerve;
+
+import edu.wpi.first.math.geometry.Pose2d;
+
+/**
+ * The robot's estimated pose and velocity at one instant. Immutable, so it can be handed between
+ * threads freely.
+ */
+public final class PoseSnapshot {
+  /** The estimated pose of the robot on the field. */
+  public final Pose2d pose;
+  /** The X velocity of the robot, relative to the robot, in meters per second. */
+  public final double vxMetersPerSecond;
+  /** The Y velocity of the robot, relative to the robot, in meters per second. */
+  public final double vyMetersPerSecond;
+  /** The angular velocity of the robot, in radians per second. */
+  public final double omegaRadiansPerSecond;
+  /**
+   * The time the pose was measured, in the same timebase as {@link
+   * org.littletonrobotics.junction.Logger#getRealTimestamp()}.
+   *
+   * <ul>
+   *   <li><b>Units:</b>
+   *       <ul>
+   *         <li>Seconds
+   *       </ul>
+   * </ul>
+   */
+  public final double timestamp;
+
+  public PoseSnapshot(
+      Pose2d pose,
+      double vxMetersPerSecond,
+      double vyMetersPerSecond,
+      double omegaRadiansPerSecond,
+      double timestamp) {
+    this.pose = pose;
+    this.vxMetersPerSecond = vxMetersPerSecond;
+    this.vyMetersPerSecond = vyMetersPerSecond;
+    this.omegaRadiansPerSecond = omegaRadiansPerSecond;
+    this.timestamp = timestamp;
+  }
+}
@@ -0,0 +1,412 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.subsystems.swerve;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import frc.robot.util.LogKey;
+import org.ejml.simple.SimpleMatrix;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * A swerve drive pose estimator that fuses odometry with vision measurements, using a fixed amount
+ * of memory. Has the same update and vision methods as WPILib's {@code SwerveDrivePoseEstimator}.
+ *
+ * <p>Odometry is dead-reckoned from the module positions and the gyro, and every odometry pose is
+ * kept in a bounded {@link PoseHistory}. The estimate is the odometry pose moved by a correction
+ * transform. When a vision measurement arrives, the estimate at the time it was captured is looked
+ * up from the history and corrected with a Kalman gain. The correction transform is then solved so
+ * that the corrected pose lines up with the odometry pose at that time, which carries the
+ * correction forward to the present in one step. WPILib's estimator replays every odometry update
+ * since the measurement instead, allocating as it goes.
+ *
+ * <p>The state is three independent values, X, Y and heading, so the Kalman gain has a closed form
+ * per value: {@code q / (q + sqrt(q * r))}, where q is the odometry variance and r is the vision
+ * variance. This is the same gain WPILib uses.
+ *
+ * <p>Measurements are corrected against the current correction transform, so a late measurement
+ * doesn't undo corrections made by newer ones the way a full replay would. With timestamps only a
+ * few tens of milliseconds apart, the difference is negligible. See {@link
+ * SwervePoseEstimatorBenchmark} for the speed and accuracy of both estimators.
+ */
+public class SwervePoseEstimator {
+  /** How far back odometry is kept. Vision measurements older than this are ignored. */
+  public static final double HISTORY_SECS = 1.5;
+
+  /** Solves the chassis motion from the module motion, as a 3x8 row-major matrix. */
+  private final double[] forwardKinematics;
+  /** The odometry variance of X, Y and heading. */
+  private final double[] stateVariances = new double[3];
+  /** The Kalman gain for the default vision trust. */
+  private final double[] defaultVisionGains = new double[3];
+  /** Scratch space for gains from a measurement with its own trust. */
+  private final double[] visionGains = new double[3];
+  /** The odometry pose at every update. */
+  private final PoseHistory odometryHistory;
+  /** Scratch space for looking up odometry poses. */
+  private final double[] odometryAtCapture = new double[3];
+  /** The capture time of the newest vision measurement applied since the last reset. */
+  private double newestVisionTimestamp = Double.NEGATIVE_INFINITY;
+
+  /** The module drive positions at the last update, in meters. */
+  private final double[] lastDistancesMeters;
+  /** Scratch space for unpacking module positions. */
+  private final double[] sampleDistancesMeters;
+  /** Scratch space for unpacking module positions. */
+  private final double[] sampleAnglesRadians;
+  /** The gyro angle at the last update, in radians. */
+  private double lastGyroRadians;
+  /** Added to the gyro angle to get the odometry heading, in radians. */
+  private double gyroOffsetRadians;
+
+  /** The dead-reckoned odometry pose. */
+  private double odometryX;
+  private double odometryY;
+  private double odometryTheta;
+
+  /** The correction transform from the odometry pose to the estimated pose. */
+  private double correctionX = 0;
+  private double correctionY = 0;
+  private double correctionTheta = 0;
+
+  /** The estimated pose, the odometry pose moved by the correction transform. */
+  private double estimateX;
+  private double estimateY;
+  private double estimateTheta;
+  /**
+   * The estimated pose as a {@link Pose2d}, built on request and cached until the next change, so
+   * that updates themselves never allocate.
+   */
+  private Pose2d estimatedPose = null;
+
+  // Benchmark stats, reset by logMetrics
+  private long visionUpdates = 0;
+  private long visionUpdateNanos = 0;
+  private long maxVisionUpdateNanos = 0;
+  /**
+   * Vision measurements older than one already applied. A full replay would have had to undo and
+   * redo the newer correction for these; this estimator approximates them instead.
+   */
+  private long lateVisionUpdates = 0;
+  private long odometryUpdates = 0;
+  private long odometryUpdateNanos = 0;
+
+  /**
+   * Constructs a new pose estimator.
+   *
+   * @param moduleTranslations The location of each module relative to the center of the robot.
+   * @param gyroAngle The current gyro angle.
+   * @param modulePositions The current module positions.
+   * @param initialPose The starting pose.
+   * @param stateStdDevs How much the odometry is trusted, as the standard deviation of X and Y in
+   *     meters and heading in radians. Increase to trust it less.
+   * @param visionStdDevs The default trust of vision measurements, in the same units. Increase to
+   *     trust vision less.
+   */
+  public SwervePoseEstimator(
+      Translation2d[] moduleTranslations,
+      Rotation2d gyroAngle,
+      SwerveModulePosition[] modulePositions,
+      Pose2d initialPose,
+      Matrix<N3, N1> stateStdDevs,
+      Matrix<N3, N1> visionStdDevs) {
+    int moduleCount = moduleTranslations.length;
+    forwardKinematics = solveForwardKinematics(moduleTranslations);
+
+    for (int i = 0; i < 3; i++) {
+      stateVariances[i] = stateStdDevs.get(i, 0) * stateStdDevs.get(i, 0);
+    }
+    setVisionMeasurementStdDevs(visionStdDevs);
+
+    lastDistancesMeters = new double[moduleCount];
+    sampleDistancesMeters = new double[moduleCount];
+    sampleAnglesRadians = new double[moduleCount];
+    odometryHistory =
+        new PoseHistory((int) Math.ceil(HISTORY_SECS * Module.MAX_ODOMETRY_FREQUENCY) + 1);
+    resetPosition(gyroAngle, modulePositions, initialPose);
+  }
+
+  /**
+   * Solves the least-squares inverse of the inverse kinematics once, so turning module movements
+   * into a robot movement is just a multiply. Gives the same result as {@link
+   * edu.wpi.first.math.kinematics.SwerveDriveKinematics#toTwist2d(SwerveModulePosition...)}.
+   *
+   * @param moduleTranslations The location of each module relative to the center of the robot.
+   * @return A 3 by 2n row-major matrix. Rows are dx, dy and dtheta, and columns alternate between
+   *     the X and Y movement of each module.
+   */
+  static double[] solveForwardKinematics(Translation2d[] moduleTranslations) {
+    int moduleCount = moduleTranslations.length;
+    SimpleMatrix inverseKinematics = new SimpleMatrix(moduleCount * 2, 3);
+    for (int i = 0; i < moduleCount; i++) {
+      inverseKinematics.setRow(i * 2, 0, 1, 0, -moduleTranslations[i].getY());
+      inverseKinematics.setRow(i * 2 + 1, 0, 0, 1, moduleTranslations[i].getX());
+    }
+    SimpleMatrix pseudoInverse = inverseKinematics.pseudoInverse();
+    double[] forwardKinematics = new double[3 * moduleCount * 2];
+    for (int row = 0; row < 3; row++) {
+      for (int col = 0; col < moduleCount * 2; col++) {
+        forwardKinematics[row * moduleCount * 2 + col] = pseudoInverse.get(row, col);
+      }
+    }
+    return forwardKinematics;
+  }
+
+  /** Sets the default trust of vision measurements. See the constructor. */
+  public void setVisionMeasurementStdDevs(Matrix<N3, N1> visionStdDevs) {
+    fillGains(visionStdDevs, defaultVisionGains);
+  }
+
+  /** Resets the pose, clearing the odometry history and any vision correction. */
+  public void resetPosition(
+      Rotation2d gyroAngle, SwerveModulePosition[] modulePositions, Pose2d pose) {
+    for (int i = 0; i < lastDistancesMeters.length; i++) {
+      lastDistancesMeters[i] = modulePositions[i].distanceMeters;
+    }
+    lastGyroRadians = gyroAngle.getRadians();
+    gyroOffsetRadians = pose.getRotation().getRadians() - lastGyroRadians;
+    odometryX = pose.getX();
+    odometryY = pose.getY();
+    odometryTheta = pose.getRotation().getRadians();
+    correctionX = 0;
+    correctionY = 0;
+    correctionTheta = 0;
+    odometryHistory.clear();
+    newestVisionTimestamp = Double.NEGATIVE_INFINITY;
+    updateEstimate();
+    estimatedPose = pose;
+  }
+
+  /**
+   * Returns the estimated pose. The pose is only built when it has changed since the last call, so
+   * prefer {@link #getEstimatedX()}, {@link #getEstimatedY()} and {@link
+   * #getEstimatedThetaRadians()} on paths that run for every odometry sample.
+   */
+  public Pose2d getEstimatedPosition() {
+    if (estimatedPose == null) {
+      estimatedPose = new Pose2d(estimateX, estimateY, new Rotation2d(estimateTheta));
+    }
+    return estimatedPose;
+  }
+
+  /** Returns the X of the estimated pose, in meters. Doesn't allocate. */
+  public double getEstimatedX() {
+    return estimateX;
+  }
+
+  /** Returns the Y of the estimated pose, in meters. Doesn't allocate. */
+  public double getEstimatedY() {
+    return estimateY;
+  }
+
+  /** Returns the heading of the estimated pose, in radians. Doesn't allocate. */
+  public double getEstimatedThetaRadians() {
+    return estimateTheta;
+  }
+
+  /**
+   * Updates the odometry with the current time. See {@link #updateWithTime(double, Rotation2d,
+   * SwerveModulePosition[])}.
+   */
+  public Pose2d update(Rotation2d gyroAngle, SwerveModulePosition[] modulePositions) {
+    return updateWithTime(Logger.getTimestamp() / 1e6, gyroAngle, modulePositions);
+  }
+
+  /**
+   * Updates the odometry with a new sample of the gyro and the modules.
+   *
+   * @param timestamp The time the sample was captured, in seconds.
+   * @param gyroAngle The gyro angle.
+   * @param modulePositions The module positions, in the same order as the module translations.
+   * @return The new estimated pose.
+   */
+  public Pose2d updateWithTime(
+      double timestamp, Rotation2d gyroAngle, SwerveModulePosition[] modulePositions) {
+    for (int i = 0; i < lastDistancesMeters.length; i++) {
+      sampleDistancesMeters[i] = modulePositions[i].distanceMeters;
+      sampleAnglesRadians[i] = modulePositions[i].angle.getRadians();
+    }
+    updateWithTime(timestamp, gyroAngle.getRadians(), sampleDistancesMeters, sampleAnglesRadians);
+    return getEstimatedPosition();
+  }
+
+  /**
+   * Updates the odometry with a new sample of the gyro and the modules, without needing any {@link
+   * Rotation2d}s or {@link SwerveModulePosition}s. See {@link #updateWithTime(double, Rotation2d,
+   * SwerveModulePosition[])}. Doesn't allocate, read the new estimate with {@link #getEstimatedX()}
+   * and friends.
+   *
+   * @param timestamp The time the sample was captured, in seconds.
+   * @param gyroRadians The gyro angle, in radians.
+   * @param distancesMeters The drive position of each module, in meters.
+   * @param anglesRadians The azimuth of each module, in radians.
+   */
+  public void updateWithTime(
+      double timestamp, double gyroRadians, double[] distancesMeters, double[] anglesRadians) {
+    long startNanos = System.nanoTime();
+    int columns = lastDistancesMeters.length * 2;
+    double dx = 0;
+    double dy = 0;
+    for (int i = 0; i < lastDistancesMeters.length; i++) {
+      double delta = distancesMeters[i] - lastDistancesMeters[i];
+      double moduleDx = delta * Math.cos(anglesRadians[i]);
+      double moduleDy = delta * Math.sin(anglesRadians[i]);
+      dx += forwardKinematics[i * 2] * moduleDx + forwardKinematics[i * 2 + 1] * moduleDy;
+      dy +=
+          forwardKinematics[columns + i * 2] * moduleDx
+              + forwardKinematics[columns + i * 2 + 1] * moduleDy;
+      lastDistancesMeters[i] = distancesMeters[i];
+    }
+    // The gyro measures rotation better than the wheels do
+    double dtheta = MathUtil.angleModulus(gyroRadians - lastGyroRadians);
+    lastGyroRadians = gyroRadians;
+
+    // Pose exponential, to follow the arc the robot drove instead of a straight line
+    double s;
+    double c;
+    if (Math.abs(dtheta) < 1e-9) {
+      s = 1.0 - dtheta * dtheta / 6.0;
+      c = 0.5 * dtheta;
+    } else {
+      s = Math.sin(dtheta) / dtheta;
+      c = (1 - Math.cos(dtheta)) / dtheta;
+    }
+    double robotDx = dx * s - dy * c;
+    double robotDy = dx * c + dy * s;
+    double cos = Math.cos(odometryTheta);
+    double sin = Math.sin(odometryTheta);
+    odometryX += robotDx * cos - robotDy * sin;
+    odometryY += robotDx * sin + robotDy * cos;
+    odometryTheta = MathUtil.angleModulus(gyroRadians + gyroOffsetRadians);
+
+    odometryHistory.add(timestamp, odometryX, odometryY, odometryTheta, 0, 0, 0);
+    updateEstimate();
+    odometryUpdates++;
+    odometryUpdateNanos += System.nanoTime() - startNanos;
+  }
+
+  /**
+   * Adds a vision measurement with the default trust. See {@link #addVisionMeasurement(Pose2d,
+   * double, Matrix)}.
+   */
+  public void addVisionMeasurement(Pose2d visionPose, double timestamp) {
+    addVisionMeasurement(visionPose, timestamp, defaultVisionGains);
+  }
+
+  /**
+   * Adds a vision measurement.
+   *
+   * @param visionPose The pose of the robot as measured by vision.
+   * @param timestamp The time the measurement was captured, in seconds, in the same timebase as the
+   *     odometry updates.
+   * @param visionStdDevs How much to trust the measurement, as the standard deviation of X and Y in
+   *     meters and heading in radians.
+   */
+  public void addVisionMeasurement(
+      Pose2d visionPose, double timestamp, Matrix<N3, N1> visionStdDevs) {
+    fillGains(visionStdDevs, visionGains);
+    addVisionMeasurement(visionPose, timestamp, visionGains);
+  }
+
+  private void addVisionMeasurement(Pose2d visionPose, double timestamp, double[] gains) {
+    long startNanos = System.nanoTime();
+    if (!odometryHistory.getPoseAt(timestamp, odometryAtCapture)) {
+      return; // Too old, or newer than the odometry can account for
+    }
+    if (timestamp < newestVisionTimestamp) {
+      lateVisionUpdates++;
+    } else {
+      newestVisionTimestamp = timestamp;
+    }
+    double odometryXAtCapture = odometryAtCapture[0];
+    double odometryYAtCapture = odometryAtCapture[1];
+    double odometryThetaAtCapture = odometryAtCapture[2];
+
+    // The estimate at the time of the measurement, with the current correction
+    double cos = Math.cos(correctionTheta);
+    double sin = Math.sin(correctionTheta);
+    double correctedX = odometryXAtCapture * cos - odometryYAtCapture * sin + correctionX;
+    double correctedY = odometryXAtCapture * sin + odometryYAtCapture * cos + correctionY;
+    double correctedTheta = odometryThetaAtCapture + correctionTheta;
+
+    // Move the estimate towards the measurement
+    correctedX += gains[0] * (visionPose.getX() - correctedX);
+    correctedY += gains[1] * (visionPose.getY() - correctedY);
+    correctedTheta +=
+        gains[2] * MathUtil.angleModulus(visionPose.getRotation().getRadians() - correctedTheta);
+
+    // Solve the correction that maps the odometry at that time onto the corrected estimate. Since
+    // odometry is rigid between then and now, this also corrects the present.
+    correctionTheta = MathUtil.angleModulus(correctedTheta - odometryThetaAtCapture);
+    cos = Math.cos(correctionTheta);
+    sin = Math.sin(correctionTheta);
+    correctionX = correctedX - (odometryXAtCapture * cos - odometryYAtCapture * sin);
+    correctionY = correctedY - (odometryXAtCapture * sin + odometryYAtCapture * cos);
+    updateEstimate();
+
+    long elapsedNanos = System.nanoTime() - startNanos;
+    visionUpdates++;
+    visionUpdateNanos += elapsedNanos;
+    maxVisionUpdateNanos = Math.max(maxVisionUpdateNanos, elapsedNanos);
+  }
+
+  /**
+   * Logs how long updates have taken since the last call, as a benchmark of the estimator.
+   *
+   * @param logKey The prefix for the telemetry keys.
+   */
+  public void logMetrics(LogKey logKey) {
+    Logger.recordOutput(logKey.key("VisionUpdates"), visionUpdates);
+    Logger.recordOutput(
+        logKey.key("MeanVisionUpdateMicros"),
+        visionUpdates > 0 ? visionUpdateNanos / 1e3 / visionUpdates : 0);
+    Logger.recordOutput(logKey.key("MaxVisionUpdateMicros"), maxVisionUpdateNanos / 1e3);
+    Logger.recordOutput(logKey.key("LateVisionUpdates"), lateVisionUpdates);
+    Logger.recordOutput(
+        logKey.key("MeanOdometryUpdateMicros"),
+        odometryUpdates > 0 ? odometryUpdateNanos / 1e3 / odometryUpdates : 0);
+    visionUpdates = 0;
+    visionUpdateNanos = 0;
+    maxVisionUpdateNanos = 0;
+    lateVisionUpdates = 0;
+    odometryUpdates = 0;
+    odometryUpdateNanos = 0;
+  }
+
+  /** Applies the correction transform to the odometry pose, and drops the cached pose. */
+  private void updateEstimate() {
+    double cos = Math.cos(correctionTheta);
+    double sin = Math.sin(correctionTheta);
+    estimateX = odometryX * cos - odometryY * sin + correctionX;
+    estimateY = odometryX * sin + odometryY * cos + correctionY;
+    estimateTheta = odometryTheta + correctionTheta;
+    estimatedPose = null;
+  }
+
+  /** Solves the closed-form Kalman gain of each state for a vision trust. */
+  private void fillGains(Matrix<N3, N1> visionStdDevs, double[] gains) {
+    for (int i = 0; i < 3; i++) {
+      double q = stateVariances[i];
+      double r = visionStdDevs.get(i, 0) * visionStdDevs.get(i, 0);
+      gains[i] = q == 0 ? 0 : q / (q + Math.sqrt(q * r));
+    }
+  }
+}
@@ -0,0 +1,296 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.subsystems.swerve;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import frc.robot.util.AllocationMeter;
+import java.util.Random;
+
+/**
+ * Times {@link SwervePoseEstimator} against WPILib's {@link SwerveDrivePoseEstimator}. Runs on a
+ * dev machine, not the robot. See the {@code benchmarkPoseEstimator} Gradle task.
+ *
+ * <p>Both estimators are fed the same recorded drive: a minute of odometry at {@link
+ * Module#ODOMETRY_FREQUENCY} from a robot weaving and spinning across the field on wheels that read
+ * 2% long, plus a noisy vision measurement every few samples that is a few loops old. Every input
+ * is built before the timed passes, so only the estimators themselves are measured. Prints the
+ * mean time per odometry update and per vision measurement, the bytes allocated per sample, and
+ * the RMS distance of each estimate from the true pose.
+ *
+ * <p>Usage: {@code SwervePoseEstimatorBenchmark}
+ */
+public class SwervePoseEstimatorBenchmark {
+  private static final double SAMPLE_PERIOD_SECS = 1 / Module.ODOMETRY_FREQUENCY;
+  private static final int SAMPLES = (int) (60 / SAMPLE_PERIOD_SECS);
+  /** A vision measurement is added after every this many samples, about 30 hertz. */
+  private static final int VISION_PERIOD_SAMPLES =
+      Math.max(1, (int) Math.round(Module.ODOMETRY_FREQUENCY / 30));
+  /** How old a vision measurement is when it's added, in samples. About 60 ms. */
+  private static final int VISION_LATENCY_SAMPLES = (int) Math.round(0.06 / SAMPLE_PERIOD_SECS);
+  private static final double VISION_NOISE_METERS = 0.05;
+  private static final double VISION_NOISE_RADIANS = 0.02;
+  /** How much longer the wheels read than they drove, so the vision has something to correct. */
+  private static final double WHEEL_SCALE_ERROR = 1.02;
+  private static final int WARMUP_PASSES = 20;
+  private static final int TIMED_PASSES = 20;
+  /** The same odometry trust as {@link SwerveSubsystem}. */
+  private static final Matrix<N3, N1> STATE_STD_DEVS = VecBuilder.fill(0.15, 0.15, 0.1);
+  private static final Matrix<N3, N1> VISION_STD_DEVS = VecBuilder.fill(0.3, 0.3, 0.5);
+  private static final Pose2d START_POSE = new Pose2d(2, 4, new Rotation2d());
+
+  /** One of the estimators being compared, fed from the recorded drive. */
+  private interface Estimator {
+    public void update(int sample);
+
+    public void addVisionMeasurement(int sample);
+
+    public double getX();
+
+    public double getY();
+  }
+
+  /** The totals of one estimator over the timed passes. */
+  private static class Totals {
+    private long odometryNanos = 0;
+    private long odometryUpdates = 0;
+    private long visionNanos = 0;
+    private long visionUpdates = 0;
+    private long allocatedBytes = 0;
+    private double squaredErrorSum = 0;
+  }
+
+  private final Translation2d[] moduleTranslations = SwerveSubsystem.getModuleTranslations();
+  private final SwerveDriveKinematics kinematics = new SwerveDriveKinematics(moduleTranslations);
+
+  // The recorded drive
+  private final double[] timestamps = new double[SAMPLES];
+  private final double[] gyroRadians = new double[SAMPLES];
+  private final Rotation2d[] gyroAngles = new Rotation2d[SAMPLES];
+  private final double[][] distancesMeters = new double[SAMPLES][4];
+  private final double[][] anglesRadians = new double[SAMPLES][4];
+  private final SwerveModulePosition[][] modulePositions = new SwerveModulePosition[SAMPLES][4];
+  private final double[] trueX = new double[SAMPLES];
+  private final double[] trueY = new double[SAMPLES];
+  /** The vision measurement added after each sample, or null if there isn't one. */
+  private final Pose2d[] visionPoses = new Pose2d[SAMPLES];
+  private final double[] visionTimestamps = new double[SAMPLES];
+
+  public static void main(String[] args) {
+    SwervePoseEstimatorBenchmark benchmark = new SwervePoseEstimatorBenchmark();
+    Totals ours = new Totals();
+    Totals wpilib = new Totals();
+    for (int pass = 0; pass < WARMUP_PASSES + TIMED_PASSES; pass++) {
+      boolean timed = pass >= WARMUP_PASSES;
+      // Alternate which estimator goes first, so neither always runs on a warmer cache
+      if (pass % 2 == 0) {
+        benchmark.runPass(benchmark.createOurs(), timed ? ours : new Totals());
+        benchmark.runPass(benchmark.createWPILib(), timed ? wpilib : new Totals());
+      } else {
+        benchmark.runPass(benchmark.createWPILib(), timed ? wpilib : new Totals());
+        benchmark.runPass(benchmark.createOurs(), timed ? ours : new Totals());
+      }
+    }
+
+    System.out.printf(
+        "%d samples at %.0f Hz, a vision measurement every %d samples, %d timed passes%n%n",
+        SAMPLES,
+        Module.ODOMETRY_FREQUENCY,
+        VISION_PERIOD_SAMPLES,
+        TIMED_PASSES);
+    System.out.printf(
+        "%-26s %14s %14s %14s %14s%n",
+        "",
+        "odometry (ns)",
+        "vision (ns)",
+        "bytes/sample",
+        "RMS error (m)");
+    print("SwervePoseEstimator", ours);
+    print("SwerveDrivePoseEstimator", wpilib);
+    if (!AllocationMeter.isSupported()) {
+      System.out.println("\nThis JVM can't measure allocations, so bytes/sample reads -1.");
+    }
+  }
+
+  private static void print(String name, Totals totals) {
+    System.out.printf(
+        "%-26s %14.0f %14.0f %14.1f %14.4f%n",
+        name,
+        (double) totals.odometryNanos / totals.odometryUpdates,
+        (double) totals.visionNanos / totals.visionUpdates,
+        AllocationMeter.isSupported()
+            ? (double) totals.allocatedBytes / totals.odometryUpdates
+            : -1,
+        Math.sqrt(totals.squaredErrorSum / totals.odometryUpdates));
+  }
+
+  /** Records the drive. */
+  private SwervePoseEstimatorBenchmark() {
+    Random random = new Random(167);
+    Pose2d pose = START_POSE;
+    double[] wheelDistances = new double[4];
+    for (int i = 0; i < SAMPLES; i++) {
+      double t = i * SAMPLE_PERIOD_SECS;
+      ChassisSpeeds speeds =
+          new ChassisSpeeds(
+              2 * Math.cos(0.5 * t), 1.5 * Math.sin(0.3 * t), 1.5 * Math.sin(0.7 * t));
+      pose =
+          pose.exp(
+              new Twist2d(
+                  speeds.vxMetersPerSecond * SAMPLE_PERIOD_SECS,
+                  speeds.vyMetersPerSecond * SAMPLE_PERIOD_SECS,
+                  speeds.omegaRadiansPerSecond * SAMPLE_PERIOD_SECS));
+      SwerveModuleState[] states = kinematics.toSwerveModuleStates(speeds);
+
+      timestamps[i] = t + SAMPLE_PERIOD_SECS;
+      gyroRadians[i] = pose.getRotation().getRadians();
+      gyroAngles[i] = pose.getRotation();
+      for (int module = 0; module < 4; module++) {
+        wheelDistances[module] +=
+            states[module].speedMetersPerSecond * SAMPLE_PERIOD_SECS * WHEEL_SCALE_ERROR;
+        distancesMeters[i][module] = wheelDistances[module];
+        anglesRadians[i][module] = states[module].angle.getRadians();
+        modulePositions[i][module] =
+            new SwerveModulePosition(wheelDistances[module], states[module].angle);
+      }
+      trueX[i] = pose.getX();
+      trueY[i] = pose.getY();
+
+      if (i % VISION_PERIOD_SAMPLES == 0 && i >= VISION_LATENCY_SAMPLES) {
+        int captured = i - VISION_LATENCY_SAMPLES;
+        visionTimestamps[i] = timestamps[captured];
+        visionPoses[i] =
+            new Pose2d(
+                trueX[captured] + random.nextGaussian() * VISION_NOISE_METERS,
+                trueY[captured] + random.nextGaussian() * VISION_NOISE_METERS,
+                new Rotation2d(
+                    gyroRadians[captured] + random.nextGaussian() * VISION_NOISE_RADIANS));
+      }
+    }
+  }
+
+  private Estimator createOurs() {
+    SwervePoseEstimator poseEstimator =
+        new SwervePoseEstimator(
+            moduleTranslations,
+            new Rotation2d(),
+            startPositions(),
+            START_POSE,
+            STATE_STD_DEVS,
+            VISION_STD_DEVS);
+    return new Estimator() {
+      @Override
+      public void update(int sample) {
+        poseEstimator.updateWithTime(
+            timestamps[sample],
+            gyroRadians[sample],
+            distancesMeters[sample],
+            anglesRadians[sample]);
+      }
+
+      @Override
+      public void addVisionMeasurement(int sample) {
+        poseEstimator.addVisionMeasurement(
+            visionPoses[sample], visionTimestamps[sample], VISION_STD_DEVS);
+      }
+
+      @Override
+      public double getX() {
+        return poseEstimator.getEstimatedX();
+      }
+
+      @Override
+      public double getY() {
+        return poseEstimator.getEstimatedY();
+      }
+    };
+  }
+
+  private Estimator createWPILib() {
+    SwerveDrivePoseEstimator poseEstimator =
+        new SwerveDrivePoseEstimator(
+            kinematics,
+            new Rotation2d(),
+            startPositions(),
+            START_POSE,
+            STATE_STD_DEVS,
+            VISION_STD_DEVS);
+    return new Estimator() {
+      @Override
+      public void update(int sample) {
+        poseEstimator.updateWithTime(
+            timestamps[sample], gyroAngles[sample], modulePositions[sample]);
+      }
+
+      @Override
+      public void addVisionMeasurement(int sample) {
+        poseEstimator.addVisionMeasurement(
+            visionPoses[sample], visionTimestamps[sample], VISION_STD_DEVS);
+      }
+
+      @Override
+      public double getX() {
+        return poseEstimator.getEstimatedPosition().getX();
+      }
+
+      @Override
+      public double getY() {
+        return poseEstimator.getEstimatedPosition().getY();
+      }
+    };
+  }
+
+  /** Runs an estimator over the whole recorded drive, adding to the totals. */
+  private void runPass(Estimator estimator, Totals totals) {
+    long startBytes = AllocationMeter.getAllocatedBytes();
+    for (int i = 0; i < SAMPLES; i++) {
+      long startNanos = System.nanoTime();
+      estimator.update(i);
+      totals.odometryNanos += System.nanoTime() - startNanos;
+      totals.odometryUpdates++;
+
+      if (visionPoses[i] != null) {
+        startNanos = System.nanoTime();
+        estimator.addVisionMeasurement(i);
+        totals.visionNanos += System.nanoTime() - startNanos;
+        totals.visionUpdates++;
+      }
+
+      double errorX = estimator.getX() - trueX[i];
+      double errorY = estimator.getY() - trueY[i];
+      totals.squaredErrorSum += errorX * errorX + errorY * errorY;
+    }
+    totals.allocatedBytes += AllocationMeter.getAllocatedBytes() - startBytes;
+  }
+
+  private static SwerveModulePosition[] startPositions() {
+    SwerveModulePosition[] positions = new SwerveModulePosition[4];
+    for (int i = 0; i < 4; i++) {
+      positions[i] = new SwerveModulePosition();
+    }
+    return positions;
+  }
+}
@@ -24,18 +24,19 @@ import com.pathplanner.lib.util.HolonomicPathFollowerConfig;
 import com.pathplanner.lib.util.PathPlannerLogging;
 import com.pathplanner.lib.util.ReplanningConfig;
 import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.Matrix;
 import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.controller.PIDController;
-import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
 import edu.wpi.first.math.filter.SlewRateLimiter;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
-import edu.wpi.first.math.geometry.Twist2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.units.*;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.DriverStation.Alliance;
@@ -50,19 +51,24 @@ import frc.robot.Robot;
 import frc.robot.subsystems.swerve.interfaceLayers.GyroIO;
 import frc.robot.subsystems.swerve.interfaceLayers.GyroIOInputsAutoLogged;
 import frc.robot.subsystems.swerve.interfaceLayers.ModuleIO;
+import frc.robot.subsystems.swerve.interfaceLayers.OdometryFrameSource;
 import frc.robot.subsystems.swerve.interfaceLayers.PhoenixOdometryThread;
+import frc.robot.subsystems.swerve.interfaceLayers.SparkOdometryThread;
+import frc.robot.subsystems.vision.RobotStateProvider;
 import frc.robot.subsystems.vision.VisionSubsystem;
 import frc.robot.subsystems.vision.interfaceLayers.VisionIO.VisionPoseEstimate;
+import frc.robot.util.AllocationMeter;
 import frc.robot.util.LocalADStarAK;
+import frc.robot.util.LogKey;
+import frc.robot.util.LoopProfiler;
 import frc.robot.util.MathUtils;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Optional;
 import java.util.function.DoubleSupplier;
 import java.util.function.Supplier;
 import org.littletonrobotics.junction.AutoLogOutput;
 import org.littletonrobotics.junction.Logger;
 
-public class SwerveSubsystem extends SubsystemBase {
+public class SwerveSubsystem extends SubsystemBase implements RobotStateProvider {
   // Constants
   /** The max linear speed of the robot. */
   public static final Measure<Velocity<Distance>> MAX_LINEAR_SPEED =
@@ -84,6 +90,30 @@ public class SwerveSubsystem extends SubsystemBase {
   /** The max angular velocity of the drivebase. */
   private static final Measure<Velocity<Angle>> MAX_ANGULAR_SPEED =
       RadiansPerSecond.of(MAX_LINEAR_SPEED.in(MetersPerSecond) / DRIVE_BASE_RADIUS.in(Meters));
+  /**
+   * If the pose estimator should run on the odometry thread instead of the main loop. This updates
+   * the pose as soon as each odometry sample arrives, instead of up to a loop later, but the pose
+   * can no longer be reproduced in log replay. Only takes effect if high frequency odometry is
+   * running, see {@link Module#ODOMETRY_FREQUENCY} and {@link Module#SPARK_ODOMETRY_FREQUENCY}.
+   */
+  public static final boolean INTEGRATE_ON_ODOMETRY_THREAD = false;
+  /** How much the odometry is trusted by the pose estimator. X, Y, and rotation. */
+  private static final Matrix<N3, N1> ODOMETRY_STD_DEVS = VecBuilder.fill(0.15, 0.15, 0.1);
+  /** The default trust of vision measurements, when a measurement doesn't bring its own. */
+  private static final Matrix<N3, N1> VISION_STD_DEVS = VecBuilder.fill(1, 1, 0.5);
+  /**
+   * How far back the pose history goes. Vision measurements older than this are rejected.
+   *
+   * <ul>
+   *   <li><b>Units:</b>
+   *       <ul>
+   *         <li>Seconds
+   *       </ul>
+   * </ul>
+   */
+  private static final double POSE_HISTORY_SECS = 1.5;
+  /** The prefix for the pose estimator's telemetry keys. */
+  private static final LogKey ESTIMATOR_LOG_KEY = LogKey.of("Odometry/Estimator");
 
   // IO layers
   /** The IO interface layer for the gyroscope. */
@@ -96,18 +126,67 @@ public class SwerveSubsystem extends SubsystemBase {
   // Drive kinematics
   /** The drivebase kinematics calculator. */
   private SwerveDriveKinematics kinematics = new SwerveDriveKinematics(getModuleTranslations());
-  /** The raw gyro rotation. 0 degrees is away from the driver station. */
-  private Rotation2d rawGyroRotation = new Rotation2d();
-  /** The previously logged module positions, used to calculate deltas. */
-  private SwerveModulePosition[] lastModulePositions = new SwerveModulePosition[4];
+  /** The raw gyro rotation, in radians. 0 is away from the driver station. */
+  private double rawGyroRadians = 0;
+  /** The drive position of each module at the last sample, used to calculate deltas. */
+  private final double[] lastDistancesMeters = new double[4];
+  /** The azimuth of each module at the last sample, in radians. */
+  private final double[] lastAnglesRadians = new double[4];
+  /**
+   * The X component of each module's offset from the center of the module layout, divided by the
+   * sum of the squared offsets. Used to find the rotation of the drivebase from the module deltas
+   * without allocating, see {@link #getRotationDelta(int, double, double)}.
+   */
+  private final double[] rotationWeightsX = new double[4];
+  /** The Y counterpart of {@link #rotationWeightsX}. */
+  private final double[] rotationWeightsY = new double[4];
+  /** The robot-relative velocity measured this loop, see {@link #updateVelocity()}. */
+  private double robotVelocityX = 0;
+  /** The robot-relative velocity measured this loop, see {@link #updateVelocity()}. */
+  private double robotVelocityY = 0;
+  /** The angular velocity measured this loop, see {@link #updateVelocity()}. */
+  private double robotVelocityOmega = 0;
+  /**
+   * If the modules have started reporting samples from an async odometry thread. Once they have,
+   * odometry is only ever updated from those samples, even on loops where none arrived.
+   */
+  private boolean usingHighFrequencyOdometry = false;
 
   // Pose estimation
-  /** A thread lock to prevent read/write con wasnt micle flicts on odometry/pose estimation. */
-  public static final Lock odometryLock = new ReentrantLock();
   /** The pose estimator, used to fuse odometry data and vision data together. */
-  private SwerveDrivePoseEstimator poseEstimator;
+  private SwervePoseEstimator poseEstimator;
+  /**
+   * The pose estimator running on the odometry thread, if {@link #INTEGRATE_ON_ODOMETRY_THREAD} is
+   * enabled and an odometry thread is running. Null otherwise, in which case {@link
+   * #poseEstimator} is used.
+   */
+  private ThreadedPoseEstimator threadedPoseEstimator = null;
+  /** The estimated pose at every odometry sample, for looking up past poses. */
+  private final PoseHistory poseHistory =
+      new PoseHistory((int) Math.ceil(POSE_HISTORY_SECS * Module.MAX_ODOMETRY_FREQUENCY));
+  /**
+   * The field-relative heading from the logged gyro yaw at every gyro sample, for solving vision
+   * frames against the gyro. Only the heading and angular velocity of each entry are used.
+   */
+  private final PoseHistory gyroHeadingHistory =
+      new PoseHistory((int) Math.ceil(POSE_HISTORY_SECS * Module.MAX_ODOMETRY_FREQUENCY));
+  /**
+   * The field-relative heading minus the raw gyro yaw. Set whenever the pose or the gyro is reset.
+   */
+  private double gyroHeadingOffsetRadians = 0;
+  /** Scratch space for {@link #getGyroHeadingAt(double)}. */
+  private final double[] gyroHeadingScratch = new double[3];
+  /** The number of vision measurements rejected for being outside the pose history. */
+  private int rejectedVisionMeasurements = 0;
   /** The vision-based pose estimator. */
-  public VisionSubsystem visionPoseEstimator = new VisionSubsystem(this::addVisionMeasurement);
+  public VisionSubsystem visionPoseEstimator =
+      new VisionSubsystem(this::addVisionMeasurement, this);
+
+  private final LoopProfiler.Section periodicSection =
+      LoopProfiler.section(getName() + ".periodic()");
+  /** Vision estimation runs inside this subsystem's periodic, so it's timed on its own too. */
+  private final LoopProfiler.Section visionEstimationSection =
+      LoopProfiler.section("VisionSubsystem.updateEstimation()");
 
   /** If slowmode should be enabled or not. */
   private boolean slowmode = Driving.SLOWMODE_DEFAULT;
@@ -130,22 +209,61 @@ public class SwerveSubsystem extends SubsystemBase {
     modules[1] = new Module(frModuleIO, 1);
     modules[2] = new Module(blModuleIO, 2);
     modules[3] = new Module(brModuleIO, 3);
+    SwerveModulePosition[] modulePositions = getModulePositions();
     for (int i = 0; i < 4; i++) {
-      lastModulePositions[i] = modules[i].getModulePosition();
+      lastDistancesMeters[i] = modulePositions[i].distanceMeters;
+      lastAnglesRadians[i] = modulePositions[i].angle.getRadians();
+    }
+    Translation2d[] moduleTranslations = getModuleTranslations();
+    double centerX = 0;
+    double centerY = 0;
+    for (Translation2d translation : moduleTranslations) {
+      centerX += translation.getX() / moduleTranslations.length;
+      centerY += translation.getY() / moduleTranslations.length;
+    }
+    double radiusSquaredSum = 0;
+    for (Translation2d translation : moduleTranslations) {
+      radiusSquaredSum +=
+          Math.pow(translation.getX() - centerX, 2) + Math.pow(translation.getY() - centerY, 2);
+    }
+    for (int i = 0; i < 4; i++) {
+      rotationWeightsX[i] = (moduleTranslations[i].getX() - centerX) / radiusSquaredSum;
+      rotationWeightsY[i] = (moduleTranslations[i].getY() - centerY) / radiusSquaredSum;
     }
     poseEstimator =
-        new SwerveDrivePoseEstimator(
-            kinematics,
-            rawGyroRotation,
-            lastModulePositions,
+        new SwervePoseEstimator(
+            moduleTranslations,
+            new Rotation2d(rawGyroRadians),
+            modulePositions,
             new Pose2d(),
-            VecBuilder.fill(0.15, 0.15, 0.1),
-            VecBuilder.fill(1, 1, 0.5));
+            ODOMETRY_STD_DEVS,
+            VISION_STD_DEVS);
 
     // Start threads (no-op for each if no signals have been created)
     if (Module.ODOMETRY_FREQUENCY > 50) {
       PhoenixOdometryThread.getInstance().start();
     }
+    if (Module.SPARK_ODOMETRY_FREQUENCY > 50) {
+      SparkOdometryThread.getInstance().start();
+    }
+    if (INTEGRATE_ON_ODOMETRY_THREAD) {
+      OdometryFrameSource odometrySource = null;
+      if (PhoenixOdometryThread.getInstance().isRunning()) {
+        odometrySource = PhoenixOdometryThread.getInstance();
+      } else if (SparkOdometryThread.getInstance().isRunning()) {
+        odometrySource = SparkOdometryThread.getInstance();
+      }
+      if (odometrySource != null) {
+        threadedPoseEstimator =
+            new ThreadedPoseEstimator(
+                new Rotation2d(rawGyroRadians),
+                modulePositions,
+                new Pose2d(),
+                ODOMETRY_STD_DEVS,
+                VISION_STD_DEVS);
+        odometrySource.setFrameListener(threadedPoseEstimator);
+      }
+    }
 
     // Configure AutoBuilder for PathPlanner
     AutoBuilder.configureHolonomic(
@@ -187,13 +305,18 @@ public class SwerveSubsystem extends SubsystemBase {
   @Override
   @SuppressWarnings("unused")
   public void periodic() {
-    odometryLock.lock(); // Prevents odometry updates while reading data
-    gyroIO.updateInputs(gyroInputs);
+    long startNanos = System.nanoTime();
+    // Pull in every frame the odometry thread has sampled since the last loop. This never blocks,
+    // so the IO layers below can read the frames without any locking.
+    PhoenixOdometryThread.getInstance().poll();
+    SparkOdometryThread.getInstance().poll();
+    // The modules go first, since the sim gyro is integrated from the sim modules
     for (var module : modules) {
       module.updateInputs();
     }
-    odometryLock.unlock();
+    gyroIO.updateInputs(gyroInputs);
     Logger.processInputs("Drive/Gyro", gyroInputs);
+    updateGyroHeadingHistory();
     for (var module : modules) {
       module.periodic();
     }
@@ -209,58 +332,205 @@ public class SwerveSubsystem extends SubsystemBase {
       Logger.recordOutput("SwerveStates/SetpointsOptimized", new SwerveModuleState[] {});
     }
 
-    if (Module.ODOMETRY_FREQUENCY > 50) {
-      double[] sampleTimestamps =
-          modules[0].getOdometryTimestamps(); // All signals are sampled together
+    if (threadedPoseEstimator != null) {
+      // The odometry thread already integrated this loop's samples
+      threadedPoseEstimator.setGyroConnected(gyroInputs.connected);
+      PoseSnapshot snapshot = threadedPoseEstimator.getSnapshot();
+      double cos = snapshot.pose.getRotation().getCos();
+      double sin = snapshot.pose.getRotation().getSin();
+      poseHistory.add(
+          snapshot.timestamp,
+          snapshot.pose,
+          snapshot.vxMetersPerSecond * cos - snapshot.vyMetersPerSecond * sin,
+          snapshot.vxMetersPerSecond * sin + snapshot.vyMetersPerSecond * cos,
+          snapshot.omegaRadiansPerSecond);
+      robotVelocityX = snapshot.vxMetersPerSecond;
+      robotVelocityY = snapshot.vyMetersPerSecond;
+      robotVelocityOmega = snapshot.omegaRadiansPerSecond;
+      Logger.recordOutput(
+          "Odometry/SnapshotAgeMs", (Logger.getRealTimestamp() / 1e6 - snapshot.timestamp) * 1e3);
+    } else {
+      updateOdometry();
+    }
+    long visionStartNanos = System.nanoTime();
+    visionPoseEstimator.updateEstimation();
+    visionEstimationSection.record(visionStartNanos);
+    if (threadedPoseEstimator == null) {
+      poseEstimator.logMetrics(ESTIMATOR_LOG_KEY);
+    }
+    periodicSection.record(startNanos);
+  }
+
+  /**
+   * Integrates the odometry samples received this loop into the pose estimator.
+   *
+   * <p>This runs every loop at up to {@link Module#MAX_ODOMETRY_FREQUENCY}, so it only reads the
+   * primitive arrays from the inputs and writes preallocated buffers, and doesn't allocate anything
+   * itself. The bytes allocated by this method and by the pose estimator are logged separately
+   * every loop to keep it that way.
+   */
+  private void updateOdometry() {
+    long startBytes = AllocationMeter.getAllocatedBytes();
+    long estimatorBytes = 0;
+
+    if (modules[0].getOdometryTimestamps().length > 0) {
+      usingHighFrequencyOdometry = true;
+    }
+    updateVelocity();
+    if (usingHighFrequencyOdometry) {
+      // Every sample is captured as one frame, so the modules and the gyro always have the same
+      // samples. The gyro only has none if it isn't sampled by the odometry thread at all.
+      double[] sampleTimestamps = modules[0].getOdometryTimestamps();
       int sampleCount = sampleTimestamps.length;
-      for (int i = 0; i < sampleCount && i < gyroInputs.odometryYawPositions.length; i++) {
+      boolean hasYawSamples = gyroInputs.odometryYawPositionsRad.length == sampleCount;
+      for (int i = 0; i < sampleCount; i++) {
         // Read wheel positions and deltas from each module
-        SwerveModulePosition[] modulePositions = new SwerveModulePosition[4];
-        SwerveModulePosition[] moduleDeltas = new SwerveModulePosition[4];
+        double rotationDelta = 0;
         for (int moduleIndex = 0; moduleIndex < 4; moduleIndex++) {
-          modulePositions[moduleIndex] = modules[moduleIndex].getOdometryPositions()[i];
-          moduleDeltas[moduleIndex] =
-              new SwerveModulePosition(
-                  modulePositions[moduleIndex].distanceMeters
-                      - lastModulePositions[moduleIndex].distanceMeters,
-                  modulePositions[moduleIndex].angle);
-          lastModulePositions[moduleIndex] = modulePositions[moduleIndex];
+          double distanceMeters = modules[moduleIndex].getOdometryDrivePositionsMeters()[i];
+          double angleRadians = modules[moduleIndex].getOdometryAzimuthPositionsRad()[i];
+          rotationDelta +=
+              getRotationDelta(
+                  moduleIndex, distanceMeters - lastDistancesMeters[moduleIndex], angleRadians);
+          lastDistancesMeters[moduleIndex] = distanceMeters;
+          lastAnglesRadians[moduleIndex] = angleRadians;
         }
 
         // Update gyro angle
-        if (gyroInputs.connected) {
+        if (gyroInputs.connected && hasYawSamples) {
           // Use the real gyro angle
-          rawGyroRotation = gyroInputs.odometryYawPositions[i];
+          rawGyroRadians = gyroInputs.odometryYawPositionsRad[i];
         } else {
           // Use the angle delta from the kinematics and module deltas
-          Twist2d twist = kinematics.toTwist2d(moduleDeltas);
-          rawGyroRotation = rawGyroRotation.plus(new Rotation2d(twist.dtheta));
+          rawGyroRadians += rotationDelta;
         }
 
         // Apply update
-        poseEstimator.updateWithTime(sampleTimestamps[i], rawGyroRotation, modulePositions);
+        long estimatorStartBytes = AllocationMeter.getAllocatedBytes();
+        poseEstimator.updateWithTime(
+            sampleTimestamps[i], rawGyroRadians, lastDistancesMeters, lastAnglesRadians);
+        estimatorBytes += AllocationMeter.getAllocatedBytes() - estimatorStartBytes;
+        addToPoseHistory(sampleTimestamps[i]);
       }
     } else {
+      double rotationDelta = 0;
+      for (int i = 0; i < 4; i++) {
+        double distanceMeters = modules[i].getDrivePositionMeters();
+        double angleRadians = modules[i].getAngle().getRadians();
+        rotationDelta += getRotationDelta(i, distanceMeters - lastDistancesMeters[i], angleRadians);
+        lastDistancesMeters[i] = distanceMeters;
+        lastAnglesRadians[i] = angleRadians;
+      }
+
       // Update gyro angle
       if (gyroInputs.connected) {
         // Use the real gyro angle
-        rawGyroRotation = gyroInputs.yawPosition;
+        rawGyroRadians = gyroInputs.yawPosition.getRadians();
       } else {
-        SwerveModulePosition[] moduleDeltas = new SwerveModulePosition[4];
-        for (int i = 0; i < modules.length; i++) {
-          moduleDeltas[i] =
-              new SwerveModulePosition(
-                  modules[i].getDrivePosition().in(Meters) - lastModulePositions[i].distanceMeters,
-                  modules[i].getAngle());
-        }
         // Use the angle delta from the kinematics and module deltas
-        Twist2d twist = kinematics.toTwist2d(moduleDeltas);
-        rawGyroRotation = rawGyroRotation.plus(new Rotation2d(twist.dtheta));
+        rawGyroRadians += rotationDelta;
       }
-      lastModulePositions = getModulePositions();
-      poseEstimator.update(rawGyroRotation, lastModulePositions);
+      double timestamp = Logger.getTimestamp() / 1e6;
+      long estimatorStartBytes = AllocationMeter.getAllocatedBytes();
+      poseEstimator.updateWithTime(
+          timestamp, rawGyroRadians, lastDistancesMeters, lastAnglesRadians);
+      estimatorBytes += AllocationMeter.getAllocatedBytes() - estimatorStartBytes;
+      addToPoseHistory(timestamp);
     }
-    visionPoseEstimator.updateEstimation();
+
+    if (AllocationMeter.isSupported()) {
+      long totalBytes = AllocationMeter.getAllocatedBytes() - startBytes;
+      Logger.recordOutput("Odometry/IntegrationAllocatedBytes", totalBytes - estimatorBytes);
+      Logger.recordOutput("Odometry/EstimatorAllocatedBytes", estimatorBytes);
+    }
+  }
+
+  /**
+   * Adds this loop's gyro samples to the gyro heading history. Reads only the logged inputs, so it
+   * runs the same in replay and whether or not the pose is integrated on the odometry thread.
+   * Doesn't allocate.
+   */
+  private void updateGyroHeadingHistory() {
+    if (!gyroInputs.connected) {
+      return;
+    }
+    if (gyroInputs.odometryYawTimestamps.length > 0) {
+      for (int i = 0; i < gyroInputs.odometryYawTimestamps.length; i++) {
+        gyroHeadingHistory.add(
+            gyroInputs.odometryYawTimestamps[i],
+            0,
+            0,
+            gyroInputs.odometryYawPositionsRad[i] + gyroHeadingOffsetRadians,
+            0,
+            0,
+            gyroInputs.yawVelocityRadPerSec);
+      }
+    } else {
+      gyroHeadingHistory.add(
+          Logger.getTimestamp() / 1e6,
+          0,
+          0,
+          gyroInputs.yawPosition.getRadians() + gyroHeadingOffsetRadians,
+          0,
+          0,
+          gyroInputs.yawVelocityRadPerSec);
+    }
+  }
+
+  /**
+   * Measures the robot-relative velocity of the drivebase from the module states, for the pose
+   * history. The translational velocity is the average module velocity, which is the velocity at
+   * the center of the module layout. Doesn't allocate.
+   */
+  private void updateVelocity() {
+    robotVelocityX = 0;
+    robotVelocityY = 0;
+    robotVelocityOmega = 0;
+    for (int i = 0; i < 4; i++) {
+      double speed = modules[i].getVelocityMetersPerSec();
+      Rotation2d angle = modules[i].getAngle();
+      robotVelocityX += speed * angle.getCos() / 4;
+      robotVelocityY += speed * angle.getSin() / 4;
+      robotVelocityOmega += getRotationDelta(i, speed, angle.getRadians());
+    }
+    if (gyroInputs.connected) {
+      robotVelocityOmega = gyroInputs.yawVelocityRadPerSec;
+    }
+  }
+
+  /**
+   * Adds the pose estimator's current estimate to the pose history, along with the velocity from
+   * {@link #updateVelocity()}. Doesn't allocate.
+   */
+  private void addToPoseHistory(double timestamp) {
+    double theta = poseEstimator.getEstimatedThetaRadians();
+    double cos = Math.cos(theta);
+    double sin = Math.sin(theta);
+    poseHistory.add(
+        timestamp,
+        poseEstimator.getEstimatedX(),
+        poseEstimator.getEstimatedY(),
+        theta,
+        robotVelocityX * cos - robotVelocityY * sin,
+        robotVelocityX * sin + robotVelocityY * cos,
+        robotVelocityOmega);
+  }
+
+  /**
+   * Returns how much one module's movement rotated the drivebase, as the least-squares solution of
+   * the inverse kinematics for rotation alone. Equivalent to the dtheta of {@link
+   * SwerveDriveKinematics#toTwist2d(SwerveModulePosition...)}, without allocating.
+   *
+   * @param moduleIndex The index of the module.
+   * @param distanceDeltaMeters How far the module's wheel moved since the last sample.
+   * @param angleRadians The module's azimuth, in radians.
+   * @return The rotation of the drivebase, in radians. Sum this over every module.
+   */
+  private double getRotationDelta(
+      int moduleIndex, double distanceDeltaMeters, double angleRadians) {
+    double deltaX = distanceDeltaMeters * Math.cos(angleRadians);
+    double deltaY = distanceDeltaMeters * Math.sin(angleRadians);
+    return rotationWeightsX[moduleIndex] * deltaY - rotationWeightsY[moduleIndex] * deltaX;
   }
 
   /**
@@ -345,39 +615,160 @@ public class SwerveSubsystem extends SubsystemBase {
     return states;
   }
 
-  /** Returns the current odometry pose. */
+  /** Returns the module positions as of the last odometry sample. */
+  private SwerveModulePosition[] getLastModulePositions() {
+    SwerveModulePosition[] positions = new SwerveModulePosition[4];
+    for (int i = 0; i < 4; i++) {
+      positions[i] =
+          new SwerveModulePosition(lastDistancesMeters[i], new Rotation2d(lastAnglesRadians[i]));
+    }
+    return positions;
+  }
+
+  /**
+   * Returns the current odometry pose. If the pose estimator runs on the odometry thread, this is
+   * the pose as of the latest odometry sample rather than the start of the loop.
+   */
   @AutoLogOutput(key = "Odometry/Robot")
   public Pose2d getPose() {
+    if (threadedPoseEstimator != null) {
+      return threadedPoseEstimator.getSnapshot().pose;
+    }
     return poseEstimator.getEstimatedPosition();
   }
 
+  /**
+   * Returns the current pose along with the robot's velocity and the time the pose was measured.
+   * Safe to call from any thread if the pose estimator runs on the odometry thread.
+   */
+  public PoseSnapshot getPoseSnapshot() {
+    if (threadedPoseEstimator != null) {
+      return threadedPoseEstimator.getSnapshot();
+    }
+    ChassisSpeeds velocity = kinematics.toChassisSpeeds(getModuleStates());
+    return new PoseSnapshot(
+        poseEstimator.getEstimatedPosition(),
+        velocity.vxMetersPerSecond,
+        velocity.vyMetersPerSecond,
+        velocity.omegaRadiansPerSecond,
+        Logger.getTimestamp() / 1e6);
+  }
+
+  /**
+   * Returns the estimated pose of the robot at a timestamp, interpolated from the pose history.
+   * Timestamps slightly past the latest odometry sample are extrapolated from the robot's velocity.
+   *
+   * @param timestamp The timestamp, in seconds, in the same timebase as {@link
+   *     Logger#getTimestamp()}.
+   * @return The pose, or empty if the timestamp is outside the pose history.
+   */
+  public Optional<Pose2d> getPoseAt(double timestamp) {
+    return poseHistory.getPoseAt(timestamp);
+  }
+
+  @Override
+  public boolean getPoseAt(double timestamp, double[] poseOut) {
+    return poseHistory.getPoseAt(timestamp, poseOut);
+  }
+
+  @Override
+  public double getGyroHeadingAt(double timestamp) {
+    if (!gyroHeadingHistory.getPoseAt(timestamp, gyroHeadingScratch)) {
+      return Double.NaN;
+    }
+    return gyroHeadingScratch[2];
+  }
+
+  @Override
+  public double getTranslationStdDevMeters() {
+    // The estimator doesn't track a live covariance, so this is the fixed odometry trust
+    return ODOMETRY_STD_DEVS.get(0, 0);
+  }
+
+  @Override
+  public double getAngularVelocityRadPerSec() {
+    return robotVelocityOmega;
+  }
+
+  @Override
+  public double getLinearSpeedMetersPerSec() {
+    return Math.hypot(robotVelocityX, robotVelocityY);
+  }
+
+  /**
+   * Returns where the robot is predicted to be a short time from now, from the pose history.
+   * Useful for aiming at where the robot will be once a mechanism responds. Falls back to the
+   * current pose if no prediction can be made.
+   *
+   * @param lookaheadSecs How far ahead to predict, in seconds.
+   */
+  public Pose2d getPredictedPose(double lookaheadSecs) {
+    return getPoseAt(Logger.getTimestamp() / 1e6 + lookaheadSecs).orElseGet(this::getPose);
+  }
+
   public void resetGyroToForwards() {
+    poseHistory.clear();
+    gyroHeadingHistory.clear();
     gyroIO.setYaw(new Rotation2d());
-    rawGyroRotation = new Rotation2d();
+    rawGyroRadians = 0;
+    gyroHeadingOffsetRadians = getPose().getRotation().getRadians();
+    if (threadedPoseEstimator != null) {
+      threadedPoseEstimator.resetPose(new Rotation2d(), getPose());
+      return;
+    }
     poseEstimator.resetPosition(new Rotation2d(), getModulePositions(), getPose());
   }
 
   public void resetGyroFromPose() {
     if (gyroInputs.connected) {
+      poseHistory.clear();
+      gyroHeadingHistory.clear();
       Rotation2d yaw = MathUtils.adjustRotation(getPose().getRotation());
       gyroIO.setYaw(yaw);
-      rawGyroRotation = yaw;
-      poseEstimator.resetPosition(yaw, lastModulePositions, getPose());
+      rawGyroRadians = yaw.getRadians();
+      gyroHeadingOffsetRadians = getPose().getRotation().getRadians() - yaw.getRadians();
+      if (threadedPoseEstimator != null) {
+        threadedPoseEstimator.resetPose(yaw, getPose());
+        return;
+      }
+      poseEstimator.resetPosition(yaw, getLastModulePositions(), getPose());
     }
   }
 
   /** Resets the current odometry pose. */
   public void setPose(Pose2d pose) {
-    poseEstimator.resetPosition(rawGyroRotation, getModulePositions(), pose);
+    poseHistory.clear();
+    gyroHeadingHistory.clear();
+    gyroHeadingOffsetRadians =
+        pose.getRotation().getRadians() - gyroInputs.yawPosition.getRadians();
+    if (threadedPoseEstimator != null) {
+      threadedPoseEstimator.resetPose(pose);
+      return;
+    }
+    poseEstimator.resetPosition(new Rotation2d(rawGyroRadians), getModulePositions(), pose);
   }
 
   /**
-   * Adds a vision measurement to the pose estimator.
+   * Adds a vision measurement to the pose estimator. Measurements from outside the pose history are
+   * rejected, and the difference between each measurement and the pose history at the time it was
+   * captured is logged.
    *
-   * @param visionPose The pose of the robot as measured by the vision camera.
-   * @param timestamp The timestamp of the vision measurement in seconds.
+   * @param estimate The pose of the robot as measured by the vision camera, with its timestamp in
+   *     seconds and its trustworthiness.
    */
   public void addVisionMeasurement(VisionPoseEstimate estimate) {
+    Optional<Pose2d> poseAtCapture = poseHistory.getPoseAt(estimate.timestamp);
+    if (poseAtCapture.isEmpty()) {
+      Logger.recordOutput("Odometry/RejectedVisionMeasurements", ++rejectedVisionMeasurements);
+      return;
+    }
+    Logger.recordOutput(
+        "Odometry/VisionResidualMeters",
+        poseAtCapture.get().getTranslation().getDistance(estimate.poseEstimate.getTranslation()));
+    if (threadedPoseEstimator != null) {
+      threadedPoseEstimator.addVisionMeasurement(estimate);
+      return;
+    }
     poseEstimator.addVisionMeasurement(
         estimate.poseEstimate, estimate.timestamp, estimate.trustworthiness);
   }
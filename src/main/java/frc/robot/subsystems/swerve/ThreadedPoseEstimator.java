@@ -0,0 +1,272 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.subsystems.swerve;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import frc.robot.subsystems.swerve.interfaceLayers.OdometryFrame;
+import frc.robot.subsystems.vision.interfaceLayers.VisionIO.VisionPoseEstimate;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Runs the pose estimator on the odometry thread, so the pose is updated as soon as each odometry
+ * frame is captured instead of once per main loop.
+ *
+ * <p>Set as the frame listener of an odometry thread. Every frame is integrated into a {@link
+ * SwervePoseEstimator} right away without allocating, and the result is published to a double
+ * buffer that any thread can read with {@link #getSnapshot()} without locking.
+ *
+ * <p>Only the odometry thread ever touches the pose estimator. Anything else that needs to change
+ * it, such as vision measurements and pose resets, is queued from the main loop and applied by the
+ * odometry thread before it integrates the next frame.
+ *
+ * <p>Since the odometry thread isn't logged as an input, the pose can't be reproduced in log
+ * replay while this is in use.
+ */
+public class ThreadedPoseEstimator implements Consumer<OdometryFrame> {
+  /** One published pose and velocity. Only written by the odometry thread. */
+  private static class SnapshotBuffer {
+    private double x;
+    private double y;
+    private double theta;
+    private double vx;
+    private double vy;
+    private double omega;
+    private double timestamp;
+  }
+
+  /** A snapshot built by {@link #getSnapshot()}, and the publish count it was built from. */
+  private record CachedSnapshot(long published, PoseSnapshot snapshot) {}
+
+  private final SwervePoseEstimator poseEstimator;
+  /** Solves the chassis motion from the module motion. See {@link SwervePoseEstimator}. */
+  private final double[] forwardKinematics;
+  /** Changes to the pose estimator queued by the main loop, applied by the odometry thread. */
+  private final ConcurrentLinkedQueue<Runnable> pendingUpdates = new ConcurrentLinkedQueue<>();
+  /** If the gyro is connected, as last reported by the main loop. */
+  private volatile boolean gyroConnected = true;
+
+  /**
+   * The two snapshot buffers. The latest snapshot is in {@code buffers[published % 2]}, and the
+   * odometry thread fills the other one before publishing it.
+   */
+  private final SnapshotBuffer[] buffers = {new SnapshotBuffer(), new SnapshotBuffer()};
+  /** How many snapshots have been published. */
+  private volatile long published = 0;
+  /** The last snapshot handed out, reused until a newer one is published. */
+  private volatile CachedSnapshot cachedSnapshot = null;
+
+  // Only touched by the odometry thread
+  /** The drive position of each module at the last frame, in meters. */
+  private final double[] distancesMeters = new double[4];
+  /** The azimuth of each module at the last frame, in radians. */
+  private final double[] anglesRadians = new double[4];
+  /** The raw gyro angle, or the integrated rotation from the kinematics if disconnected. */
+  private double rawGyroRadians;
+  /** The timestamp of the last frame. */
+  private double lastTimestamp = Double.NaN;
+
+  /**
+   * Constructs a new threaded pose estimator.
+   *
+   * @param gyroAngle The current raw gyro angle.
+   * @param modulePositions The current module positions.
+   * @param initialPose The starting pose.
+   * @param stateStdDevs How much the odometry is trusted. See {@link SwervePoseEstimator}.
+   * @param visionStdDevs The default vision trust. See {@link SwervePoseEstimator}.
+   */
+  public ThreadedPoseEstimator(
+      Rotation2d gyroAngle,
+      SwerveModulePosition[] modulePositions,
+      Pose2d initialPose,
+      Matrix<N3, N1> stateStdDevs,
+      Matrix<N3, N1> visionStdDevs) {
+    for (int i = 0; i < 4; i++) {
+      distancesMeters[i] = modulePositions[i].distanceMeters;
+      anglesRadians[i] = modulePositions[i].angle.getRadians();
+    }
+    rawGyroRadians = gyroAngle.getRadians();
+    forwardKinematics =
+        SwervePoseEstimator.solveForwardKinematics(SwerveSubsystem.getModuleTranslations());
+    poseEstimator =
+        new SwervePoseEstimator(
+            SwerveSubsystem.getModuleTranslations(),
+            gyroAngle,
+            modulePositions,
+            initialPose,
+            stateStdDevs,
+            visionStdDevs);
+    publish(0, 0, 0, 0);
+  }
+
+  /**
+   * Returns the latest pose. Safe to call from any thread.
+   *
+   * <p>The snapshot is copied out of the published buffer and checked against the publish count,
+   * retrying in the rare case that the odometry thread published again mid-copy. It's only built
+   * when a newer one has been published since the last call.
+   */
+  public PoseSnapshot getSnapshot() {
+    while (true) {
+      long version = published;
+      CachedSnapshot cached = cachedSnapshot;
+      if (cached != null && cached.published() == version) {
+        return cached.snapshot();
+      }
+      SnapshotBuffer buffer = buffers[(int) (version % 2)];
+      double x = buffer.x;
+      double y = buffer.y;
+      double theta = buffer.theta;
+      double vx = buffer.vx;
+      double vy = buffer.vy;
+      double omega = buffer.omega;
+      double timestamp = buffer.timestamp;
+      // Keeps the copy above from being read after the check below
+      VarHandle.loadLoadFence();
+      if (published == version) {
+        PoseSnapshot snapshot =
+            new PoseSnapshot(new Pose2d(x, y, new Rotation2d(theta)), vx, vy, omega, timestamp);
+        cachedSnapshot = new CachedSnapshot(version, snapshot);
+        return snapshot;
+      }
+    }
+  }
+
+  /** Tells the odometry thread if the gyro is connected. Should be called every main loop. */
+  public void setGyroConnected(boolean connected) {
+    gyroConnected = connected;
+  }
+
+  /** Queues a vision measurement to be applied before the next frame is integrated. */
+  public void addVisionMeasurement(VisionPoseEstimate estimate) {
+    pendingUpdates.add(
+        () ->
+            poseEstimator.addVisionMeasurement(
+                estimate.poseEstimate, estimate.timestamp, estimate.trustworthiness));
+  }
+
+  /** Queues a reset of the pose, keeping the current gyro angle. */
+  public void resetPose(Pose2d pose) {
+    pendingUpdates.add(
+        () ->
+            poseEstimator.resetPosition(
+                new Rotation2d(rawGyroRadians), getModulePositions(), pose));
+  }
+
+  /**
+   * Queues a reset of the pose along with the raw gyro angle, for when the gyro itself was reset.
+   *
+   * @param gyroAngle The new raw gyro angle.
+   * @param pose The new pose.
+   */
+  public void resetPose(Rotation2d gyroAngle, Pose2d pose) {
+    pendingUpdates.add(
+        () -> {
+          rawGyroRadians = gyroAngle.getRadians();
+          poseEstimator.resetPosition(gyroAngle, getModulePositions(), pose);
+        });
+  }
+
+  /** Integrates one frame. Runs on the odometry thread. Doesn't allocate. */
+  @Override
+  public void accept(OdometryFrame frame) {
+    Runnable update;
+    while ((update = pendingUpdates.poll()) != null) {
+      update.run();
+    }
+
+    // The chassis motion since the last frame, the same as SwerveDriveKinematics.toTwist2d
+    int columns = distancesMeters.length * 2;
+    double dx = 0;
+    double dy = 0;
+    double dtheta = 0;
+    for (int i = 0; i < 4; i++) {
+      double angleRadians = frame.azimuthPositionsRotations[i] * 2 * Math.PI;
+      double delta = frame.drivePositionsMeters[i] - distancesMeters[i];
+      double moduleDx = delta * Math.cos(angleRadians);
+      double moduleDy = delta * Math.sin(angleRadians);
+      dx += forwardKinematics[i * 2] * moduleDx + forwardKinematics[i * 2 + 1] * moduleDy;
+      dy +=
+          forwardKinematics[columns + i * 2] * moduleDx
+              + forwardKinematics[columns + i * 2 + 1] * moduleDy;
+      dtheta +=
+          forwardKinematics[columns * 2 + i * 2] * moduleDx
+              + forwardKinematics[columns * 2 + i * 2 + 1] * moduleDy;
+      distancesMeters[i] = frame.drivePositionsMeters[i];
+      anglesRadians[i] = angleRadians;
+    }
+
+    // Update gyro angle
+    double rotationDelta;
+    if (gyroConnected && frame.hasYaw) {
+      // Use the real gyro angle
+      double yawRadians = Math.toRadians(frame.yawDegrees);
+      rotationDelta = MathUtil.angleModulus(yawRadians - rawGyroRadians);
+      rawGyroRadians = yawRadians;
+    } else {
+      // Use the angle delta from the kinematics and module deltas
+      rotationDelta = dtheta;
+      rawGyroRadians += dtheta;
+    }
+
+    poseEstimator.updateWithTime(frame.timestamp, rawGyroRadians, distancesMeters, anglesRadians);
+
+    double dt = frame.timestamp - lastTimestamp;
+    lastTimestamp = frame.timestamp;
+    if (dt > 0) {
+      publish(dx / dt, dy / dt, rotationDelta / dt, frame.timestamp);
+    } else {
+      // The first frame, since lastTimestamp was NaN, so keep the last velocity
+      SnapshotBuffer last = buffers[(int) (published % 2)];
+      publish(last.vx, last.vy, last.omega, frame.timestamp);
+    }
+  }
+
+  /**
+   * Publishes the pose estimator's current estimate along with a velocity. Only called by the
+   * odometry thread, and by the constructor before it starts.
+   */
+  private void publish(double vx, double vy, double omega, double timestamp) {
+    long next = published + 1;
+    SnapshotBuffer buffer = buffers[(int) (next % 2)];
+    // A reader may still be copying this buffer from two publishes ago. Keeps the writes below
+    // from being seen before the last publish, so that reader sees the count change and retries.
+    VarHandle.storeStoreFence();
+    buffer.x = poseEstimator.getEstimatedX();
+    buffer.y = poseEstimator.getEstimatedY();
+    buffer.theta = poseEstimator.getEstimatedThetaRadians();
+    buffer.vx = vx;
+    buffer.vy = vy;
+    buffer.omega = omega;
+    buffer.timestamp = timestamp;
+    published = next;
+  }
+
+  /** Returns the module positions of the last frame. Only for the rare paths that need objects. */
+  private SwerveModulePosition[] getModulePositions() {
+    SwerveModulePosition[] positions = new SwerveModulePosition[4];
+    for (int i = 0; i < 4; i++) {
+      positions[i] = new SwerveModulePosition(distancesMeters[i], new Rotation2d(anglesRadians[i]));
+    }
+    return positions;
+  }
+}
@@ -14,10 +14,7 @@
 
 package frc.robot.subsystems.swerve.interfaceLayers;
 
-import static edu.wpi.first.units.Units.*;
-
 import edu.wpi.first.math.geometry.Rotation2d;
-import edu.wpi.first.units.*;
 import org.littletonrobotics.junction.AutoLog;
 
 public interface GyroIO {
@@ -29,10 +26,10 @@ public interface GyroIO {
     public Rotation2d yawPosition = new Rotation2d();
     /** The timestamps of the measurements captured by the async odometry thread. */
     public double[] odometryYawTimestamps = new double[] {};
-    /** The yaw rotations of the robot captured by the async odometry thread. */
-    public Rotation2d[] odometryYawPositions = new Rotation2d[] {};
-    /** The yaw velocity of the robot, CCW+. */
-    public Measure<Velocity<Angle>> yawVelocityRadPerSec = RadiansPerSecond.of(0);
+    /** The yaw of the robot captured by the async odometry thread, in radians, CCW+. */
+    public double[] odometryYawPositionsRad = new double[] {};
+    /** The yaw velocity of the robot, in radians per second, CCW+. */
+    public double yawVelocityRadPerSec = 0;
   }
 
   /** Updates the set of loggable inputs. */
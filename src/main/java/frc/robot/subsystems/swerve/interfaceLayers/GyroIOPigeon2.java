@@ -14,8 +14,6 @@
 
 package frc.robot.subsystems.swerve.interfaceLayers;
 
-import static edu.wpi.first.units.Units.RadiansPerSecond;
-
 import com.ctre.phoenix6.BaseStatusSignal;
 import com.ctre.phoenix6.StatusCode;
 import com.ctre.phoenix6.StatusSignal;
@@ -25,28 +23,33 @@ import edu.wpi.first.math.geometry.Rotation2d;
 import frc.robot.subsystems.swerve.Module;
 import frc.robot.util.CANConstants;
 import frc.robot.util.CANConstants.Drivebase;
-import frc.robot.util.SwerveUtils;
-import java.util.Queue;
 
 /** IO implementation for Pigeon2 */
 public class GyroIOPigeon2 implements GyroIO {
   private final Pigeon2 pigeon = new Pigeon2(Drivebase.GYRO, CANConstants.CANIVORE_NAME);
   private final StatusSignal<Double> yaw = pigeon.getYaw();
-  private Queue<Double> yawPositionQueue;
-  private Queue<Double> yawTimestampQueue;
+  /** The async odometry thread sampling the yaw, if high frequency odometry is enabled. */
+  private OdometryFrameSource odometrySource = null;
   private final StatusSignal<Double> yawVelocity = pigeon.getAngularVelocityZWorld();
 
   @SuppressWarnings("unused")
   public GyroIOPigeon2(boolean phoenixDrive) {
     pigeon.getConfigurator().apply(new Pigeon2Configuration());
     pigeon.getConfigurator().setYaw(0.0);
-    yaw.setUpdateFrequency(Module.ODOMETRY_FREQUENCY > 50 ? Module.ODOMETRY_FREQUENCY : 50);
+    double odometryFrequency =
+        phoenixDrive ? Module.ODOMETRY_FREQUENCY : Module.SPARK_ODOMETRY_FREQUENCY;
+    yaw.setUpdateFrequency(odometryFrequency > 50 ? odometryFrequency : 50);
     yawVelocity.setUpdateFrequency(50);
     pigeon.optimizeBusUtilization();
-    if (Module.ODOMETRY_FREQUENCY > 50 && phoenixDrive) {
-      yawTimestampQueue = PhoenixOdometryThread.getInstance().makeTimestampQueue();
-      yawPositionQueue =
-          PhoenixOdometryThread.getInstance().registerSignal(pigeon, pigeon.getYaw());
+    if (odometryFrequency > 50) {
+      if (phoenixDrive) {
+        PhoenixOdometryThread.getInstance().registerGyro(pigeon, pigeon.getYaw());
+        odometrySource = PhoenixOdometryThread.getInstance();
+      } else {
+        // The Spark thread refreshes the signal itself, so give it its own copy.
+        SparkOdometryThread.getInstance().registerGyro(pigeon.getYaw().clone());
+        odometrySource = SparkOdometryThread.getInstance();
+      }
     }
   }
 
@@ -54,11 +57,10 @@ public class GyroIOPigeon2 implements GyroIO {
   public void updateInputs(GyroIOInputs inputs) {
     inputs.connected = BaseStatusSignal.refreshAll(yaw, yawVelocity).equals(StatusCode.OK);
     inputs.yawPosition = Rotation2d.fromDegrees(yaw.getValueAsDouble());
-    inputs.yawVelocityRadPerSec = RadiansPerSecond.of(yawVelocity.getValueAsDouble());
+    inputs.yawVelocityRadPerSec = Math.toRadians(yawVelocity.getValueAsDouble());
 
-    if (yawTimestampQueue != null) {
-      inputs.odometryYawTimestamps = SwerveUtils.queueToDoubleArray(yawTimestampQueue);
-      inputs.odometryYawPositions = SwerveUtils.queueToRotation2dArray(yawPositionQueue);
+    if (odometrySource != null) {
+      odometrySource.fillGyroInputs(inputs);
     }
   }
 
@@ -0,0 +1,94 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.subsystems.swerve.interfaceLayers;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import frc.robot.Robot;
+import frc.robot.subsystems.swerve.Module;
+import frc.robot.subsystems.swerve.SwerveSubsystem;
+
+/**
+ * Sim implementation of gyro IO.
+ *
+ * <p>Integrates the chassis yaw from the motion of the simulated modules, one step per odometry
+ * sample, so the gyro reports the same samples the modules do. Must be updated after the modules
+ * every loop.
+ */
+public class GyroIOSim implements GyroIO {
+  private static final double LOOP_PERIOD_SECS = Robot.defaultPeriodSecs;
+
+  private final ModuleIOSim[] modules;
+  private final SwerveDriveKinematics kinematics =
+      new SwerveDriveKinematics(SwerveSubsystem.getModuleTranslations());
+
+  /** The drive position of each module at the last sample, in meters. */
+  private final double[] lastDrivePositionsMeters = new double[4];
+  /** The module deltas of the current sample. */
+  private final SwerveModulePosition[] moduleDeltas = new SwerveModulePosition[4];
+
+  /** The integrated yaw. */
+  private double yawRadians = 0;
+
+  /**
+   * Constructs a new sim gyro.
+   *
+   * @param modules The simulated modules of the drivebase, in module index order.
+   */
+  public GyroIOSim(ModuleIOSim... modules) {
+    this.modules = modules;
+    for (int i = 0; i < 4; i++) {
+      moduleDeltas[i] = new SwerveModulePosition();
+    }
+  }
+
+  @Override
+  public void updateInputs(GyroIOInputs inputs) {
+    int sampleCount = ModuleIOSim.ODOMETRY_SUBSTEPS;
+    boolean highFrequencyOdometry = Module.ODOMETRY_FREQUENCY > 50;
+    if (highFrequencyOdometry) {
+      // New arrays every loop, see OdometryFrameSource.fillGyroInputs
+      inputs.odometryYawTimestamps = new double[sampleCount];
+      inputs.odometryYawPositionsRad = new double[sampleCount];
+    }
+
+    double startYawRadians = yawRadians;
+    for (int sample = 0; sample < sampleCount; sample++) {
+      for (int i = 0; i < 4; i++) {
+        double drivePositionMeters = modules[i].getSampleDrivePositionsMeters()[sample];
+        moduleDeltas[i].distanceMeters = drivePositionMeters - lastDrivePositionsMeters[i];
+        moduleDeltas[i].angle =
+            Rotation2d.fromRotations(modules[i].getSampleAzimuthPositionsRotations()[sample]);
+        lastDrivePositionsMeters[i] = drivePositionMeters;
+      }
+      yawRadians += kinematics.toTwist2d(moduleDeltas).dtheta;
+
+      if (highFrequencyOdometry) {
+        inputs.odometryYawTimestamps[sample] = modules[0].getSampleTimestamps()[sample];
+        inputs.odometryYawPositionsRad[sample] = yawRadians;
+      }
+    }
+
+    inputs.connected = true;
+    inputs.yawPosition = new Rotation2d(yawRadians);
+    inputs.yawVelocityRadPerSec = (yawRadians - startYawRadians) / LOOP_PERIOD_SECS;
+  }
+
+  @Override
+  public void setYaw(Rotation2d newYaw) {
+    yawRadians = newYaw.getRadians();
+  }
+}
@@ -14,8 +14,6 @@
 
 package frc.robot.subsystems.swerve.interfaceLayers;
 
-import static edu.wpi.first.units.Units.*;
-
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.units.*;
 import frc.robot.subsystems.swerve.SwerveSubsystem;
@@ -25,25 +23,25 @@ import org.littletonrobotics.junction.AutoLog;
 public interface ModuleIO {
   @AutoLog
   public static class ModuleIOInputs {
-    /** The distance that the module has driven so far. */
-    public Measure<Distance> drivePosition = Meters.of(0);
-    /** The linear drive velocity of the module. */
-    public Measure<Velocity<Distance>> driveVelocity = MetersPerSecond.of(0);
+    /** The distance that the module has driven so far, in meters. */
+    public double drivePositionMeters = 0.0;
+    /** The linear drive velocity of the module, in meters per second. */
+    public double driveVelocityMetersPerSec = 0.0;
     /** The voltage applied to the motor by the motor controller. */
-    public Measure<Voltage> driveAppliedVoltage = Volts.of(0);
+    public double driveAppliedVolts = 0.0;
     /** The current applied to the motor by the motor controller. */
-    public Measure<Current> driveAppliedCurrent = Amps.of(0);
+    public double driveAppliedAmps = 0.0;
     /** The total output applied to the motor by the closed loop control. */
     public double driveAppliedOutput = 0.0;
 
     /** The absolute position of the azimuth. 0 degrees is forwards, CCW+. */
     public Rotation2d azimuthAbsolutePosition = new Rotation2d();
-    /** The rotational velocity of the azimuth. CCW+. */
-    public Measure<Velocity<Angle>> azimuthVelocity = RadiansPerSecond.of(0);
+    /** The rotational velocity of the azimuth, in radians per second. CCW+. */
+    public double azimuthVelocityRadPerSec = 0.0;
     /** The voltage applied to the motor by the motor controller. */
-    public Measure<Voltage> azimuthAppliedVoltage = Volts.of(0);
+    public double azimuthAppliedVolts = 0.0;
     /** The current applied to the motor by the motor controller. */
-    public Measure<Current> azimuthAppliedCurrent = Amps.of(0);
+    public double azimuthAppliedAmps = 0.0;
     /** The total output applied to the motor by the closed loop control. */
     public double azimuthAppliedOutput = 0.0;
 
@@ -51,8 +49,11 @@ public interface ModuleIO {
     public double[] odometryTimestamps = new double[] {};
     /** The drive positions of the measurements captured by the async odometry thread. */
     public double[] odometryDrivePositionsMeters = new double[] {};
-    /** The azimuth positions of the measurements captured by the async odometry thread. */
-    public Rotation2d[] odometryAzimuthPositions = new Rotation2d[] {};
+    /**
+     * The azimuth positions of the measurements captured by the async odometry thread, in radians.
+     * 0 is forwards, CCW+.
+     */
+    public double[] odometryAzimuthPositionsRad = new double[] {};
   }
 
   /** Updates the set of loggable inputs. */
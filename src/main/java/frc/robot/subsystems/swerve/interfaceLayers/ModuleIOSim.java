@@ -29,6 +29,7 @@ import edu.wpi.first.wpilibj.simulation.DCMotorSim;
 import frc.robot.Robot;
 import frc.robot.subsystems.swerve.Module;
 import frc.robot.subsystems.swerve.SwerveSubsystem;
+import org.littletonrobotics.junction.Logger;
 
 /**
  * Physics sim implementation of module IO.
@@ -36,9 +37,23 @@ import frc.robot.subsystems.swerve.SwerveSubsystem;
  * <p>Uses two flywheel sims for the drive and turn motors, with the absolute position initialized
  * to a random value. The flywheel sims are not physically accurate, but provide a decent
  * approximation for the behavior of the module.
+ *
+ * <p>If high frequency odometry is enabled, each loop is split into {@link #ODOMETRY_SUBSTEPS}
+ * sim steps, and the module position after each step is reported as an odometry sample, just like
+ * an odometry thread would on a real robot.
  */
 public class ModuleIOSim implements ModuleIO {
   private static final double LOOP_PERIOD_SECS = Robot.defaultPeriodSecs;
+  private static final double WHEEL_CIRCUMFERENCE_METERS =
+      Module.DRIVE_WHEEL_CIRCUMFERENCE.in(Meters);
+  /**
+   * The number of sim steps, and so odometry samples, per loop. Matches {@link
+   * Module#ODOMETRY_FREQUENCY} as closely as possible, or 1 if high frequency odometry is off.
+   */
+  public static final int ODOMETRY_SUBSTEPS =
+      Module.ODOMETRY_FREQUENCY > 50
+          ? Math.max(1, (int) Math.round(LOOP_PERIOD_SECS * Module.ODOMETRY_FREQUENCY))
+          : 1;
 
   private DCMotorSim driveSim = new DCMotorSim(DCMotor.getNEO(1), Module.DRIVE_GEAR_RATIO, 0.091);
   private DCMotorSim azimuthSim =
@@ -52,6 +67,13 @@ public class ModuleIOSim implements ModuleIO {
   private double driveAppliedVolts = 0.0;
   private double azimuthAppliedVolts = 0.0;
 
+  /** The timestamp of each sample in the last loop. */
+  private final double[] sampleTimestamps = new double[ODOMETRY_SUBSTEPS];
+  /** The drive position after each sample in the last loop, in meters. */
+  private final double[] sampleDrivePositionsMeters = new double[ODOMETRY_SUBSTEPS];
+  /** The azimuth position after each sample in the last loop, in rotations. */
+  private final double[] sampleAzimuthPositionsRotations = new double[ODOMETRY_SUBSTEPS];
+
   public ModuleIOSim() {
     drivePID = new PIDController(24 / SwerveSubsystem.MAX_LINEAR_SPEED.in(MetersPerSecond), 0, 0);
     driveFF =
@@ -64,23 +86,58 @@ public class ModuleIOSim implements ModuleIO {
 
   @Override
   public void updateInputs(ModuleIOInputs inputs) {
-    driveSim.update(LOOP_PERIOD_SECS);
-    azimuthSim.update(LOOP_PERIOD_SECS);
-
-    inputs.drivePosition =
-        Module.DRIVE_WHEEL_CIRCUMFERENCE.times(driveSim.getAngularPositionRotations());
-    inputs.driveVelocity =
-        Module.DRIVE_WHEEL_CIRCUMFERENCE.times(driveSim.getAngularVelocityRPM()).per(Minute);
-    inputs.driveAppliedCurrent = Amps.of(driveSim.getCurrentDrawAmps());
-    inputs.driveAppliedVoltage = Volts.of(driveAppliedVolts);
+    double substepPeriod = LOOP_PERIOD_SECS / ODOMETRY_SUBSTEPS;
+    double loopStartTimestamp = Logger.getTimestamp() / 1e6 - LOOP_PERIOD_SECS;
+    for (int i = 0; i < ODOMETRY_SUBSTEPS; i++) {
+      driveSim.update(substepPeriod);
+      azimuthSim.update(substepPeriod);
+      sampleTimestamps[i] = loopStartTimestamp + (i + 1) * substepPeriod;
+      sampleDrivePositionsMeters[i] =
+          driveSim.getAngularPositionRotations() * WHEEL_CIRCUMFERENCE_METERS;
+      sampleAzimuthPositionsRotations[i] = azimuthSim.getAngularPositionRotations();
+    }
+
+    inputs.drivePositionMeters =
+        driveSim.getAngularPositionRotations() * WHEEL_CIRCUMFERENCE_METERS;
+    inputs.driveVelocityMetersPerSec =
+        driveSim.getAngularVelocityRPM() / 60 * WHEEL_CIRCUMFERENCE_METERS;
+    inputs.driveAppliedAmps = driveSim.getCurrentDrawAmps();
+    inputs.driveAppliedVolts = driveAppliedVolts;
     inputs.driveAppliedOutput = driveAppliedVolts;
 
     inputs.azimuthAbsolutePosition =
         Rotation2d.fromRotations(azimuthSim.getAngularPositionRotations());
-    inputs.azimuthVelocity = RPM.of(azimuthSim.getAngularVelocityRPM());
-    inputs.azimuthAppliedCurrent = Amps.of(azimuthSim.getCurrentDrawAmps());
-    inputs.azimuthAppliedVoltage = Volts.of(azimuthAppliedVolts);
+    inputs.azimuthVelocityRadPerSec = azimuthSim.getAngularVelocityRadPerSec();
+    inputs.azimuthAppliedAmps = azimuthSim.getCurrentDrawAmps();
+    inputs.azimuthAppliedVolts = azimuthAppliedVolts;
     inputs.azimuthAppliedOutput = azimuthAppliedVolts;
+
+    if (Module.ODOMETRY_FREQUENCY > 50) {
+      // New arrays every loop, see OdometryFrameSource.fillModuleInputs
+      inputs.odometryTimestamps = new double[ODOMETRY_SUBSTEPS];
+      inputs.odometryDrivePositionsMeters = new double[ODOMETRY_SUBSTEPS];
+      inputs.odometryAzimuthPositionsRad = new double[ODOMETRY_SUBSTEPS];
+      for (int i = 0; i < ODOMETRY_SUBSTEPS; i++) {
+        inputs.odometryTimestamps[i] = sampleTimestamps[i];
+        inputs.odometryDrivePositionsMeters[i] = sampleDrivePositionsMeters[i];
+        inputs.odometryAzimuthPositionsRad[i] = sampleAzimuthPositionsRotations[i] * 2 * Math.PI;
+      }
+    }
+  }
+
+  /** Returns the timestamp of each sample in the last loop. Used by {@link GyroIOSim}. */
+  double[] getSampleTimestamps() {
+    return sampleTimestamps;
+  }
+
+  /** Returns the drive position after each sample in the last loop, in meters. */
+  double[] getSampleDrivePositionsMeters() {
+    return sampleDrivePositionsMeters;
+  }
+
+  /** Returns the azimuth position after each sample in the last loop, in rotations. */
+  double[] getSampleAzimuthPositionsRotations() {
+    return sampleAzimuthPositionsRotations;
   }
 
   @Override
@@ -14,11 +14,8 @@
 
 package frc.robot.subsystems.swerve.interfaceLayers;
 
-import static edu.wpi.first.units.Units.Amps;
 import static edu.wpi.first.units.Units.Meters;
 import static edu.wpi.first.units.Units.MetersPerSecond;
-import static edu.wpi.first.units.Units.RotationsPerSecond;
-import static edu.wpi.first.units.Units.Volts;
 import static frc.robot.util.motorUtils.SparkUtils.Data.*;
 import static frc.robot.util.motorUtils.SparkUtils.Sensor.*;
 
@@ -28,6 +25,7 @@ import com.ctre.phoenix6.configs.CANcoderConfiguration;
 import com.ctre.phoenix6.hardware.CANcoder;
 import com.revrobotics.CANSparkBase.IdleMode;
 import com.revrobotics.CANSparkLowLevel.MotorType;
+import com.revrobotics.CANSparkLowLevel.PeriodicFrame;
 import com.revrobotics.CANSparkMax;
 import com.revrobotics.RelativeEncoder;
 import edu.wpi.first.math.controller.PIDController;
@@ -60,7 +58,13 @@ public class ModuleIOSparkMax implements ModuleIO {
   private final StatusSignal<Double> azimuthAbsolutePosition;
   private final StatusSignal<Double> azimuthVelocity;
 
+  /** The index of the module, used to find this module's data in each {@link OdometryFrame}. */
+  private final int moduleID;
+  /** If the drive and azimuth positions are being sampled by the async odometry thread. */
+  private boolean highFrequencyOdometry = false;
+
   public ModuleIOSparkMax(int moduleID) {
+    this.moduleID = moduleID;
     double drive_kS; // Volts to overcome static friction
     double drive_kV; // Volts per meters/second of setpoint
     double drive_kP; // Volts per meters/second of error
@@ -196,7 +200,8 @@ public class ModuleIOSparkMax implements ModuleIO {
     cancoderConfig.MagnetSensor.MagnetOffset = azimuthOffset;
     azimuthCANcoder.getConfigurator().apply(cancoderConfig);
     azimuthAbsolutePosition = azimuthCANcoder.getAbsolutePosition();
-    azimuthAbsolutePosition.setUpdateFrequency(50);
+    azimuthAbsolutePosition.setUpdateFrequency(
+        Module.SPARK_ODOMETRY_FREQUENCY > 50 ? Module.SPARK_ODOMETRY_FREQUENCY : 50);
     azimuthVelocity = azimuthCANcoder.getVelocity();
     azimuthVelocity.setUpdateFrequency(50);
 
@@ -208,25 +213,41 @@ public class ModuleIOSparkMax implements ModuleIO {
         Set.of(POSITION, VELOCITY, OUTPUT, INPUT, CURRENT),
         Set.of(INTEGRATED),
         false);
+
+    if (Module.SPARK_ODOMETRY_FREQUENCY > 50) {
+      // Send the drive position as often as the odometry thread samples it, otherwise the thread
+      // would just read the same cached value several times in a row.
+      SparkUtils.configureSpark(
+          () ->
+              driveMotor.setPeriodicFramePeriod(
+                  PeriodicFrame.kStatus2, (int) (1000 / Module.SPARK_ODOMETRY_FREQUENCY)));
+      // The odometry thread refreshes the azimuth signal itself, so give it its own copy.
+      SparkOdometryThread.getInstance()
+          .registerModule(
+              moduleID, driveRelativeEncoder::getPosition, azimuthAbsolutePosition.clone());
+      highFrequencyOdometry = true;
+    }
   }
 
   @Override
   public void updateInputs(ModuleIOInputs inputs) {
-    inputs.drivePosition = Meters.of(driveRelativeEncoder.getPosition());
-    inputs.driveVelocity = MetersPerSecond.of(driveRelativeEncoder.getVelocity());
+    inputs.drivePositionMeters = driveRelativeEncoder.getPosition();
+    inputs.driveVelocityMetersPerSec = driveRelativeEncoder.getVelocity();
     inputs.driveAppliedOutput = driveOutput;
-    inputs.driveAppliedVoltage = Volts.of(driveOutput);
-    inputs.driveAppliedCurrent = Amps.of(driveMotor.getOutputCurrent());
+    inputs.driveAppliedVolts = driveOutput;
+    inputs.driveAppliedAmps = driveMotor.getOutputCurrent();
 
     BaseStatusSignal.refreshAll(azimuthAbsolutePosition, azimuthVelocity);
     inputs.azimuthAbsolutePosition =
         Rotation2d.fromRotations(azimuthAbsolutePosition.getValueAsDouble());
-    inputs.azimuthVelocity = RotationsPerSecond.of(azimuthVelocity.getValueAsDouble());
+    inputs.azimuthVelocityRadPerSec = azimuthVelocity.getValueAsDouble() * 2 * Math.PI;
     inputs.azimuthAppliedOutput = azimuthOutput;
-    inputs.azimuthAppliedVoltage = Volts.of(azimuthOutput);
-    inputs.azimuthAppliedCurrent = Amps.of(azimuthMotor.getOutputCurrent());
+    inputs.azimuthAppliedVolts = azimuthOutput;
+    inputs.azimuthAppliedAmps = azimuthMotor.getOutputCurrent();
 
-    // We don't do HF odometry on smaxes. Because REV.
+    if (highFrequencyOdometry) {
+      SparkOdometryThread.getInstance().fillModuleInputs(moduleID, inputs);
+    }
   }
 
   @Override
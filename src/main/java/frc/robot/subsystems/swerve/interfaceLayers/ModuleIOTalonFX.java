@@ -36,8 +36,6 @@ import frc.robot.subsystems.swerve.Module;
 import frc.robot.subsystems.swerve.SwerveSubsystem;
 import frc.robot.util.CANConstants;
 import frc.robot.util.CANConstants.Drivebase;
-import frc.robot.util.SwerveUtils;
-import java.util.Queue;
 
 /**
  * Module IO implementation for a Talon FX drive motor controller, a Talon FX azimuth motor
@@ -58,17 +56,10 @@ public class ModuleIOTalonFX implements ModuleIO {
   /** The CANcoder for azimuth. */
   private final CANcoder cancoder;
 
-  /**
-   * A {@link Queue} holding all the timestamps that the async odometry thread captures.
-   *
-   * <ul>
-   *   <li><b>Units:</b>
-   *       <ul>
-   *         <li>Seconds
-   *       </ul>
-   * </ul>
-   */
-  private Queue<Double> timestampQueue;
+  /** The index of the module, used to find this module's data in each {@link OdometryFrame}. */
+  private final int moduleID;
+  /** If the drive and azimuth positions are being sampled by the async odometry thread. */
+  private boolean highFrequencyOdometry = false;
   /**
    * The current distance that the module has driven so far.
    *
@@ -80,17 +71,6 @@ public class ModuleIOTalonFX implements ModuleIO {
    * </ul>
    */
   private final StatusSignal<Double> drivePosition;
-  /**
-   * A {@link Queue} holding all the drive positions that the async odometry thread captures.
-   *
-   * <ul>
-   *   <li><b>Units:</b>
-   *       <ul>
-   *         <li>Meters
-   *       </ul>
-   * </ul>
-   */
-  private Queue<Double> drivePositionQueue;
   /**
    * The current drive velocity of the module.
    *
@@ -159,17 +139,6 @@ public class ModuleIOTalonFX implements ModuleIO {
    * </ul>
    */
   private final StatusSignal<Double> azimuthPosition;
-  /**
-   * A {@link Queue} holding all the azimuth positions that the async odometry thread captures.
-   *
-   * <ul>
-   *   <li><b>Units:</b>
-   *       <ul>
-   *         <li>Rotations
-   *       </ul>
-   * </ul>
-   */
-  private Queue<Double> azimuthPositionQueue;
   /**
    * The current velocity of the azimuth.
    *
@@ -244,6 +213,7 @@ public class ModuleIOTalonFX implements ModuleIO {
    */
   @SuppressWarnings("unused")
   public ModuleIOTalonFX(int moduleID) {
+    this.moduleID = moduleID;
     // PIDF tuning values. NONE OF THESE VALUES SHOULD BE NEGATIVE, IF THEY ARE YA DONE GOOFED
     // SOMEWHERE
     double drive_kS; // Amps of current needed to overcome friction
@@ -408,12 +378,14 @@ public class ModuleIOTalonFX implements ModuleIO {
 
     // Set up the StatusSignals for getting values.
     if (Module.ODOMETRY_FREQUENCY > 50) {
-      timestampQueue = PhoenixOdometryThread.getInstance().makeTimestampQueue();
-      drivePositionQueue =
-          PhoenixOdometryThread.getInstance().registerSignal(driveTalon, driveTalon.getPosition());
-      azimuthPositionQueue =
-          PhoenixOdometryThread.getInstance()
-              .registerSignal(azimuthTalon, azimuthTalon.getPosition());
+      PhoenixOdometryThread.getInstance()
+          .registerModule(
+              moduleID,
+              driveTalon,
+              driveTalon.getPosition(),
+              azimuthTalon,
+              azimuthTalon.getPosition());
+      highFrequencyOdometry = true;
     }
 
     drivePosition = driveTalon.getPosition();
@@ -467,23 +439,21 @@ public class ModuleIOTalonFX implements ModuleIO {
         azimuthClosedLoopOutput,
         azimuthAppliedCurrent);
 
-    inputs.drivePosition = Meters.of(drivePosition.getValueAsDouble());
-    inputs.driveVelocity = MetersPerSecond.of(driveVelocity.getValueAsDouble());
-    inputs.driveAppliedVoltage = Volts.of(driveAppliedVolts.getValueAsDouble());
+    inputs.drivePositionMeters = drivePosition.getValueAsDouble();
+    inputs.driveVelocityMetersPerSec = driveVelocity.getValueAsDouble();
+    inputs.driveAppliedVolts = driveAppliedVolts.getValueAsDouble();
     inputs.driveAppliedOutput = driveClosedLoopOutput.getValueAsDouble();
-    inputs.driveAppliedCurrent = Amps.of(driveAppliedCurrent.getValueAsDouble());
+    inputs.driveAppliedAmps = driveAppliedCurrent.getValueAsDouble();
 
     inputs.azimuthAbsolutePosition =
         Rotation2d.fromRotations(azimuthAbsolutePosition.getValueAsDouble());
-    inputs.azimuthVelocity = RotationsPerSecond.of(azimuthVelocity.getValueAsDouble());
-    inputs.azimuthAppliedVoltage = Volts.of(azimuthAppliedVolts.getValueAsDouble());
+    inputs.azimuthVelocityRadPerSec = azimuthVelocity.getValueAsDouble() * 2 * Math.PI;
+    inputs.azimuthAppliedVolts = azimuthAppliedVolts.getValueAsDouble();
     inputs.azimuthAppliedOutput = azimuthClosedLoopOutput.getValueAsDouble();
-    inputs.azimuthAppliedCurrent = Amps.of(azimuthAppliedCurrent.getValueAsDouble());
+    inputs.azimuthAppliedAmps = azimuthAppliedCurrent.getValueAsDouble();
 
-    if (timestampQueue != null) {
-      inputs.odometryTimestamps = SwerveUtils.queueToDoubleArray(timestampQueue);
-      inputs.odometryDrivePositionsMeters = SwerveUtils.queueToDoubleArray(drivePositionQueue);
-      inputs.odometryAzimuthPositions = SwerveUtils.queueToRotation2dArray(azimuthPositionQueue);
+    if (highFrequencyOdometry) {
+      PhoenixOdometryThread.getInstance().fillModuleInputs(moduleID, inputs);
     }
   }
 
@@ -0,0 +1,122 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.subsystems.swerve.interfaceLayers;
+
+/**
+ * One odometry sample of the whole drivebase: every module's drive position and azimuth plus the
+ * gyro yaw, all captured in the same tick of an odometry thread. Frames are published as a unit by
+ * {@link OdometryFrameBuffer}, so the values in a frame always belong together.
+ *
+ * <p>Frames are preallocated and reused, so they are mutable. Don't hold on to a frame past the
+ * loop it was read in.
+ */
+public class OdometryFrame {
+  /**
+   * The time the frame as a whole was captured, which is what the pose estimator uses. See {@link
+   * OdometryFrameBuffer} for how this is picked from the per-signal timestamps.
+   *
+   * <ul>
+   *   <li><b>Units:</b>
+   *       <ul>
+   *         <li>Seconds
+   *       </ul>
+   * </ul>
+   */
+  public double timestamp = 0;
+  /**
+   * The drive position of each module, indexed by module index.
+   *
+   * <ul>
+   *   <li><b>Units:</b>
+   *       <ul>
+   *         <li>Meters
+   *       </ul>
+   * </ul>
+   */
+  public final double[] drivePositionsMeters = new double[4];
+  /**
+   * The time each module's drive position was captured, indexed by module index.
+   *
+   * <ul>
+   *   <li><b>Units:</b>
+   *       <ul>
+   *         <li>Seconds
+   *       </ul>
+   * </ul>
+   */
+  public final double[] driveTimestamps = new double[4];
+  /**
+   * The azimuth position of each module, indexed by module index.
+   *
+   * <ul>
+   *   <li><b>Units:</b>
+   *       <ul>
+   *         <li>Rotations
+   *       </ul>
+   * </ul>
+   */
+  public final double[] azimuthPositionsRotations = new double[4];
+  /**
+   * The time each module's azimuth position was captured, indexed by module index.
+   *
+   * <ul>
+   *   <li><b>Units:</b>
+   *       <ul>
+   *         <li>Seconds
+   *       </ul>
+   * </ul>
+   */
+  public final double[] azimuthTimestamps = new double[4];
+  /** If each module is registered with the odometry thread, indexed by module index. */
+  public final boolean[] hasModule = new boolean[4];
+  /**
+   * The yaw of the robot. 0 degrees is away from the driver station, CCW+. Only valid if {@link
+   * #hasYaw} is true.
+   *
+   * <ul>
+   *   <li><b>Units:</b>
+   *       <ul>
+   *         <li>Degrees
+   *       </ul>
+   * </ul>
+   */
+  public double yawDegrees = 0;
+  /**
+   * The time the yaw was captured. Only valid if {@link #hasYaw} is true.
+   *
+   * <ul>
+   *   <li><b>Units:</b>
+   *       <ul>
+   *         <li>Seconds
+   *       </ul>
+   * </ul>
+   */
+  public double yawTimestamp = 0;
+  /** If a gyro is registered with the odometry thread, and so {@link #yawDegrees} is valid. */
+  public boolean hasYaw = false;
+
+  /** Copies every value from another frame into this one. */
+  public void copyFrom(OdometryFrame other) {
+    timestamp = other.timestamp;
+    System.arraycopy(other.drivePositionsMeters, 0, drivePositionsMeters, 0, 4);
+    System.arraycopy(other.driveTimestamps, 0, driveTimestamps, 0, 4);
+    System.arraycopy(other.azimuthPositionsRotations, 0, azimuthPositionsRotations, 0, 4);
+    System.arraycopy(other.azimuthTimestamps, 0, azimuthTimestamps, 0, 4);
+    System.arraycopy(other.hasModule, 0, hasModule, 0, 4);
+    yawDegrees = other.yawDegrees;
+    yawTimestamp = other.yawTimestamp;
+    hasYaw = other.hasYaw;
+  }
+}
@@ -0,0 +1,309 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.subsystems.swerve.interfaceLayers;
+
+import frc.robot.subsystems.swerve.Module;
+import frc.robot.util.LogKey;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Hands {@link OdometryFrame}s from an odometry thread to the main loop without locking.
+ *
+ * <p>This is a single-producer/single-consumer ring buffer. The odometry thread is the only writer,
+ * using {@link #beginPublish()} and {@link #finishPublish()}. The main loop is the only reader,
+ * using {@link #poll()} once per loop and then {@link #getFrameCount()} and {@link #getFrame(int)}.
+ * A frame only becomes visible to the reader once it has been completely written, and neither side
+ * ever waits on the other. If the main loop falls behind and the ring fills up, new frames are
+ * dropped instead of blocking the odometry thread.
+ *
+ * <p>Producers fill in every signal's own capture timestamp. When a frame is published, the buffer
+ * picks the frame's overall timestamp from those. If {@link Module#ALIGN_ODOMETRY_SAMPLES} is on,
+ * as it is by default, every signal is linearly interpolated between its previous and current
+ * sample onto the oldest of the current timestamps, so that every value in the frame describes the
+ * same instant. If it is off, the values are left as captured and the frame is stamped with the
+ * gyro's timestamp, since heading errors hurt the pose estimate the most, or the average drive
+ * timestamp if there is no gyro.
+ *
+ * <p>A frame listener can also be set with {@link #setFrameListener(Consumer)}, which sees every
+ * frame on the producer thread as soon as it is complete, including frames that are dropped from
+ * the ring.
+ */
+public class OdometryFrameBuffer {
+  /** The prefix used for telemetry keys. */
+  private final LogKey logKey;
+  /** The handoff ring. Frame {@code n} lives at index {@code n % ring.length}. */
+  private final OdometryFrame[] ring;
+  /** The number of frames fully written by the producer. Only written by the producer. */
+  private final AtomicLong publishedFrames = new AtomicLong();
+  /** The number of frames read by the consumer. Only written by the consumer. */
+  private final AtomicLong consumedFrames = new AtomicLong();
+  /** The frames received by the last call to {@link #poll()}. Only touched by the consumer. */
+  private final OdometryFrame[] polledFrames;
+  /** The number of valid entries in {@link #polledFrames}. */
+  private int polledFrameCount = 0;
+
+  // Telemetry, written by the producer and read by the consumer.
+  /** The number of frames the producer dropped because the ring was full. */
+  private final AtomicLong droppedFrames = new AtomicLong();
+  /** The longest time the producer has spent waiting for new data since the last poll. */
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+  /** The longest time the producer has spent filling in a frame since the last poll. */
+  private final AtomicLong maxPublishNanos = new AtomicLong();
+  /** Sample interval and timeout stats. */
+  private final OdometryTimingStats timing;
+  /** When the producer started filling in the current frame. */
+  private long publishStartNanos = 0;
+  /** The frame being filled in by the producer. */
+  private OdometryFrame currentFrame = null;
+  /** If {@link #currentFrame} is the overflow frame, and so won't be published. */
+  private boolean currentFrameDropped = false;
+  /** Filled in instead of a ring frame when the ring is full, so the listener still sees it. */
+  private final OdometryFrame overflowFrame = new OdometryFrame();
+  /** Sees every frame on the producer thread, or null. */
+  private volatile Consumer<OdometryFrame> frameListener = null;
+  /** The raw, unaligned values of the last published frame. Only touched by the producer. */
+  private OdometryFrame previousRawFrame = new OdometryFrame();
+  /** Scratch space for the raw values of the frame being aligned. Only touched by the producer. */
+  private OdometryFrame currentRawFrame = new OdometryFrame();
+  /** If {@link #previousRawFrame} holds a sample yet. */
+  private boolean hasPreviousRawFrame = false;
+
+  /**
+   * Constructs a new frame buffer.
+   *
+   * @param logKey The prefix used for telemetry keys, such as "Odometry/PhoenixThread".
+   * @param capacity The number of frames the ring can hold. Should cover a few robot loops.
+   * @param frequencyHz The rate the producer samples at, in hertz.
+   */
+  public OdometryFrameBuffer(String logKey, int capacity, double frequencyHz) {
+    this.logKey = LogKey.of(logKey);
+    timing = new OdometryTimingStats(frequencyHz);
+    ring = new OdometryFrame[capacity];
+    polledFrames = new OdometryFrame[capacity];
+    for (int i = 0; i < capacity; i++) {
+      ring[i] = new OdometryFrame();
+      polledFrames[i] = new OdometryFrame();
+    }
+  }
+
+  /**
+   * Producer side. Reserves the next frame to be filled in. Should be called once per sample, even
+   * when the last sample was dropped, since it also records the sample interval.
+   *
+   * @return The frame to fill in. If the ring is full, this is a scratch frame that will only be
+   *     passed to the frame listener and then dropped.
+   */
+  public OdometryFrame beginPublish() {
+    publishStartNanos = System.nanoTime();
+    timing.recordSample(publishStartNanos);
+    long next = publishedFrames.get();
+    currentFrameDropped = next - consumedFrames.get() >= ring.length;
+    if (currentFrameDropped) {
+      droppedFrames.incrementAndGet();
+      currentFrame = overflowFrame;
+    } else {
+      currentFrame = ring[(int) (next % ring.length)];
+    }
+    return currentFrame;
+  }
+
+  /**
+   * Producer side. Picks the timestamp of the frame returned by {@link #beginPublish()}, aligns its
+   * values if enabled, passes it to the frame listener, and makes it visible to the consumer unless
+   * it was dropped.
+   */
+  public void finishPublish() {
+    OdometryFrame frame = currentFrame;
+    if (Module.ALIGN_ODOMETRY_SAMPLES) {
+      alignFrame(frame);
+    } else {
+      frame.timestamp = frame.hasYaw ? frame.yawTimestamp : averageDriveTimestamp(frame);
+    }
+    Consumer<OdometryFrame> listener = frameListener;
+    if (listener != null) {
+      listener.accept(frame);
+    }
+    if (!currentFrameDropped) {
+      publishedFrames.lazySet(publishedFrames.get() + 1); // Release
+    }
+    updateMax(maxPublishNanos, System.nanoTime() - publishStartNanos);
+  }
+
+  /**
+   * Sets a listener that sees every frame on the producer thread as soon as it is complete, before
+   * the main loop does. The listener must not hold on to the frame, and must be quick, since it
+   * delays the next sample.
+   *
+   * @param listener The listener, or null to remove it.
+   */
+  public void setFrameListener(Consumer<OdometryFrame> listener) {
+    frameListener = listener;
+  }
+
+  /** Producer side. Records how long the producer waited for new data before a sample. */
+  public void recordWait(long waitNanos) {
+    updateMax(maxWaitNanos, waitNanos);
+  }
+
+  /** Producer side. Records that waiting for or refreshing the signals returned an error. */
+  public void recordTimeout() {
+    timing.recordTimeout();
+  }
+
+  /**
+   * Consumer side. Takes every frame published since the last call, making them available through
+   * {@link #getFrame(int)}, and logs handoff telemetry. Never blocks.
+   */
+  public void poll() {
+    long startNanos = System.nanoTime();
+    long consumed = consumedFrames.get();
+    long published = publishedFrames.get(); // Acquire: every frame below this is fully written
+    polledFrameCount = (int) (published - consumed);
+    for (int i = 0; i < polledFrameCount; i++) {
+      polledFrames[i].copyFrom(ring[(int) ((consumed + i) % ring.length)]);
+    }
+    consumedFrames.lazySet(published); // Release the frames back to the producer
+
+    Logger.recordOutput(logKey.key("NewFrames"), polledFrameCount);
+    Logger.recordOutput(logKey.key("PollMicros"), (System.nanoTime() - startNanos) / 1e3);
+    Logger.recordOutput(logKey.key("DroppedFrames"), droppedFrames.get());
+    Logger.recordOutput(logKey.key("MaxWaitMs"), maxWaitNanos.getAndSet(0) / 1e6);
+    Logger.recordOutput(logKey.key("MaxPublishMicros"), maxPublishNanos.getAndSet(0) / 1e3);
+    timing.log(logKey);
+  }
+
+  /** Consumer side. Returns the number of frames received by the last {@link #poll()}. */
+  public int getFrameCount() {
+    return polledFrameCount;
+  }
+
+  /**
+   * Consumer side. Returns a frame received by the last {@link #poll()}, oldest first. The frame is
+   * overwritten by the next poll.
+   */
+  public OdometryFrame getFrame(int index) {
+    return polledFrames[index];
+  }
+
+  /** Returns the average timestamp of the drive positions in a frame. */
+  private static double averageDriveTimestamp(OdometryFrame frame) {
+    double sum = 0;
+    int count = 0;
+    for (int i = 0; i < 4; i++) {
+      if (frame.hasModule[i]) {
+        sum += frame.driveTimestamps[i];
+        count++;
+      }
+    }
+    return count > 0 ? sum / count : 0;
+  }
+
+  /**
+   * Interpolates every value in a frame onto the oldest of its signal timestamps, using the last
+   * published frame as the other end of each interpolation.
+   */
+  private void alignFrame(OdometryFrame frame) {
+    OdometryFrame previous = previousRawFrame;
+    OdometryFrame current = currentRawFrame;
+    current.copyFrom(frame);
+
+    double alignedTimestamp = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < 4; i++) {
+      if (current.hasModule[i]) {
+        alignedTimestamp = Math.min(alignedTimestamp, current.driveTimestamps[i]);
+        alignedTimestamp = Math.min(alignedTimestamp, current.azimuthTimestamps[i]);
+      }
+    }
+    if (current.hasYaw) {
+      alignedTimestamp = Math.min(alignedTimestamp, current.yawTimestamp);
+    }
+    if (alignedTimestamp == Double.POSITIVE_INFINITY) {
+      alignedTimestamp = 0;
+    }
+
+    if (hasPreviousRawFrame) {
+      for (int i = 0; i < 4; i++) {
+        if (!current.hasModule[i]) {
+          continue;
+        }
+        frame.drivePositionsMeters[i] =
+            interpolate(
+                previous.drivePositionsMeters[i],
+                previous.driveTimestamps[i],
+                current.drivePositionsMeters[i],
+                current.driveTimestamps[i],
+                alignedTimestamp);
+        // Absolute encoders wrap around, so interpolate along the shortest path
+        double azimuthDelta =
+            current.azimuthPositionsRotations[i] - previous.azimuthPositionsRotations[i];
+        azimuthDelta -= Math.round(azimuthDelta);
+        frame.azimuthPositionsRotations[i] =
+            interpolate(
+                previous.azimuthPositionsRotations[i],
+                previous.azimuthTimestamps[i],
+                previous.azimuthPositionsRotations[i] + azimuthDelta,
+                current.azimuthTimestamps[i],
+                alignedTimestamp);
+      }
+      if (current.hasYaw) {
+        frame.yawDegrees =
+            interpolate(
+                previous.yawDegrees,
+                previous.yawTimestamp,
+                current.yawDegrees,
+                current.yawTimestamp,
+                alignedTimestamp);
+      }
+    }
+    for (int i = 0; i < 4; i++) {
+      frame.driveTimestamps[i] = alignedTimestamp;
+      frame.azimuthTimestamps[i] = alignedTimestamp;
+    }
+    frame.yawTimestamp = alignedTimestamp;
+    frame.timestamp = alignedTimestamp;
+
+    previousRawFrame = current;
+    currentRawFrame = previous;
+    hasPreviousRawFrame = true;
+  }
+
+  /**
+   * Linearly interpolates a signal between two samples. Doesn't extrapolate past either sample, and
+   * falls back to the newer sample if the two share a timestamp.
+   */
+  private static double interpolate(
+      double previousValue,
+      double previousTimestamp,
+      double currentValue,
+      double currentTimestamp,
+      double timestamp) {
+    double span = currentTimestamp - previousTimestamp;
+    if (span <= 0) {
+      return currentValue;
+    }
+    double t = Math.max(0, Math.min(1, (timestamp - previousTimestamp) / span));
+    return previousValue + (currentValue - previousValue) * t;
+  }
+
+  /** Raises a telemetry maximum without locking. */
+  private static void updateMax(AtomicLong max, long value) {
+    long current = max.get();
+    while (value > current && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+}
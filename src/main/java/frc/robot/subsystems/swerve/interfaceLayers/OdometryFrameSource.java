@@ -0,0 +1,81 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.subsystems.swerve.interfaceLayers;
+
+import frc.robot.subsystems.swerve.interfaceLayers.GyroIO.GyroIOInputs;
+import frc.robot.subsystems.swerve.interfaceLayers.ModuleIO.ModuleIOInputs;
+import java.util.function.Consumer;
+
+/** Something that captures {@link OdometryFrame}s for the IO layers to read, once per loop. */
+public interface OdometryFrameSource {
+  /** Returns the number of frames received this loop. */
+  public int getFrameCount();
+
+  /** Returns a frame received this loop, oldest first. */
+  public OdometryFrame getFrame(int index);
+
+  /** Returns if the source has been started and is capturing frames. */
+  public boolean isRunning();
+
+  /**
+   * Sets a listener that sees every frame on the capturing thread as soon as it is complete, before
+   * the main loop does. See {@link OdometryFrameBuffer#setFrameListener(Consumer)}.
+   *
+   * @param listener The listener, or null to remove it.
+   */
+  public void setFrameListener(Consumer<OdometryFrame> listener);
+
+  /**
+   * Fills in a module's odometry inputs with the frames received this loop.
+   *
+   * <p>The arrays are new every loop. AdvantageKit keeps a reference to each logged array and only
+   * writes a value when it differs from the last loop's, so an array filled in place would compare
+   * equal to itself and never be logged again.
+   *
+   * @param moduleIndex The index of the module.
+   * @param inputs The inputs to fill in.
+   */
+  public default void fillModuleInputs(int moduleIndex, ModuleIOInputs inputs) {
+    int sampleCount = getFrameCount();
+    inputs.odometryTimestamps = new double[sampleCount];
+    inputs.odometryDrivePositionsMeters = new double[sampleCount];
+    inputs.odometryAzimuthPositionsRad = new double[sampleCount];
+    for (int i = 0; i < sampleCount; i++) {
+      OdometryFrame frame = getFrame(i);
+      inputs.odometryTimestamps[i] = frame.timestamp;
+      inputs.odometryDrivePositionsMeters[i] = frame.drivePositionsMeters[moduleIndex];
+      inputs.odometryAzimuthPositionsRad[i] =
+          frame.azimuthPositionsRotations[moduleIndex] * 2 * Math.PI;
+    }
+  }
+
+  /**
+   * Fills in the gyro's odometry inputs with the frames received this loop. Unlike the modules, the
+   * yaw samples carry the yaw signal's own capture time rather than the frame's.
+   *
+   * @param inputs The inputs to fill in. The arrays are new every loop, see {@link
+   *     #fillModuleInputs(int, ModuleIOInputs)}.
+   */
+  public default void fillGyroInputs(GyroIOInputs inputs) {
+    int sampleCount = getFrameCount();
+    inputs.odometryYawTimestamps = new double[sampleCount];
+    inputs.odometryYawPositionsRad = new double[sampleCount];
+    for (int i = 0; i < sampleCount; i++) {
+      OdometryFrame frame = getFrame(i);
+      inputs.odometryYawTimestamps[i] = frame.yawTimestamp;
+      inputs.odometryYawPositionsRad[i] = Math.toRadians(frame.yawDegrees);
+    }
+  }
+}
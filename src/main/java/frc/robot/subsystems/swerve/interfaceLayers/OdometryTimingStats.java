@@ -0,0 +1,175 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.subsystems.swerve.interfaceLayers;
+
+import frc.robot.subsystems.swerve.Module;
+import frc.robot.util.LogKey;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Tracks how well an odometry thread keeps up with its sample rate, such as {@link
+ * Module#ODOMETRY_FREQUENCY}.
+ *
+ * <p>The odometry thread records the time between consecutive samples and any timeouts. The main
+ * loop logs a summary once per loop with {@link #log(String)}. Intervals go into a fixed-bucket
+ * histogram covering 0 to {@link #HISTOGRAM_SPAN_PERIODS} sample periods, with one overflow bucket
+ * at the end. The histogram and counters are cumulative since boot, while the min, max and mean
+ * interval only cover the samples since the last loop.
+ *
+ * <p>Everything is lock-free. The per-loop sum and count are read separately, so the mean can be
+ * off by a sample now and then. That is fine for telemetry.
+ */
+public class OdometryTimingStats {
+  /** The number of histogram buckets per sample period. */
+  public static final int BUCKETS_PER_PERIOD = 8;
+  /** The number of sample periods the histogram covers before the overflow bucket. */
+  public static final int HISTOGRAM_SPAN_PERIODS = 3;
+  /**
+   * How late a sample has to be to count as a missed deadline.
+   *
+   * <ul>
+   *   <li><b>Units:</b>
+   *       <ul>
+   *         <li>Sample periods
+   *       </ul>
+   * </ul>
+   */
+  public static final double DEADLINE_PERIODS = 1.5;
+
+  /** The nominal time between samples. */
+  private final long periodNanos;
+  /** The width of each histogram bucket. */
+  private final long bucketWidthNanos;
+  /** The sample count of each histogram bucket. The last one holds every longer interval. */
+  private final AtomicLongArray histogram =
+      new AtomicLongArray(BUCKETS_PER_PERIOD * HISTOGRAM_SPAN_PERIODS + 1);
+  /** Copy of {@link #histogram} that gets logged, reused to avoid allocating every loop. */
+  private final long[] loggedHistogram = new long[histogram.length()];
+
+  /** The number of intervals longer than {@link #DEADLINE_PERIODS} periods. */
+  private final AtomicLong deadlineMisses = new AtomicLong();
+  /** The number of times waiting for or refreshing the signals returned an error. */
+  private final AtomicLong timeouts = new AtomicLong();
+  /** The shortest interval since the last loop. */
+  private final AtomicLong minIntervalNanos = new AtomicLong(Long.MAX_VALUE);
+  /** The longest interval since the last loop. */
+  private final AtomicLong maxIntervalNanos = new AtomicLong();
+  /** The sum of the intervals since the last loop. */
+  private final AtomicLong intervalSumNanos = new AtomicLong();
+  /** The number of intervals since the last loop. */
+  private final AtomicLong intervalCount = new AtomicLong();
+
+  /** When the last sample was taken. Only touched by the odometry thread. */
+  private long lastSampleNanos = 0;
+
+  /**
+   * Constructs new timing stats.
+   *
+   * @param frequencyHz The rate the odometry thread samples at, in hertz.
+   */
+  public OdometryTimingStats(double frequencyHz) {
+    periodNanos = (long) (1e9 / frequencyHz);
+    bucketWidthNanos = periodNanos / BUCKETS_PER_PERIOD;
+  }
+
+  /**
+   * Odometry thread side. Records that a sample is being taken now.
+   *
+   * @param nowNanos The current {@link System#nanoTime()}.
+   */
+  public void recordSample(long nowNanos) {
+    if (lastSampleNanos != 0) {
+      long interval = nowNanos - lastSampleNanos;
+      int bucket = (int) Math.min(interval / bucketWidthNanos, histogram.length() - 1);
+      histogram.incrementAndGet(bucket);
+      if (interval > periodNanos * DEADLINE_PERIODS) {
+        deadlineMisses.incrementAndGet();
+      }
+      updateMin(minIntervalNanos, interval);
+      updateMax(maxIntervalNanos, interval);
+      intervalSumNanos.addAndGet(interval);
+      intervalCount.incrementAndGet();
+    }
+    lastSampleNanos = nowNanos;
+  }
+
+  /** Odometry thread side. Records that waiting for or refreshing the signals failed. */
+  public void recordTimeout() {
+    timeouts.incrementAndGet();
+  }
+
+  /**
+   * Main loop side. Logs a summary of the sample timing and resets the per-loop stats.
+   *
+   * @param logKey The prefix for the telemetry keys.
+   */
+  public void log(LogKey logKey) {
+    long count = intervalCount.getAndSet(0);
+    long sum = intervalSumNanos.getAndSet(0);
+    long min = minIntervalNanos.getAndSet(Long.MAX_VALUE);
+    long max = maxIntervalNanos.getAndSet(0);
+    Logger.recordOutput(logKey.key("MinIntervalMs"), count > 0 ? min / 1e6 : 0);
+    Logger.recordOutput(logKey.key("MaxIntervalMs"), max / 1e6);
+    Logger.recordOutput(logKey.key("MeanIntervalMs"), count > 0 ? sum / 1e6 / count : 0);
+    Logger.recordOutput(logKey.key("DeadlineMisses"), deadlineMisses.get());
+    Logger.recordOutput(logKey.key("Timeouts"), timeouts.get());
+
+    long total = 0;
+    for (int i = 0; i < loggedHistogram.length; i++) {
+      loggedHistogram[i] = histogram.get(i);
+      total += loggedHistogram[i];
+    }
+    Logger.recordOutput(logKey.key("IntervalHistogram"), loggedHistogram);
+    Logger.recordOutput(logKey.key("IntervalP50Ms"), percentileMs(total, 0.5));
+    Logger.recordOutput(logKey.key("IntervalP99Ms"), percentileMs(total, 0.99));
+  }
+
+  /**
+   * Estimates a percentile of every interval since boot from the logged histogram. Returns the
+   * upper edge of the bucket the percentile falls in, or infinity if it is in the overflow bucket.
+   */
+  private double percentileMs(long total, double percentile) {
+    if (total == 0) {
+      return 0;
+    }
+    long target = (long) Math.ceil(total * percentile);
+    long seen = 0;
+    for (int i = 0; i < loggedHistogram.length - 1; i++) {
+      seen += loggedHistogram[i];
+      if (seen >= target) {
+        return (i + 1) * bucketWidthNanos / 1e6;
+      }
+    }
+    return Double.POSITIVE_INFINITY;
+  }
+
+  /** Lowers a minimum without locking. */
+  private static void updateMin(AtomicLong min, long value) {
+    long current = min.get();
+    while (value < current && !min.compareAndSet(current, value)) {
+      current = min.get();
+    }
+  }
+
+  /** Raises a maximum without locking. */
+  private static void updateMax(AtomicLong max, long value) {
+    long current = max.get();
+    while (value > current && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+}
@@ -16,34 +16,52 @@ package frc.robot.subsystems.swerve.interfaceLayers;
 
 import com.ctre.phoenix6.BaseStatusSignal;
 import com.ctre.phoenix6.CANBus;
+import com.ctre.phoenix6.StatusCode;
 import com.ctre.phoenix6.StatusSignal;
 import com.ctre.phoenix6.hardware.ParentDevice;
 import frc.robot.subsystems.swerve.Module;
-import frc.robot.subsystems.swerve.SwerveSubsystem;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import org.littletonrobotics.junction.Logger;
 
 /**
- * Provides an interface for asynchronously reading high-frequency measurements to a set of queues.
+ * Provides an interface for asynchronously reading high-frequency odometry measurements.
  *
  * <p>This version is intended for Phoenix 6 devices on both the RIO and CANivore buses. When using
  * a CANivore, the thread uses the "waitForAll" blocking method to enable more consistent sampling.
  * This also allows Phoenix Pro users to benefit from lower latency between devices using CANivore
  * time synchronization.
+ *
+ * <p>Every tick, the thread captures one {@link OdometryFrame} holding the drive position and
+ * azimuth of every registered module plus the gyro yaw, and publishes it as a unit through an
+ * {@link OdometryFrameBuffer}. The main loop picks the frames up with {@link #poll()}.
+ *
+ * <p>Each value in a frame is stamped with its own signal's capture time. Phoenix picks the best
+ * timestamp it has for each signal: the device's own timestamp with Pro on a CANivore, otherwise
+ * the time the CANivore or RIO received the frame. That is converted to the FPGA timebase through
+ * the signal's latency.
  */
-public class PhoenixOdometryThread extends Thread {
+public class PhoenixOdometryThread extends Thread implements OdometryFrameSource {
   private final Lock signalsLock =
       new ReentrantLock(); // Prevents conflicts when registering signals
   private BaseStatusSignal[] signals = new BaseStatusSignal[0];
-  private final List<ArrayBlockingQueue<Double>> queues = new ArrayList<>();
-  private final List<ArrayBlockingQueue<Double>> timestampQueues = new ArrayList<>();
   private boolean isCANFD = false;
 
+  /** The drive position signal of each module, indexed by module index. */
+  private final BaseStatusSignal[] drivePositionSignals = new BaseStatusSignal[4];
+  /** The azimuth position signal of each module, indexed by module index. */
+  private final BaseStatusSignal[] azimuthPositionSignals = new BaseStatusSignal[4];
+  /** The yaw signal of the gyro, if one is registered. */
+  private BaseStatusSignal yawSignal = null;
+
+  /** The buffer that carries frames over to the main loop. */
+  private final OdometryFrameBuffer frames =
+      new OdometryFrameBuffer(
+          "Odometry/PhoenixThread",
+          (int) Math.ceil(Module.ODOMETRY_FREQUENCY / 50.0) * 4,
+          Module.ODOMETRY_FREQUENCY);
+
   private static PhoenixOdometryThread instance = null;
 
   public static PhoenixOdometryThread getInstance() {
@@ -60,84 +78,145 @@ public class PhoenixOdometryThread extends Thread {
 
   @Override
   public void start() {
-    if (timestampQueues.size() > 0) {
+    if (signals.length > 0) {
       super.start();
     }
   }
 
-  public Queue<Double> registerSignal(ParentDevice device, StatusSignal<Double> signal) {
-    ArrayBlockingQueue<Double> queue =
-        new ArrayBlockingQueue<>((int) Math.ceil(Module.ODOMETRY_FREQUENCY / 50.0));
+  /**
+   * Registers a swerve module's position signals to be sampled every tick.
+   *
+   * @param moduleIndex The index of the module, 0-3.
+   * @param driveDevice The device that provides the drive position signal.
+   * @param drivePosition The drive position signal, in meters.
+   * @param azimuthDevice The device that provides the azimuth position signal.
+   * @param azimuthPosition The azimuth position signal, in rotations.
+   */
+  public void registerModule(
+      int moduleIndex,
+      ParentDevice driveDevice,
+      StatusSignal<Double> drivePosition,
+      ParentDevice azimuthDevice,
+      StatusSignal<Double> azimuthPosition) {
     signalsLock.lock();
-    SwerveSubsystem.odometryLock.lock();
     try {
-      isCANFD = CANBus.isNetworkFD(device.getNetwork());
-      BaseStatusSignal[] newSignals = new BaseStatusSignal[signals.length + 1];
-      System.arraycopy(signals, 0, newSignals, 0, signals.length);
-      newSignals[signals.length] = signal;
-      signals = newSignals;
-      queues.add(queue);
+      checkNotStarted();
+      drivePositionSignals[moduleIndex] = drivePosition;
+      azimuthPositionSignals[moduleIndex] = azimuthPosition;
+      addSignal(driveDevice, drivePosition);
+      addSignal(azimuthDevice, azimuthPosition);
     } finally {
       signalsLock.unlock();
-      SwerveSubsystem.odometryLock.unlock();
     }
-    return queue;
   }
 
-  public Queue<Double> makeTimestampQueue() {
-    ArrayBlockingQueue<Double> queue =
-        new ArrayBlockingQueue<>((int) Math.ceil(Module.ODOMETRY_FREQUENCY / 50.0));
-    SwerveSubsystem.odometryLock.lock();
+  /**
+   * Registers the gyro's yaw signal to be sampled every tick.
+   *
+   * @param device The gyro.
+   * @param yaw The yaw signal, in degrees.
+   */
+  public void registerGyro(ParentDevice device, StatusSignal<Double> yaw) {
+    signalsLock.lock();
     try {
-      timestampQueues.add(queue);
+      checkNotStarted();
+      yawSignal = yaw;
+      addSignal(device, yaw);
     } finally {
-      SwerveSubsystem.odometryLock.unlock();
+      signalsLock.unlock();
+    }
+  }
+
+  private void checkNotStarted() {
+    if (isAlive()) {
+      throw new IllegalStateException("Cannot register signals after the thread has started!");
+    }
+  }
+
+  private void addSignal(ParentDevice device, BaseStatusSignal signal) {
+    isCANFD = CANBus.isNetworkFD(device.getNetwork());
+    BaseStatusSignal[] newSignals = new BaseStatusSignal[signals.length + 1];
+    System.arraycopy(signals, 0, newSignals, 0, signals.length);
+    newSignals[signals.length] = signal;
+    signals = newSignals;
+  }
+
+  /**
+   * Takes every frame captured since the last call. Never blocks. Must be called from the main loop
+   * once per loop, before the IO layers read their frames with {@link #getFrameCount()} and {@link
+   * #getFrame(int)}.
+   */
+  public void poll() {
+    if (isAlive()) {
+      frames.poll();
     }
-    return queue;
+  }
+
+  /** Returns the number of frames received by the last {@link #poll()}. */
+  @Override
+  public int getFrameCount() {
+    return frames.getFrameCount();
+  }
+
+  /** Returns a frame received by the last {@link #poll()}, oldest first. */
+  @Override
+  public OdometryFrame getFrame(int index) {
+    return frames.getFrame(index);
+  }
+
+  @Override
+  public boolean isRunning() {
+    return isAlive();
+  }
+
+  @Override
+  public void setFrameListener(Consumer<OdometryFrame> listener) {
+    frames.setFrameListener(listener);
   }
 
   @Override
   public void run() {
     while (true) {
       // Wait for updates from all signals
-      signalsLock.lock();
+      long waitStartNanos = System.nanoTime();
+      StatusCode status = StatusCode.OK;
       try {
         if (isCANFD) {
-          BaseStatusSignal.waitForAll(2.0 / Module.ODOMETRY_FREQUENCY, signals);
+          status = BaseStatusSignal.waitForAll(2.0 / Module.ODOMETRY_FREQUENCY, signals);
         } else {
           // "waitForAll" does not support blocking on multiple
           // signals with a bus that is not CAN FD, regardless
           // of Pro licensing. No reasoning for this behavior
           // is provided by the documentation.
           Thread.sleep((long) (1000.0 / Module.ODOMETRY_FREQUENCY));
-          if (signals.length > 0) BaseStatusSignal.refreshAll(signals);
+          if (signals.length > 0) status = BaseStatusSignal.refreshAll(signals);
         }
       } catch (InterruptedException e) {
         e.printStackTrace();
-      } finally {
-        signalsLock.unlock();
+      }
+      frames.recordWait(System.nanoTime() - waitStartNanos);
+      if (!status.isOK()) {
+        frames.recordTimeout(); // Still publish the sample, the stale values are better than none
       }
 
-      // Save new data to queues
-      SwerveSubsystem.odometryLock.lock();
-      try {
-        double timestamp = Logger.getRealTimestamp() / 1e6;
-        double totalLatency = 0.0;
-        for (BaseStatusSignal signal : signals) {
-          totalLatency += signal.getTimestamp().getLatency();
+      // Save new data as one frame
+      OdometryFrame frame = frames.beginPublish();
+      double now = Logger.getRealTimestamp() / 1e6;
+      for (int i = 0; i < 4; i++) {
+        frame.hasModule[i] = drivePositionSignals[i] != null;
+        if (frame.hasModule[i]) {
+          frame.drivePositionsMeters[i] = drivePositionSignals[i].getValueAsDouble();
+          frame.driveTimestamps[i] = now - drivePositionSignals[i].getTimestamp().getLatency();
+          frame.azimuthPositionsRotations[i] = azimuthPositionSignals[i].getValueAsDouble();
+          frame.azimuthTimestamps[i] = now - azimuthPositionSignals[i].getTimestamp().getLatency();
         }
-        if (signals.length > 0) {
-          timestamp -= totalLatency / signals.length;
-        }
-        for (int i = 0; i < signals.length; i++) {
-          queues.get(i).offer(signals[i].getValueAsDouble());
-        }
-        for (int i = 0; i < timestampQueues.size(); i++) {
-          timestampQueues.get(i).offer(timestamp);
-        }
-      } finally {
-        SwerveSubsystem.odometryLock.unlock();
       }
+      frame.hasYaw = yawSignal != null;
+      if (frame.hasYaw) {
+        frame.yawDegrees = yawSignal.getValueAsDouble();
+        frame.yawTimestamp = now - yawSignal.getTimestamp().getLatency();
+      }
+      frames.finishPublish(); // Picks the frame's timestamp
     }
   }
 }
@@ -0,0 +1,221 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.subsystems.swerve.interfaceLayers;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.StatusCode;
+import com.ctre.phoenix6.StatusSignal;
+import edu.wpi.first.wpilibj.Notifier;
+import frc.robot.subsystems.swerve.Module;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Provides an interface for asynchronously reading high-frequency odometry measurements on a
+ * drivebase driven by Spark MAXes.
+ *
+ * <p>A {@link Notifier} samples the drive encoders of the Spark MAXes, the CANcoder azimuths and
+ * optionally a Phoenix 6 gyro at {@link Module#SPARK_ODOMETRY_FREQUENCY}, and publishes each
+ * sample as one {@link OdometryFrame} through an {@link OdometryFrameBuffer}. The main loop picks
+ * the frames up with {@link #poll()}, just like with the {@link PhoenixOdometryThread}.
+ *
+ * <p>Spark MAX getters return the value from the last status frame the RIO received, so the drive
+ * motors' position status frame period needs to be at least as fast as the sample rate for this to
+ * do anything useful.
+ *
+ * <p>Spark MAXes don't report when a status frame was captured, so drive positions are stamped
+ * with the time they were read. The CANcoder and gyro values are stamped with their own capture
+ * times from Phoenix.
+ */
+public class SparkOdometryThread implements OdometryFrameSource {
+  private final Lock signalsLock =
+      new ReentrantLock(); // Prevents conflicts when registering signals
+  /** Reads the drive position of each module in meters, indexed by module index. */
+  private final DoubleSupplier[] drivePositions = new DoubleSupplier[4];
+  /** The azimuth position signal of each module in rotations, indexed by module index. */
+  private final BaseStatusSignal[] azimuthPositionSignals = new BaseStatusSignal[4];
+  /** The yaw signal of the gyro in degrees, if one is registered. */
+  private BaseStatusSignal yawSignal = null;
+  /** Every Phoenix 6 signal that needs to be refreshed each sample. */
+  private BaseStatusSignal[] phoenixSignals = new BaseStatusSignal[0];
+
+  /** The buffer that carries frames over to the main loop. */
+  private final OdometryFrameBuffer frames =
+      new OdometryFrameBuffer(
+          "Odometry/SparkThread",
+          (int) Math.ceil(Module.SPARK_ODOMETRY_FREQUENCY / 50.0) * 4,
+          Module.SPARK_ODOMETRY_FREQUENCY);
+
+  private final Notifier notifier = new Notifier(this::sample);
+  private boolean started = false;
+
+  private static SparkOdometryThread instance = null;
+
+  public static SparkOdometryThread getInstance() {
+    if (instance == null) {
+      instance = new SparkOdometryThread();
+    }
+    return instance;
+  }
+
+  private SparkOdometryThread() {
+    notifier.setName("SparkOdometryThread");
+  }
+
+  /**
+   * Starts sampling. Does nothing unless all four modules have been registered, since every module
+   * and the gyro register in their constructors, before the drive subsystem calls this.
+   *
+   * @throws IllegalStateException If {@link Module#SPARK_ODOMETRY_FREQUENCY} is outside 100 to 250
+   *     hertz.
+   */
+  public void start() {
+    signalsLock.lock();
+    try {
+      if (started) {
+        return;
+      }
+      for (DoubleSupplier drivePosition : drivePositions) {
+        if (drivePosition == null) {
+          return;
+        }
+      }
+      if (Module.SPARK_ODOMETRY_FREQUENCY < 100 || Module.SPARK_ODOMETRY_FREQUENCY > 250) {
+        throw new IllegalStateException(
+            "Spark odometry frequency must be between 100 and 250 hertz!");
+      }
+      started = true;
+    } finally {
+      signalsLock.unlock();
+    }
+    notifier.startPeriodic(1.0 / Module.SPARK_ODOMETRY_FREQUENCY);
+  }
+
+  /**
+   * Registers a swerve module to be sampled every tick.
+   *
+   * @param moduleIndex The index of the module, 0-3.
+   * @param drivePosition Reads the drive position in meters. Must be safe to call from another
+   *     thread, such as a Spark MAX's {@code RelativeEncoder::getPosition}.
+   * @param azimuthPosition The absolute azimuth position signal in rotations. This should be a
+   *     clone that isn't refreshed anywhere else, since it will be refreshed from another thread.
+   */
+  public void registerModule(
+      int moduleIndex, DoubleSupplier drivePosition, StatusSignal<Double> azimuthPosition) {
+    signalsLock.lock();
+    try {
+      checkNotStarted();
+      drivePositions[moduleIndex] = drivePosition;
+      azimuthPositionSignals[moduleIndex] = azimuthPosition;
+      addPhoenixSignal(azimuthPosition);
+    } finally {
+      signalsLock.unlock();
+    }
+  }
+
+  /**
+   * Registers a Phoenix 6 gyro's yaw signal to be sampled every tick.
+   *
+   * @param yaw The yaw signal in degrees. This should be a clone that isn't refreshed anywhere
+   *     else, since it will be refreshed from another thread.
+   */
+  public void registerGyro(StatusSignal<Double> yaw) {
+    signalsLock.lock();
+    try {
+      checkNotStarted();
+      yawSignal = yaw;
+      addPhoenixSignal(yaw);
+    } finally {
+      signalsLock.unlock();
+    }
+  }
+
+  private void checkNotStarted() {
+    if (started) {
+      throw new IllegalStateException("Cannot register signals after the thread has started!");
+    }
+  }
+
+  private void addPhoenixSignal(BaseStatusSignal signal) {
+    BaseStatusSignal[] newSignals = new BaseStatusSignal[phoenixSignals.length + 1];
+    System.arraycopy(phoenixSignals, 0, newSignals, 0, phoenixSignals.length);
+    newSignals[phoenixSignals.length] = signal;
+    phoenixSignals = newSignals;
+  }
+
+  /**
+   * Takes every frame captured since the last call. Never blocks. Must be called from the main loop
+   * once per loop, before the IO layers read their frames with {@link #getFrameCount()} and {@link
+   * #getFrame(int)}.
+   */
+  public void poll() {
+    if (started) {
+      frames.poll();
+    }
+  }
+
+  /** Returns the number of frames received by the last {@link #poll()}. */
+  @Override
+  public int getFrameCount() {
+    return frames.getFrameCount();
+  }
+
+  /** Returns a frame received by the last {@link #poll()}, oldest first. */
+  @Override
+  public OdometryFrame getFrame(int index) {
+    return frames.getFrame(index);
+  }
+
+  @Override
+  public boolean isRunning() {
+    return started;
+  }
+
+  @Override
+  public void setFrameListener(Consumer<OdometryFrame> listener) {
+    frames.setFrameListener(listener);
+  }
+
+  /** Captures one frame. Runs on the notifier thread. */
+  private void sample() {
+    long refreshStartNanos = System.nanoTime();
+    StatusCode status = BaseStatusSignal.refreshAll(phoenixSignals);
+    frames.recordWait(System.nanoTime() - refreshStartNanos);
+    if (!status.isOK()) {
+      frames.recordTimeout();
+    }
+
+    OdometryFrame frame = frames.beginPublish();
+    double now = Logger.getRealTimestamp() / 1e6;
+    for (int i = 0; i < 4; i++) {
+      frame.hasModule[i] = drivePositions[i] != null;
+      if (frame.hasModule[i]) {
+        frame.drivePositionsMeters[i] = drivePositions[i].getAsDouble();
+        frame.driveTimestamps[i] = now;
+        frame.azimuthPositionsRotations[i] = azimuthPositionSignals[i].getValueAsDouble();
+        frame.azimuthTimestamps[i] = now - azimuthPositionSignals[i].getTimestamp().getLatency();
+      }
+    }
+    frame.hasYaw = yawSignal != null;
+    if (frame.hasYaw) {
+      frame.yawDegrees = yawSignal.getValueAsDouble();
+      frame.yawTimestamp = now - yawSignal.getTimestamp().getLatency();
+    }
+    frames.finishPublish(); // Picks the frame's timestamp
+  }
+}
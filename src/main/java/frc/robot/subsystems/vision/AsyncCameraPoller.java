@@ -0,0 +1,123 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.subsystems.vision;
+
+import frc.robot.subsystems.vision.interfaceLayers.VisionIO;
+import frc.robot.subsystems.vision.interfaceLayers.VisionIO.VisionFrameStatus;
+import frc.robot.subsystems.vision.interfaceLayers.VisionIO.VisionStatusCode;
+import frc.robot.subsystems.vision.interfaceLayers.VisionIOInputsAutoLogged;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Polls one camera on a worker thread, so that NetworkTables reads and pose solving don't happen on
+ * the main loop.
+ *
+ * <p>The worker calls {@link VisionIO#updateInputs} at a fixed rate, each time into a fresh inputs
+ * object, and publishes the result. The main loop picks up the latest result with {@link
+ * #takeLatest()}. While a result from a new frame is waiting to be picked up, the worker doesn't
+ * poll the camera at all, so later frames stay queued in the camera instead of replacing it. A
+ * result from a stale frame never replaces one that hasn't been picked up yet either.
+ *
+ * <p>Published inputs are never touched by the worker again, so the main loop owns them outright
+ * and can log them with {@code Logger.processInputs} like any other inputs. Only the main loop's
+ * inputs are logged, which keeps log replay deterministic.
+ */
+public class AsyncCameraPoller {
+  private final VisionIO camera;
+  /** The latest result not yet picked up by the main loop, or null. */
+  private final AtomicReference<VisionIOInputsAutoLogged> latest = new AtomicReference<>();
+  /** The longest a poll has taken since the last time it was logged. */
+  private final AtomicLong maxPollNanos = new AtomicLong();
+  /** The total time spent polling since the last time it was taken. */
+  private final AtomicLong pollNanos = new AtomicLong();
+  /** If polling is paused because the camera isn't worth processing right now. */
+  private volatile boolean paused = false;
+
+  /**
+   * Starts polling a camera.
+   *
+   * @param camera The camera to poll. Must not be used by anything else afterwards.
+   * @param executor The executor to poll on.
+   * @param periodSecs How often to poll the camera.
+   */
+  public AsyncCameraPoller(VisionIO camera, ScheduledExecutorService executor, double periodSecs) {
+    this.camera = camera;
+    long periodMicros = (long) (periodSecs * 1e6);
+    executor.scheduleAtFixedRate(this::poll, 0, periodMicros, TimeUnit.MICROSECONDS);
+  }
+
+  /** Polls the camera once. Runs on the worker thread. */
+  private void poll() {
+    if (paused || hasNewFrame()) {
+      return;
+    }
+    long startNanos = System.nanoTime();
+    VisionIOInputsAutoLogged inputs = new VisionIOInputsAutoLogged();
+    try {
+      camera.updateInputs(inputs);
+    } catch (RuntimeException e) {
+      // An exception would cancel every future poll, so report it as a camera failure instead
+      inputs.statusCode = VisionStatusCode.CAMERA_FAIL;
+    }
+    if (inputs.frameStatus == VisionFrameStatus.STALE) {
+      latest.compareAndSet(null, inputs);
+    } else {
+      latest.set(inputs);
+    }
+
+    long elapsedNanos = System.nanoTime() - startNanos;
+    pollNanos.addAndGet(elapsedNanos);
+    long current = maxPollNanos.get();
+    while (elapsedNanos > current && !maxPollNanos.compareAndSet(current, elapsedNanos)) {
+      current = maxPollNanos.get();
+    }
+  }
+
+  /**
+   * Takes the latest result published by the worker. Never blocks.
+   *
+   * @return The latest result, or null if the worker hasn't finished a poll since the last call.
+   */
+  public VisionIOInputsAutoLogged takeLatest() {
+    return latest.getAndSet(null);
+  }
+
+  /** Returns if a result from a new frame is waiting to be taken. */
+  public boolean hasNewFrame() {
+    VisionIOInputsAutoLogged pending = latest.get();
+    return pending != null && pending.frameStatus == VisionFrameStatus.NEW;
+  }
+
+  /**
+   * Pauses or resumes polling. While paused, the camera isn't polled at all, and frames it
+   * produces are never processed.
+   */
+  public void setPaused(boolean paused) {
+    this.paused = paused;
+  }
+
+  /** Returns the total time spent polling since the last call, in seconds. */
+  public double takePollSecs() {
+    return pollNanos.getAndSet(0) / 1e9;
+  }
+
+  /** Returns the longest a poll has taken since the last call, in microseconds. */
+  public double takeMaxPollMicros() {
+    return maxPollNanos.getAndSet(0) / 1e3;
+  }
+}
@@ -0,0 +1,49 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.subsystems.vision;
+
+/** The robot state that vision measurements are checked against before they're used. */
+public interface RobotStateProvider {
+  /**
+   * Looks up the estimated pose of the robot at a timestamp without allocating.
+   *
+   * @param timestamp The timestamp, in seconds.
+   * @param poseOut Filled in with the X, Y, and heading of the pose, in meters and radians.
+   * @return If the pose could be found.
+   */
+  public boolean getPoseAt(double timestamp, double[] poseOut);
+
+  /**
+   * Looks up the heading of the robot at a timestamp from the logged gyro yaw alone, without any
+   * vision correction. Doesn't allocate.
+   *
+   * @param timestamp The timestamp, in seconds.
+   * @return The field-relative heading, in radians, or NaN if the gyro wasn't connected or the
+   *     timestamp is outside the history.
+   */
+  public double getGyroHeadingAt(double timestamp);
+
+  /**
+   * Returns how uncertain the estimated translation is, as a standard deviation in meters. Vision
+   * measurements are gated on their distance from the estimate relative to this and their own.
+   */
+  public double getTranslationStdDevMeters();
+
+  /** Returns the angular velocity of the robot, in radians per second, CCW+. */
+  public double getAngularVelocityRadPerSec();
+
+  /** Returns how fast the robot is driving, in meters per second. */
+  public double getLinearSpeedMetersPerSec();
+}
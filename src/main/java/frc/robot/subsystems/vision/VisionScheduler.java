@@ -0,0 +1,175 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Transform3d;
+import frc.robot.Robot;
+import frc.robot.util.FieldLayout;
+import frc.robot.util.LogKey;
+import java.util.Arrays;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Decides which cameras are worth processing each loop, so vision doesn't spend time on frames that
+ * would be thrown out anyway.
+ *
+ * <p>A camera is skipped while the robot moves too fast for its frames to be sharp, or while no tag
+ * on the field could be in its view. Skipped cameras aren't polled at all. Separately, new frames
+ * are deferred to the next loop if this loop is already close to overrunning, up to a limit so a
+ * camera is never starved.
+ *
+ * <p>Only the main loop uses this.
+ */
+public class VisionScheduler {
+  /** How fast the robot can drive before frames are too blurry to be worth processing. */
+  private static final double MAX_LINEAR_SPEED_METERS_PER_SEC = 4;
+  /** The horizontal field of view of the cameras, in radians. */
+  private static final double CAMERA_FOV_RADS = Math.toRadians(70);
+  /** How far away a tag can be and still be detected reliably, in meters. */
+  private static final double MAX_TAG_DISTANCE_METERS = 6;
+  /** How much of the loop must be left to process new frames this loop, in seconds. */
+  private static final double MIN_LOOP_TIME_LEFT_SECS = 0.005;
+  /** How many loops in a row a camera's frames can be deferred. */
+  private static final int MAX_DEFERRED_LOOPS = 2;
+  /** How much each new cost sample moves the average cost of a camera. */
+  private static final double COST_AVERAGE_WEIGHT = 0.05;
+
+  /** Why a camera isn't being processed. */
+  public enum SkipReason {
+    NONE,
+    TOO_FAST,
+    NO_VISIBLE_TAGS
+  }
+
+  private final Transform3d[] robotToCameraTransforms;
+  private final FieldLayout fieldLayout = FieldLayout.getInstance();
+  private final SkipReason[] skipReasons;
+  private final int[] deferredLoops;
+  /** The average time each camera takes to process per loop, in seconds. */
+  private final double[] averageCostSecs;
+  /** Scratch space for the current pose. */
+  private final double[] pose = new double[3];
+
+  // Stats
+  private long motionSkips = 0;
+  private long visibilitySkips = 0;
+  private long deferrals = 0;
+  private double estimatedSecsSaved = 0;
+
+  /**
+   * Constructs a new vision scheduler.
+   *
+   * @param robotToCameraTransforms Where each camera is on the robot.
+   */
+  public VisionScheduler(Transform3d[] robotToCameraTransforms) {
+    this.robotToCameraTransforms = robotToCameraTransforms;
+    skipReasons = new SkipReason[robotToCameraTransforms.length];
+    deferredLoops = new int[robotToCameraTransforms.length];
+    averageCostSecs = new double[robotToCameraTransforms.length];
+    Arrays.fill(skipReasons, SkipReason.NONE);
+  }
+
+  /**
+   * Decides which cameras to skip this loop, from the motion and pose of the robot. Should be
+   * called once per loop.
+   */
+  public void update(RobotStateProvider robotState) {
+    double now = Logger.getTimestamp() / 1e6;
+    boolean poseKnown = robotState.getPoseAt(now, pose);
+    boolean tooFast =
+        Math.abs(robotState.getAngularVelocityRadPerSec())
+                > VisionSubsystem.MAX_ANGULAR_VELOCITY_RAD_PER_SEC
+            || robotState.getLinearSpeedMetersPerSec() > MAX_LINEAR_SPEED_METERS_PER_SEC;
+    for (int i = 0; i < skipReasons.length; i++) {
+      if (tooFast) {
+        skipReasons[i] = SkipReason.TOO_FAST;
+        motionSkips++;
+      } else if (poseKnown && !canSeeAnyTag(robotToCameraTransforms[i])) {
+        skipReasons[i] = SkipReason.NO_VISIBLE_TAGS;
+        visibilitySkips++;
+      } else {
+        skipReasons[i] = SkipReason.NONE;
+        continue;
+      }
+      estimatedSecsSaved += averageCostSecs[i];
+    }
+  }
+
+  /** Returns why a camera is being skipped this loop, or {@link SkipReason#NONE} if it isn't. */
+  public SkipReason getSkipReason(int cameraIndex) {
+    return skipReasons[cameraIndex];
+  }
+
+  /**
+   * Returns if there's enough time left in the loop to process a camera's new frames now. If not,
+   * they should be left for the next loop.
+   */
+  public boolean shouldDefer(int cameraIndex) {
+    double loopElapsedSecs = (Logger.getRealTimestamp() - Logger.getTimestamp()) / 1e6;
+    if (Robot.defaultPeriodSecs - loopElapsedSecs >= MIN_LOOP_TIME_LEFT_SECS
+        || deferredLoops[cameraIndex] >= MAX_DEFERRED_LOOPS) {
+      deferredLoops[cameraIndex] = 0;
+      return false;
+    }
+    deferredLoops[cameraIndex]++;
+    deferrals++;
+    return true;
+  }
+
+  /**
+   * Records how long a camera took to process this loop, to estimate how much time skipping it
+   * saves.
+   *
+   * @param cameraIndex The camera.
+   * @param costSecs The time spent polling and processing the camera, in seconds.
+   */
+  public void recordCost(int cameraIndex, double costSecs) {
+    averageCostSecs[cameraIndex] =
+        averageCostSecs[cameraIndex] == 0
+            ? costSecs
+            : MathUtil.interpolate(averageCostSecs[cameraIndex], costSecs, COST_AVERAGE_WEIGHT);
+  }
+
+  /** Logs how often cameras were skipped or deferred, and roughly how much time that saved. */
+  public void log(LogKey logKey) {
+    Logger.recordOutput(logKey.key("SkippedCameraLoops/TooFast"), motionSkips);
+    Logger.recordOutput(logKey.key("SkippedCameraLoops/NoVisibleTags"), visibilitySkips);
+    Logger.recordOutput(logKey.key("DeferredFrames"), deferrals);
+    Logger.recordOutput(logKey.key("EstimatedMsSaved"), estimatedSecsSaved * 1e3);
+  }
+
+  /** Returns if a tag on the field could be in view of a camera, given the current pose. */
+  private boolean canSeeAnyTag(Transform3d robotToCamera) {
+    double cos = Math.cos(pose[2]);
+    double sin = Math.sin(pose[2]);
+    double cameraX = pose[0] + robotToCamera.getX() * cos - robotToCamera.getY() * sin;
+    double cameraY = pose[1] + robotToCamera.getX() * sin + robotToCamera.getY() * cos;
+    double cameraHeading = pose[2] + robotToCamera.getRotation().getZ();
+    for (int id = 0; id <= fieldLayout.getMaxTagId(); id++) {
+      if (!fieldLayout.isTagFacing(id, cameraX, cameraY)
+          || fieldLayout.getDistanceToTag(id, cameraX, cameraY) > MAX_TAG_DISTANCE_METERS) {
+        continue;
+      }
+      double bearing =
+          Math.atan2(
+              fieldLayout.getTagYMeters(id) - cameraY, fieldLayout.getTagXMeters(id) - cameraX);
+      if (Math.abs(MathUtil.angleModulus(bearing - cameraHeading)) < CAMERA_FOV_RADS / 2) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -16,105 +16,503 @@ package frc.robot.subsystems.vision;
 
 import static edu.wpi.first.units.Units.*;
 
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.geometry.Pose2d;
-import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Rotation3d;
 import edu.wpi.first.math.geometry.Transform3d;
 import edu.wpi.first.math.geometry.Translation3d;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.Field;
 import frc.robot.Robot;
 import frc.robot.Robot.Mode;
+import frc.robot.subsystems.vision.VisionScheduler.SkipReason;
 import frc.robot.subsystems.vision.interfaceLayers.*;
+import frc.robot.subsystems.vision.interfaceLayers.VisionIO.VisionFrameStatus;
 import frc.robot.subsystems.vision.interfaceLayers.VisionIO.VisionPoseEstimate;
 import frc.robot.subsystems.vision.interfaceLayers.VisionIO.VisionStatusCode;
+import frc.robot.util.FieldLayout;
+import frc.robot.util.LogKey;
+import frc.robot.util.LoopProfiler;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Consumer;
 import org.littletonrobotics.junction.Logger;
 
 public class VisionSubsystem extends SubsystemBase {
+  /** How often each camera is polled by its worker. */
+  private static final double CAMERA_POLL_PERIOD_SECS = 0.01;
+  /** Measurements captured closer together than this are fused into one before being applied. */
+  private static final double FUSION_WINDOW_SECS = 0.005;
+  /** The prefix for the scheduler's telemetry keys. */
+  private static final LogKey SCHEDULER_LOG_KEY = LogKey.of("VisionPoseEstimator/Scheduler");
+  /**
+   * The worker threads that poll the cameras, shared by every instance so that constructing
+   * another one doesn't start more threads. Created on first use, and never shut down since its
+   * threads are daemons that live as long as the robot program.
+   */
+  private static ScheduledExecutorService cameraWorkers = null;
+
+  // Gating
+  /**
+   * How far a measurement can be from the estimated pose before it's rejected, in standard
+   * deviations of the difference between them.
+   */
+  private static final double OUTLIER_REJECT_SIGMAS = 3;
+  /**
+   * How far a measurement can be from the estimated pose before it's trusted less, in proportion to
+   * how far past this it is, in standard deviations of the difference between them.
+   */
+  private static final double OUTLIER_DOWNWEIGHT_SIGMAS = 1.5;
+  /** How far the measured heading can be from the gyro heading, in radians. */
+  private static final double MAX_YAW_ERROR_RADS = Radians.convertFrom(15, Degrees);
+  /** How fast the robot can turn before frames are too blurry to use, in radians per second. */
+  static final double MAX_ANGULAR_VELOCITY_RAD_PER_SEC = Math.PI;
+  /** How much the std devs of a measurement grow per radian per second of robot rotation. */
+  private static final double ANGULAR_VELOCITY_STD_DEV_SCALE = 0.5;
+  /**
+   * How many measurements in a row can be rejected as outliers before the estimated pose is assumed
+   * to be wrong instead, and the next measurement is let through to correct it.
+   */
+  private static final int MAX_CONSECUTIVE_REJECTIONS = 25;
+  /**
+   * The heading std dev of a gyro-assisted single tag measurement, in radians. The heading comes
+   * from the gyro, so vision knows nothing about it, and it shouldn't move the estimated heading.
+   */
+  private static final double GYRO_ASSISTED_ROTATION_STD_DEV = 1e3;
+
+  private static final Transform3d CAMERA_MODULE_V1_TRANSFORM =
+      new Transform3d(
+          Meters.convertFrom(12.75, Inches),
+          Meters.convertFrom(-22.75, Centimeters),
+          Meters.convertFrom(28.5, Centimeters),
+          new Rotation3d(0, Radians.convertFrom(-45, Degrees), 0));
+
   private Consumer<VisionPoseEstimate> estimationConsumer;
+  private RobotStateProvider robotState;
   private VisionIO[] cameras;
   private VisionIOInputsAutoLogged[] cameraData;
+  /** The prefix for each camera's telemetry keys, built once since it depends on the name. */
+  private LogKey[] cameraLogKeys;
+  /** Where each camera is on the robot. */
+  private Transform3d[] robotToCameraTransforms;
+  /**
+   * If each camera should solve frames with only one tag from the gyro heading and the position of
+   * the tag, rather than using the pose PhotonVision solved. See {@link #solveSingleTag(int)}.
+   */
+  private boolean[] useGyroAssistedSingleTag;
+  /** How much to trust each camera, fitted from match logs by {@link VisionTrustModelFitter}. */
+  private VisionTrustModel[] trustModels;
+  /**
+   * Polls each camera on a worker thread. Null outside of real mode, where the cameras are polled
+   * on the main loop instead, since polling them is cheap and replay needs the IO layers to be
+   * updated in lockstep with the main loop.
+   */
+  private AsyncCameraPoller[] pollers;
+  /** The time each camera's worker spent polling during the last loop, in seconds. */
+  private double[] lastPollSecs;
+  private VisionScheduler scheduler;
+  private final FieldLayout fieldLayout = FieldLayout.getInstance();
+  /** The number of new frames each camera has produced. */
+  private long[] freshFrames;
+  /** The number of updates each camera has had without a new frame. */
+  private long[] staleFrames;
+  // Gating stats for each camera
+  private long[] outlierRejections;
+  private long[] yawRejections;
+  private long[] spinRejections;
+  private long[] downweightedMeasurements;
+  /** The number of measurements in a row from each camera rejected as outliers or for heading. */
+  private int[] consecutiveRejections;
+  /** Scratch space for the estimated pose when a measurement was captured. */
+  private final double[] poseAtCapture = new double[3];
+  /** The measurements of the current loop, reused between loops. */
+  private final List<VisionPoseEstimate> measurementBatch = new ArrayList<>();
+  private final LoopProfiler.Section periodicSection =
+      LoopProfiler.section(getName() + ".periodic()");
 
-  public VisionSubsystem(Consumer<VisionPoseEstimate> estimationConsumer) {
+  public VisionSubsystem(
+      Consumer<VisionPoseEstimate> estimationConsumer, RobotStateProvider robotState) {
     this.estimationConsumer = estimationConsumer;
+    this.robotState = robotState;
 
+    robotToCameraTransforms = new Transform3d[] {CAMERA_MODULE_V1_TRANSFORM};
+    useGyroAssistedSingleTag = new boolean[] {true};
+    trustModels = new VisionTrustModel[] {VisionTrustModel.load("Camera_Module_v1")};
     if (Robot.currentMode != Mode.REAL) {
       cameras = new VisionIO[] {new VisionIO() {}};
     } else {
       cameras =
           new VisionIO[] {
             new VisionIOPhoton(
-                "Camera_Module_v1",
-                new Transform3d(
-                    Meters.convertFrom(12.75, Inches),
-                    Meters.convertFrom(-22.75, Centimeters),
-                    Meters.convertFrom(28.5, Centimeters),
-                    new Rotation3d(0, Radians.convertFrom(-45, Degrees), 0)))
+                "Camera_Module_v1", CAMERA_MODULE_V1_TRANSFORM, useGyroAssistedSingleTag[0])
           };
     }
 
     cameraData = new VisionIOInputsAutoLogged[cameras.length];
+    cameraLogKeys = new LogKey[cameras.length];
+    lastPollSecs = new double[cameras.length];
+    scheduler = new VisionScheduler(robotToCameraTransforms);
+    freshFrames = new long[cameras.length];
+    staleFrames = new long[cameras.length];
+    outlierRejections = new long[cameras.length];
+    yawRejections = new long[cameras.length];
+    spinRejections = new long[cameras.length];
+    downweightedMeasurements = new long[cameras.length];
+    consecutiveRejections = new int[cameras.length];
 
     for (int i = 0; i < cameraData.length; i++) {
       cameraData[i] = new VisionIOInputsAutoLogged();
+      cameraLogKeys[i] = LogKey.of("VisionPoseEstimator/" + cameras[i].getName());
+    }
+
+    if (Robot.currentMode == Mode.REAL) {
+      ScheduledExecutorService executor = getCameraWorkers(cameras.length);
+      pollers = new AsyncCameraPoller[cameras.length];
+      for (int i = 0; i < cameras.length; i++) {
+        pollers[i] = new AsyncCameraPoller(cameras[i], executor, CAMERA_POLL_PERIOD_SECS);
+      }
     }
   }
 
+  /**
+   * Returns the shared camera worker threads, creating them if needed.
+   *
+   * @param threadCount How many threads to create, one per camera. Ignored if they already exist.
+   */
+  private static synchronized ScheduledExecutorService getCameraWorkers(int threadCount) {
+    if (cameraWorkers == null) {
+      cameraWorkers =
+          Executors.newScheduledThreadPool(
+              threadCount,
+              (task) -> {
+                Thread thread = new Thread(task, "VisionWorker");
+                thread.setDaemon(true);
+                return thread;
+              });
+    }
+    return cameraWorkers;
+  }
+
   @Override
   public void periodic() {
+    long startNanos = System.nanoTime();
     for (int i = 0; i < cameraData.length; i++) {
-      cameras[i].updateInputs(cameraData[i]);
-      Logger.processInputs("VisionPoseEstimator/" + cameras[i].getName(), cameraData[i]);
+      if (pollers != null) {
+        // Don't poll cameras that aren't worth processing, and leave frames for the next loop if
+        // this one is running long
+        pollers[i].setPaused(scheduler.getSkipReason(i) != SkipReason.NONE);
+        VisionIOInputsAutoLogged latest =
+            pollers[i].hasNewFrame() && scheduler.shouldDefer(i) ? null : pollers[i].takeLatest();
+        if (latest != null) {
+          cameraData[i] = latest;
+        } else {
+          // The worker hasn't finished a poll since last loop, so there's nothing new
+          cameraData[i].statusCode = VisionStatusCode.NO_DATA;
+          cameraData[i].frameStatus = VisionFrameStatus.STALE;
+        }
+        Logger.recordOutput(cameraLogKeys[i].key("MaxPollMicros"), pollers[i].takeMaxPollMicros());
+        lastPollSecs[i] = pollers[i].takePollSecs();
+      } else {
+        cameras[i].updateInputs(cameraData[i]);
+      }
+      Logger.processInputs(cameraLogKeys[i].path(), cameraData[i]);
+
+      if (cameraData[i].frameStatus == VisionFrameStatus.NEW) {
+        freshFrames[i]++;
+      } else {
+        staleFrames[i]++;
+      }
+      Logger.recordOutput(cameraLogKeys[i].key("FreshFrames"), freshFrames[i]);
+      Logger.recordOutput(cameraLogKeys[i].key("StaleFrames"), staleFrames[i]);
     }
+    periodicSection.record(startNanos);
   }
 
+  /**
+   * Sends the measurements of every camera from this loop to the estimation consumer.
+   *
+   * <p>Only new frames are used. The measurements are sent in the order they were captured rather
+   * than in camera order, so within a loop the estimator never has to apply a measurement older
+   * than one it already applied. A camera that delivers a frame a loop late can still cause that,
+   * which the estimator counts as a late vision update. Measurements captured within {@link
+   * #FUSION_WINDOW_SECS} of each other are fused into one first.
+   */
   public void updateEstimation() {
+    measurementBatch.clear();
+    scheduler.update(robotState);
     for (int i = 0; i < cameraData.length; i++) {
-      if (cameraData[i].statusCode == VisionStatusCode.OK) {
+      if (scheduler.getSkipReason(i) != SkipReason.NONE) {
+        continue;
+      }
+      long startNanos = System.nanoTime();
+      addMeasurements(i);
+      scheduler.recordCost(i, lastPollSecs[i] + (System.nanoTime() - startNanos) / 1e9);
+    }
+    for (int i = 0; i < cameraData.length; i++) {
+      LogKey logKey = cameraLogKeys[i].child("Gating");
+      Logger.recordOutput(logKey.key("OutlierRejections"), outlierRejections[i]);
+      Logger.recordOutput(logKey.key("YawRejections"), yawRejections[i]);
+      Logger.recordOutput(logKey.key("SpinRejections"), spinRejections[i]);
+      Logger.recordOutput(logKey.key("DownweightedMeasurements"), downweightedMeasurements[i]);
+    }
+
+    measurementBatch.sort(Comparator.comparingDouble((estimate) -> estimate.timestamp));
+
+    int fused = 0;
+    int start = 0;
+    while (start < measurementBatch.size()) {
+      int end = start + 1;
+      while (end < measurementBatch.size()
+          && measurementBatch.get(end).timestamp - measurementBatch.get(start).timestamp
+              <= FUSION_WINDOW_SECS) {
+        end++;
+      }
+      if (end - start == 1) {
+        estimationConsumer.accept(measurementBatch.get(start));
+      } else {
+        estimationConsumer.accept(fuse(measurementBatch.subList(start, end)));
+        fused += end - start - 1;
+      }
+      start = end;
+    }
+
+    scheduler.log(SCHEDULER_LOG_KEY);
+    Logger.recordOutput("VisionPoseEstimator/BatchSize", measurementBatch.size());
+    Logger.recordOutput("VisionPoseEstimator/FusedMeasurements", fused);
+  }
+
+  /** Adds the measurements from a camera's latest inputs to this loop's batch. */
+  private void addMeasurements(int i) {
+    // Only use frames that haven't been used before, so the same frame isn't counted twice
+    if (cameraData[i].frameStatus != VisionFrameStatus.NEW
+        || cameraData[i].statusCode != VisionStatusCode.OK) {
+      return;
+    }
+    if (cameraData[i].singleTagId >= 0) {
+      // The camera didn't solve a pose for this frame, so solve it from the gyro
+      VisionPoseEstimate estimate = solveSingleTag(i);
+      if (estimate != null) {
+        addToBatch(i, estimate);
+      }
+      return;
+    }
+    if (cameraData[i].queuedPoseEstimates.length > 0) {
+      // The camera queued every frame since the last loop, so use all of them
+      for (int j = 0; j < cameraData[i].queuedPoseEstimates.length; j++) {
         double trustWorthiness =
-            calculateStDevs(cameraData[i].trackedTags, cameraData[i].poseEstimate);
-        estimationConsumer.accept(
+            trustModels[i].getStdDev(
+                cameraData[i].queuedTagCounts[j], cameraData[i].queuedAverageTagDistances[j]);
+        addToBatch(
+            i,
             new VisionPoseEstimate(
-                cameraData[i].poseEstimate,
+                cameraData[i].queuedPoseEstimates[j],
                 trustWorthiness,
                 trustWorthiness,
-                cameraData[i].timestamp));
+                cameraData[i].queuedTimestamps[j]));
       }
+    } else {
+      double trustWorthiness =
+          calculateStDevs(i, cameraData[i].trackedTagIds, cameraData[i].poseEstimate);
+      addToBatch(
+          i,
+          new VisionPoseEstimate(
+              cameraData[i].poseEstimate,
+              trustWorthiness,
+              trustWorthiness,
+              cameraData[i].timestamp));
+    }
+  }
+
+  /**
+   * Solves the pose of the robot from a frame with only one tag in it, taking the heading of the
+   * robot as known from the logged gyro yaw when the frame was captured.
+   *
+   * <p>With the heading known, the only unknown is the translation, which follows directly from
+   * where the tag is on the field and where the camera saw it relative to the robot. Unlike a full
+   * pose solve from one tag, this can't flip between two ambiguous solutions, since both solutions
+   * put the tag at nearly the same distance and only disagree on its rotation.
+   *
+   * @param cameraIndex The camera that saw the tag.
+   * @return The measurement, or null if the tag or the heading at the time is unknown, or the pose
+   *     is off the field.
+   */
+  private VisionPoseEstimate solveSingleTag(int cameraIndex) {
+    VisionIOInputsAutoLogged data = cameraData[cameraIndex];
+    double heading = robotState.getGyroHeadingAt(data.timestamp);
+    if (!fieldLayout.hasTag(data.singleTagId) || Double.isNaN(heading)) {
+      return null;
+    }
+    Transform3d robotToCamera = robotToCameraTransforms[cameraIndex];
+    Translation3d robotToTag =
+        data.singleTagCameraToTarget
+            .getTranslation()
+            .rotateBy(robotToCamera.getRotation())
+            .plus(robotToCamera.getTranslation());
+
+    // Rotate the robot-relative tag position onto the field, and work back from the tag
+    double cos = Math.cos(heading);
+    double sin = Math.sin(heading);
+    double x =
+        fieldLayout.getTagXMeters(data.singleTagId)
+            - (robotToTag.getX() * cos - robotToTag.getY() * sin);
+    double y =
+        fieldLayout.getTagYMeters(data.singleTagId)
+            - (robotToTag.getX() * sin + robotToTag.getY() * cos);
+    // The same check as the camera makes on the poses it solves
+    if (x < 0 || y < 0 || x > Field.FIELD_LENGTH.in(Meters) || y > Field.FIELD_WIDTH.in(Meters)) {
+      return null;
     }
+
+    double trustWorthiness =
+        trustModels[cameraIndex].getStdDev(1, fieldLayout.getDistanceToTag(data.singleTagId, x, y));
+    return new VisionPoseEstimate(
+        new Pose2d(x, y, new Rotation2d(heading)),
+        trustWorthiness,
+        GYRO_ASSISTED_ROTATION_STD_DEV,
+        data.timestamp);
   }
 
-  private double calculateStDevs(Pose3d[] tagPoses, Pose2d botPose) {
-    switch (tagPoses.length) {
-      case 0 -> {
-        return .9;
+  /** Gates a measurement from a camera, and adds it to this loop's batch if it passes. */
+  private void addToBatch(int cameraIndex, VisionPoseEstimate estimate) {
+    GateResult result = gate(estimate, cameraIndex);
+    Logger.recordOutput(cameraLogKeys[cameraIndex].key("Gating/LastResult"), result.status());
+    switch (result.status()) {
+      case OUTLIER -> {
+        outlierRejections[cameraIndex]++;
+        consecutiveRejections[cameraIndex]++;
       }
-      case 1 -> {
-        return Meters.convertFrom(
-            20 // Base standard deviation
-                + 1 * calculateBotToTagDist(tagPoses[0], botPose), // Scaled with distance
-            Millimeters);
+      case YAW_MISMATCH -> {
+        yawRejections[cameraIndex]++;
+        consecutiveRejections[cameraIndex]++;
       }
+      case SPINNING -> spinRejections[cameraIndex]++;
       default -> {
-        return Meters.convertFrom(
-            10 // Base standard deviation
-                + 10 / tagPoses.length // Inversely scaled with number of tags
-                + .5 * averageBotToTagDist(tagPoses, botPose), // Scaled with avg distance
-            Millimeters);
+        consecutiveRejections[cameraIndex] = 0;
+        if (result.stdDevScale() > 1) {
+          downweightedMeasurements[cameraIndex]++;
+          estimate =
+              new VisionPoseEstimate(
+                  estimate.poseEstimate,
+                  estimate.trustworthiness.get(0, 0) * result.stdDevScale(),
+                  estimate.trustworthiness.get(2, 0) * result.stdDevScale(),
+                  estimate.timestamp);
+        }
+        measurementBatch.add(estimate);
       }
     }
   }
 
-  private double calculateBotToTagDist(Pose3d tagPose, Pose2d botPose) {
-    return tagPose
-        .getTranslation()
-        .getDistance(new Translation3d(botPose.getX(), botPose.getY(), 0));
+  /**
+   * The result of gating a measurement.
+   *
+   * @param status {@link VisionStatusCode#OK} if the measurement should be used, or why not.
+   * @param stdDevScale How much to multiply the measurement's std devs by if it's used.
+   */
+  private record GateResult(VisionStatusCode status, double stdDevScale) {}
+
+  /**
+   * Checks a measurement against the current state of the robot.
+   *
+   * <p>Measurements taken while the robot is spinning quickly are rejected, and slower spinning
+   * makes them less trusted. The measurement is then compared to the estimated pose at the time it
+   * was captured. It's rejected if its heading is far from the gyro-based heading. Its distance
+   * from the estimate is divided by the std dev of that distance, the root sum of squares of the
+   * estimate's std dev and the measurement's own. It's rejected if that's more than {@link
+   * #OUTLIER_REJECT_SIGMAS}, and trusted less if it's more than {@link #OUTLIER_DOWNWEIGHT_SIGMAS},
+   * so a measurement that already says it's uncertain is given more room.
+   *
+   * <p>If too many measurements in a row from one camera are rejected, the estimated pose is
+   * probably what's wrong, so the heading and distance checks are skipped for that camera until one
+   * of its measurements gets through. Each camera is counted separately, so one bad camera can't
+   * push the others into skipping the checks, and a good camera can't hide a bad one.
+   *
+   * @param estimate The measurement. Not modified.
+   * @param cameraIndex The camera the measurement came from.
+   * @return If the measurement should be used, and how much less to trust it.
+   */
+  private GateResult gate(VisionPoseEstimate estimate, int cameraIndex) {
+    double angularVelocity = Math.abs(robotState.getAngularVelocityRadPerSec());
+    if (angularVelocity > MAX_ANGULAR_VELOCITY_RAD_PER_SEC) {
+      return new GateResult(VisionStatusCode.SPINNING, 1);
+    }
+    double stdDevScale = 1 + angularVelocity * ANGULAR_VELOCITY_STD_DEV_SCALE;
+
+    boolean recovering = consecutiveRejections[cameraIndex] >= MAX_CONSECUTIVE_REJECTIONS;
+    if (!recovering && robotState.getPoseAt(estimate.timestamp, poseAtCapture)) {
+      double xError = estimate.poseEstimate.getX() - poseAtCapture[0];
+      double yError = estimate.poseEstimate.getY() - poseAtCapture[1];
+      double measuredYaw = estimate.poseEstimate.getRotation().getRadians();
+      double yawError = MathUtil.angleModulus(measuredYaw - poseAtCapture[2]);
+      if (Math.abs(yawError) > MAX_YAW_ERROR_RADS) {
+        return new GateResult(VisionStatusCode.YAW_MISMATCH, 1);
+      }
+
+      double errorStdDev =
+          Math.hypot(robotState.getTranslationStdDevMeters(), estimate.trustworthiness.get(0, 0));
+      double normalizedError = Math.hypot(xError, yError) / errorStdDev;
+      if (normalizedError > OUTLIER_REJECT_SIGMAS) {
+        return new GateResult(VisionStatusCode.OUTLIER, 1);
+      }
+      if (normalizedError > OUTLIER_DOWNWEIGHT_SIGMAS) {
+        stdDevScale *= normalizedError / OUTLIER_DOWNWEIGHT_SIGMAS;
+      }
+    }
+    return new GateResult(VisionStatusCode.OK, stdDevScale);
   }
 
-  private double averageBotToTagDist(Pose3d[] tagPoses, Pose2d botPose) {
-    double sum = 0;
-    for (Pose3d pose : tagPoses) {
-      sum += calculateBotToTagDist(pose, botPose);
+  /**
+   * Fuses measurements captured at nearly the same time into one, weighting each by the inverse of
+   * its variance.
+   *
+   * @param estimates The measurements to fuse. Must not be empty.
+   * @return The fused measurement, which is trusted more than any one of the measurements.
+   */
+  private VisionPoseEstimate fuse(List<VisionPoseEstimate> estimates) {
+    Rotation2d referenceRotation = estimates.get(0).poseEstimate.getRotation();
+    double translationWeightSum = 0;
+    double rotationWeightSum = 0;
+    double x = 0;
+    double y = 0;
+    double rotationOffset = 0;
+    double timestamp = 0;
+    for (VisionPoseEstimate estimate : estimates) {
+      double translationWeight = 1 / Math.pow(estimate.trustworthiness.get(0, 0), 2);
+      double rotationWeight = 1 / Math.pow(estimate.trustworthiness.get(2, 0), 2);
+      translationWeightSum += translationWeight;
+      rotationWeightSum += rotationWeight;
+      x += estimate.poseEstimate.getX() * translationWeight;
+      y += estimate.poseEstimate.getY() * translationWeight;
+      timestamp += estimate.timestamp * translationWeight;
+      // Average the rotations as offsets from the first one, so they don't wrap around
+      rotationOffset +=
+          MathUtil.angleModulus(
+                  estimate.poseEstimate.getRotation().minus(referenceRotation).getRadians())
+              * rotationWeight;
+    }
+    return new VisionPoseEstimate(
+        new Pose2d(
+            x / translationWeightSum,
+            y / translationWeightSum,
+            referenceRotation.plus(new Rotation2d(rotationOffset / rotationWeightSum))),
+        Math.sqrt(1 / translationWeightSum),
+        Math.sqrt(1 / rotationWeightSum),
+        timestamp / translationWeightSum);
+  }
+
+  private double calculateStDevs(int cameraIndex, int[] tagIds, Pose2d botPose) {
+    // Look the tags up by ID rather than doing pose math on the tracked tag poses
+    double distanceSum = 0;
+    int tagCount = 0;
+    for (int id : tagIds) {
+      if (fieldLayout.hasTag(id)) {
+        distanceSum += fieldLayout.getDistanceToTag(id, botPose.getX(), botPose.getY());
+        tagCount++;
+      }
     }
-    return sum / tagPoses.length;
+    return trustModels[cameraIndex].getStdDev(tagCount, tagCount > 0 ? distanceSum / tagCount : 0);
   }
 }
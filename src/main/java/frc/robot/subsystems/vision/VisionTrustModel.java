@@ -0,0 +1,117 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.subsystems.vision;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * How much to trust a camera's pose estimates, as a standard deviation that depends on how many
+ * tags were seen and how far away they were.
+ *
+ * <p>The coefficients are fitted from match logs by {@link VisionTrustModelFitter} and deployed as
+ * {@value #FILE_NAME}. Cameras missing from the file use hand-picked defaults.
+ */
+public class VisionTrustModel {
+  /** The name of the fitted model file, in the deploy directory. */
+  public static final String FILE_NAME = "vision_trust_model.json";
+
+  /** The std dev of a pose estimate with no tags, in meters. */
+  private static final double NO_TAG_STD_DEV = .9;
+
+  /** The hand-picked model used before any logs were fitted. */
+  public static final VisionTrustModel DEFAULT =
+      new VisionTrustModel(0.020, 0.001, 0.010, 0.010, 0.0005);
+
+  /** The std dev of a single tag estimate at a distance of 0, in meters. */
+  public final double singleTagBase;
+  /** How much the std dev of a single tag estimate grows per meter of distance. */
+  public final double singleTagPerMeter;
+  /** The std dev of a multi tag estimate at a distance of 0, ignoring tag count, in meters. */
+  public final double multiTagBase;
+  /** How much the std dev of a multi tag estimate grows per 1 / tag count. */
+  public final double multiTagPerInverseTagCount;
+  /** How much the std dev of a multi tag estimate grows per meter of average distance. */
+  public final double multiTagPerMeter;
+
+  public VisionTrustModel(
+      double singleTagBase,
+      double singleTagPerMeter,
+      double multiTagBase,
+      double multiTagPerInverseTagCount,
+      double multiTagPerMeter) {
+    this.singleTagBase = singleTagBase;
+    this.singleTagPerMeter = singleTagPerMeter;
+    this.multiTagBase = multiTagBase;
+    this.multiTagPerInverseTagCount = multiTagPerInverseTagCount;
+    this.multiTagPerMeter = multiTagPerMeter;
+  }
+
+  /**
+   * Loads the fitted model of a camera from the deploy directory.
+   *
+   * @param cameraName The name of the camera.
+   * @return The fitted model, or {@link #DEFAULT} if there isn't one.
+   */
+  public static VisionTrustModel load(String cameraName) {
+    File file = new File(Filesystem.getDeployDirectory(), FILE_NAME);
+    if (!file.exists()) {
+      return DEFAULT;
+    }
+    try {
+      JsonNode camera = new ObjectMapper().readTree(file).get(cameraName);
+      if (camera == null) {
+        return DEFAULT;
+      }
+      return new VisionTrustModel(
+          camera.path("singleTagBase").asDouble(DEFAULT.singleTagBase),
+          camera.path("singleTagPerMeter").asDouble(DEFAULT.singleTagPerMeter),
+          camera.path("multiTagBase").asDouble(DEFAULT.multiTagBase),
+          camera.path("multiTagPerInverseTagCount").asDouble(DEFAULT.multiTagPerInverseTagCount),
+          camera.path("multiTagPerMeter").asDouble(DEFAULT.multiTagPerMeter));
+    } catch (IOException e) {
+      DriverStation.reportError(
+          "Failed to load the vision trust model! Failed with error " + e.getMessage(), false);
+      return DEFAULT;
+    }
+  }
+
+  /**
+   * Returns how much to trust a pose estimate.
+   *
+   * @param tagCount How many tags the estimate was solved from.
+   * @param averageTagDistance The average distance to the tags, in meters.
+   * @return The std dev of the estimate, in meters.
+   */
+  public double getStdDev(int tagCount, double averageTagDistance) {
+    switch (tagCount) {
+      case 0 -> {
+        return NO_TAG_STD_DEV;
+      }
+      case 1 -> {
+        return singleTagBase + singleTagPerMeter * averageTagDistance;
+      }
+      default -> {
+        return multiTagBase
+            + multiTagPerInverseTagCount / tagCount
+            + multiTagPerMeter * averageTagDistance;
+      }
+    }
+  }
+}
@@ -0,0 +1,686 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.subsystems.vision;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+import frc.robot.subsystems.swerve.SwerveSubsystem;
+import frc.robot.util.FieldLayout;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * Fits a {@link VisionTrustModel} for each camera from AdvantageKit match logs. Runs on a dev
+ * machine, not the robot. See the {@code fitVisionTrustModel} Gradle task.
+ *
+ * <p>Every new pose estimate in the logs is compared to a reference pose that doesn't depend on
+ * the estimate itself. The logged robot pose can't be used for this, since vision was already
+ * fused into it. Instead, the robot's path is dead reckoned again from the logged module and gyro
+ * inputs, which is accurate over a few seconds but has no known position or heading on the field.
+ * Those are found for each estimate from the other estimates within {@link #ANCHOR_WINDOW_SECS}
+ * on both sides of it: the average offset between them and the dead reckoned path, with outliers
+ * left out. The estimate's own error is then its distance from the dead reckoned path moved by
+ * that offset. The size of the error gives a sample of the camera's std dev, and a least squares
+ * fit of those samples against tag count and distance gives the model.
+ *
+ * <p>Frames from cameras that solve single tags from the gyro have no pose solved by the camera,
+ * so they're left out.
+ *
+ * <p>Logs are streamed one at a time and only running sums are kept between them, so any number of
+ * logs can be fitted in one pass.
+ *
+ * <p>Usage: {@code VisionTrustModelFitter <log file or directory> <output file>}
+ */
+public class VisionTrustModelFitter {
+  /**
+   * How far each side of an estimate the other estimates are used to place the dead reckoned path
+   * on the field, in seconds. Long enough to average out their noise, short enough that the path
+   * doesn't drift much.
+   */
+  private static final double ANCHOR_WINDOW_SECS = 1;
+  /** The fewest other estimates needed to place the dead reckoned path around an estimate. */
+  private static final int MIN_ANCHORS = 5;
+  /** Errors larger than this are failed solves, not noise, and are left out of the fit. */
+  private static final double MAX_ERROR_METERS = 1;
+  /** Heading errors larger than this are failed solves, and are left out of the heading offset. */
+  private static final double MAX_HEADING_ERROR_RADS = 0.2;
+  /** The fewest samples a model needs to be fitted. The defaults are used with fewer. */
+  private static final int MIN_SAMPLES = 30;
+  /**
+   * Converts the size of a 2D error to a std dev. If X and Y both have a std dev of sigma, the
+   * expected size of the error is sigma * sqrt(pi / 2).
+   */
+  private static final double ERROR_TO_STD_DEV = 1 / Math.sqrt(Math.PI / 2);
+
+  private static final Pattern CAMERA_KEY =
+      Pattern.compile(
+          "VisionPoseEstimator/([^/]+)/"
+              + "(PoseEstimate|Timestamp|StatusCode|TrackedTagIds|SingleTagId)$");
+  private static final Pattern MODULE_KEY =
+      Pattern.compile(
+          "^/?Drive/([0-3]) Module/(DrivePositionMeters|AzimuthAbsolutePosition|OdometryTimestamps"
+              + "|OdometryDrivePositionsMeters|OdometryAzimuthPositionsRad)$");
+  private static final Pattern GYRO_KEY =
+      Pattern.compile(
+          "^/?Drive/Gyro/(Connected|YawPosition|OdometryYawTimestamps|OdometryYawPositionsRad)$");
+
+  /** Least squares sums for one model, so samples don't need to be kept. */
+  private static class LeastSquares {
+    private final double[][] xtx;
+    private final double[] xty;
+    private int samples = 0;
+
+    private LeastSquares(int features) {
+      xtx = new double[features][features];
+      xty = new double[features];
+    }
+
+    private void add(double y, double... x) {
+      for (int i = 0; i < x.length; i++) {
+        for (int j = 0; j < x.length; j++) {
+          xtx[i][j] += x[i] * x[j];
+        }
+        xty[i] += x[i] * y;
+      }
+      samples++;
+    }
+
+    /** Returns the fitted coefficients, or null if there aren't enough samples. */
+    private double[] solve() {
+      if (samples < MIN_SAMPLES) {
+        return null;
+      }
+      SimpleMatrix solution =
+          new SimpleMatrix(xtx).solve(new SimpleMatrix(xty.length, 1, true, xty));
+      double[] coefficients = new double[xty.length];
+      for (int i = 0; i < coefficients.length; i++) {
+        // A negative coefficient is noise, since more distance or fewer tags never helps
+        coefficients[i] = Math.max(0, solution.get(i, 0));
+      }
+      return coefficients;
+    }
+  }
+
+  /** The fits of one camera. */
+  private static class CameraFit {
+    /** Fits std dev = base + perMeter * distance. */
+    private final LeastSquares singleTag = new LeastSquares(2);
+    /** Fits std dev = base + perInverseTagCount / tag count + perMeter * distance. */
+    private final LeastSquares multiTag = new LeastSquares(3);
+  }
+
+  /** The latest logged inputs of one camera, while reading a log. */
+  private static class CameraState {
+    private double x;
+    private double y;
+    private double theta;
+    private double timestamp;
+    private String statusCode = "";
+    private long[] trackedTagIds = new long[0];
+    private long singleTagId = -1;
+    /** If a new timestamp was logged this cycle, meaning there's a new frame. */
+    private boolean newFrame = false;
+  }
+
+  /** A pose estimate to compare against the dead reckoned path once the whole log is read. */
+  private record Observation(
+      CameraFit fit,
+      double timestamp,
+      double x,
+      double y,
+      double theta,
+      int tagCount,
+      double distance) {}
+
+  private final Map<String, CameraFit> fits = new TreeMap<>();
+  private final FieldLayout fieldLayout = FieldLayout.getInstance();
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: VisionTrustModelFitter <log file or directory> <output file>");
+      System.exit(1);
+    }
+    VisionTrustModelFitter fitter = new VisionTrustModelFitter();
+    List<Path> logs;
+    try (Stream<Path> files = Files.walk(Path.of(args[0]))) {
+      logs = files.filter((file) -> file.toString().endsWith(".wpilog")).sorted().toList();
+    }
+    for (Path log : logs) {
+      System.out.println("Reading " + log);
+      fitter.readLog(log);
+    }
+    fitter.write(new File(args[1]));
+  }
+
+  /** Reads one log, adding its samples to the fits. */
+  private void readLog(Path log) throws IOException {
+    DataLogReader reader = new DataLogReader(log.toString());
+    if (!reader.isValid()) {
+      System.err.println("Skipping " + log + ", not a valid log");
+      return;
+    }
+
+    Map<Integer, CameraState> cameraEntries = new HashMap<>();
+    Map<Integer, String> cameraFields = new HashMap<>();
+    Map<Integer, Integer> moduleEntries = new HashMap<>();
+    Map<Integer, String> moduleFields = new HashMap<>();
+    Map<Integer, String> gyroFields = new HashMap<>();
+    Map<Integer, String> entryTypes = new HashMap<>();
+    Map<String, CameraState> cameras = new HashMap<>();
+    OdometryReplay odometry = new OdometryReplay();
+    List<Observation> observations = new ArrayList<>();
+    long cycleTimestamp = Long.MIN_VALUE;
+
+    for (DataLogRecord record : reader) {
+      if (record.isStart()) {
+        DataLogRecord.StartRecordData start = record.getStartData();
+        entryTypes.put(start.entry, start.type);
+        Matcher matcher = CAMERA_KEY.matcher(start.name);
+        if (matcher.find()) {
+          cameraEntries.put(
+              start.entry, cameras.computeIfAbsent(matcher.group(1), (name) -> new CameraState()));
+          cameraFields.put(start.entry, matcher.group(2));
+          fits.computeIfAbsent(matcher.group(1), (name) -> new CameraFit());
+          continue;
+        }
+        matcher = MODULE_KEY.matcher(start.name);
+        if (matcher.find()) {
+          moduleEntries.put(start.entry, Integer.parseInt(matcher.group(1)));
+          moduleFields.put(start.entry, matcher.group(2));
+          continue;
+        }
+        matcher = GYRO_KEY.matcher(start.name);
+        if (matcher.find()) {
+          gyroFields.put(start.entry, matcher.group(1));
+        }
+        continue;
+      }
+      if (record.isControl()) {
+        continue;
+      }
+
+      // Everything from one robot loop shares a timestamp, so a new timestamp means the last
+      // loop's inputs are complete
+      if (record.getTimestamp() != cycleTimestamp) {
+        if (cycleTimestamp != Long.MIN_VALUE) {
+          odometry.endCycle(cycleTimestamp / 1e6);
+        }
+        collectObservations(cameras, observations);
+        cycleTimestamp = record.getTimestamp();
+      }
+
+      int entry = record.getEntry();
+      Integer module = moduleEntries.get(entry);
+      if (module != null) {
+        odometry.readModule(module, moduleFields.get(entry), record, entryTypes.get(entry));
+        continue;
+      }
+      String gyroField = gyroFields.get(entry);
+      if (gyroField != null) {
+        odometry.readGyro(gyroField, record, entryTypes.get(entry));
+        continue;
+      }
+      CameraState camera = cameraEntries.get(entry);
+      if (camera == null) {
+        continue;
+      }
+      switch (cameraFields.get(entry)) {
+        case "PoseEstimate" -> {
+          double[] pose = decodePose(record, entryTypes.get(entry));
+          if (pose != null) {
+            camera.x = pose[0];
+            camera.y = pose[1];
+            camera.theta = pose[2];
+          }
+        }
+        case "Timestamp" -> {
+          camera.timestamp = record.getDouble();
+          camera.newFrame = true;
+        }
+        case "StatusCode" -> camera.statusCode = record.getString();
+        case "TrackedTagIds" -> camera.trackedTagIds = record.getIntegerArray();
+        case "SingleTagId" -> camera.singleTagId = record.getInteger();
+        default -> {}
+      }
+    }
+    if (cycleTimestamp != Long.MIN_VALUE) {
+      odometry.endCycle(cycleTimestamp / 1e6);
+    }
+    collectObservations(cameras, observations);
+    addSamples(observations, odometry.path);
+  }
+
+  /**
+   * Compares every observation of one log to the dead reckoned path, placed on the field around it
+   * by the other observations, and adds the errors to the fits.
+   */
+  private void addSamples(List<Observation> observations, PoseSamples path) {
+    observations.sort(Comparator.comparingDouble(Observation::timestamp));
+    // The dead reckoned path at each observation, or null if the path doesn't cover it
+    double[][] pathPoses = new double[observations.size()][];
+    for (int i = 0; i < observations.size(); i++) {
+      pathPoses[i] = path.interpolate(observations.get(i).timestamp());
+    }
+    int windowStart = 0;
+    for (int i = 0; i < observations.size(); i++) {
+      Observation observation = observations.get(i);
+      while (observations.get(windowStart).timestamp()
+          < observation.timestamp() - ANCHOR_WINDOW_SECS) {
+        windowStart++;
+      }
+      if (pathPoses[i] == null) {
+        continue;
+      }
+      List<Integer> anchors = new ArrayList<>();
+      for (int j = windowStart; j < observations.size(); j++) {
+        if (observations.get(j).timestamp() > observation.timestamp() + ANCHOR_WINDOW_SECS) {
+          break;
+        }
+        if (j != i && pathPoses[j] != null) {
+          anchors.add(j);
+        }
+      }
+      if (anchors.size() < MIN_ANCHORS) {
+        continue;
+      }
+
+      // Find the heading of the dead reckoned path on the field
+      double[] headingOffsets = new double[anchors.size()];
+      for (int k = 0; k < anchors.size(); k++) {
+        int j = anchors.get(k);
+        headingOffsets[k] = MathUtil.angleModulus(observations.get(j).theta() - pathPoses[j][2]);
+      }
+      double headingOffset = robustHeadingMean(headingOffsets);
+      double cos = Math.cos(headingOffset);
+      double sin = Math.sin(headingOffset);
+
+      // Then where it is on the field
+      double[] offsetsX = new double[anchors.size()];
+      double[] offsetsY = new double[anchors.size()];
+      for (int k = 0; k < anchors.size(); k++) {
+        int j = anchors.get(k);
+        offsetsX[k] = observations.get(j).x() - (pathPoses[j][0] * cos - pathPoses[j][1] * sin);
+        offsetsY[k] = observations.get(j).y() - (pathPoses[j][0] * sin + pathPoses[j][1] * cos);
+      }
+      double medianX = median(offsetsX);
+      double medianY = median(offsetsY);
+      double offsetX = 0;
+      double offsetY = 0;
+      int inliers = 0;
+      for (int k = 0; k < anchors.size(); k++) {
+        if (Math.hypot(offsetsX[k] - medianX, offsetsY[k] - medianY) <= MAX_ERROR_METERS) {
+          offsetX += offsetsX[k];
+          offsetY += offsetsY[k];
+          inliers++;
+        }
+      }
+      if (inliers < MIN_ANCHORS) {
+        continue;
+      }
+      offsetX /= inliers;
+      offsetY /= inliers;
+
+      double referenceX = pathPoses[i][0] * cos - pathPoses[i][1] * sin + offsetX;
+      double referenceY = pathPoses[i][0] * sin + pathPoses[i][1] * cos + offsetY;
+      double error = Math.hypot(observation.x() - referenceX, observation.y() - referenceY);
+      if (error > MAX_ERROR_METERS) {
+        continue;
+      }
+      // The offset is an average of the anchors' own noise, which adds to the error. If they're
+      // about as noisy as this estimate, that adds 1 / inliers of its variance.
+      double stdDev = error * ERROR_TO_STD_DEV * Math.sqrt(inliers / (inliers + 1.0));
+      CameraFit fit = observation.fit();
+      if (observation.tagCount() == 1) {
+        fit.singleTag.add(stdDev, 1, observation.distance());
+      } else {
+        fit.multiTag.add(stdDev, 1, 1.0 / observation.tagCount(), observation.distance());
+      }
+    }
+  }
+
+  /** Turns every camera that got a good new frame this cycle into an observation. */
+  private void collectObservations(
+      Map<String, CameraState> cameras, List<Observation> observations) {
+    for (Map.Entry<String, CameraState> entry : cameras.entrySet()) {
+      CameraState camera = entry.getValue();
+      if (!camera.newFrame) {
+        continue;
+      }
+      camera.newFrame = false;
+      // Single tag frames solved from the gyro don't have a pose from the camera
+      if (!camera.statusCode.equals("OK") || camera.singleTagId >= 0) {
+        continue;
+      }
+      double distanceSum = 0;
+      int tagCount = 0;
+      for (long id : camera.trackedTagIds) {
+        if (fieldLayout.hasTag((int) id)) {
+          distanceSum += fieldLayout.getDistanceToTag((int) id, camera.x, camera.y);
+          tagCount++;
+        }
+      }
+      if (tagCount == 0) {
+        continue;
+      }
+      observations.add(
+          new Observation(
+              fits.get(entry.getKey()),
+              camera.timestamp,
+              camera.x,
+              camera.y,
+              camera.theta,
+              tagCount,
+              distanceSum / tagCount));
+    }
+  }
+
+  /** Writes the fitted models of every camera as JSON. */
+  private void write(File output) throws IOException {
+    ObjectMapper mapper = new ObjectMapper();
+    ObjectNode root = mapper.createObjectNode();
+    for (Map.Entry<String, CameraFit> entry : fits.entrySet()) {
+      CameraFit fit = entry.getValue();
+      VisionTrustModel defaults = VisionTrustModel.DEFAULT;
+      double[] single = fit.singleTag.solve();
+      double[] multi = fit.multiTag.solve();
+
+      ObjectNode camera = root.putObject(entry.getKey());
+      camera.put("singleTagBase", single != null ? single[0] : defaults.singleTagBase);
+      camera.put("singleTagPerMeter", single != null ? single[1] : defaults.singleTagPerMeter);
+      camera.put("multiTagBase", multi != null ? multi[0] : defaults.multiTagBase);
+      camera.put(
+          "multiTagPerInverseTagCount",
+          multi != null ? multi[1] : defaults.multiTagPerInverseTagCount);
+      camera.put("multiTagPerMeter", multi != null ? multi[2] : defaults.multiTagPerMeter);
+      camera.put("singleTagSamples", fit.singleTag.samples);
+      camera.put("multiTagSamples", fit.multiTag.samples);
+      System.out.println(
+          entry.getKey()
+              + ": "
+              + fit.singleTag.samples
+              + " single tag samples, "
+              + fit.multiTag.samples
+              + " multi tag samples");
+    }
+    mapper.writerWithDefaultPrettyPrinter().writeValue(output, root);
+    System.out.println("Wrote " + output);
+  }
+
+  /** Returns the median of some values. Sorts them in place. */
+  private static double median(double[] values) {
+    Arrays.sort(values);
+    int middle = values.length / 2;
+    return values.length % 2 == 1 ? values[middle] : (values[middle - 1] + values[middle]) / 2;
+  }
+
+  /**
+   * Averages some angles, leaving out any more than {@link #MAX_HEADING_ERROR_RADS} from their
+   * median, such as flipped single tag solves.
+   *
+   * @param angles The angles, in radians. Sorted in place.
+   */
+  private static double robustHeadingMean(double[] angles) {
+    // Measure every angle from the first one, so they don't wrap around
+    double reference = angles[0];
+    for (int i = 0; i < angles.length; i++) {
+      angles[i] = MathUtil.angleModulus(angles[i] - reference);
+    }
+    double median = median(angles);
+    double sum = 0;
+    int count = 0;
+    for (double angle : angles) {
+      if (Math.abs(angle - median) <= MAX_HEADING_ERROR_RADS) {
+        sum += angle;
+        count++;
+      }
+    }
+    return reference + sum / count;
+  }
+
+  /**
+   * Decodes a logged Pose2d, which is either a struct or, in older logs, an array.
+   *
+   * @return The X, Y, and heading of the pose, or null if it isn't a pose.
+   */
+  private static double[] decodePose(DataLogRecord record, String type) {
+    if ("struct:Pose2d".equals(type)) {
+      ByteBuffer buffer = ByteBuffer.wrap(record.getRaw()).order(ByteOrder.LITTLE_ENDIAN);
+      return new double[] {buffer.getDouble(0), buffer.getDouble(8), buffer.getDouble(16)};
+    }
+    if ("double[]".equals(type)) {
+      double[] array = record.getDoubleArray();
+      return array.length >= 3 ? array : null;
+    }
+    return null;
+  }
+
+  /**
+   * Decodes a logged Rotation2d, which is either a struct or, in older logs, a double.
+   *
+   * @return The rotation in radians, or NaN if it isn't a rotation.
+   */
+  private static double decodeRotation(DataLogRecord record, String type) {
+    if ("struct:Rotation2d".equals(type)) {
+      return ByteBuffer.wrap(record.getRaw()).order(ByteOrder.LITTLE_ENDIAN).getDouble(0);
+    }
+    if ("double".equals(type)) {
+      return record.getDouble();
+    }
+    return Double.NaN;
+  }
+
+  /**
+   * Dead reckons the path of the robot from the logged module and gyro inputs of one log, the same
+   * way {@link SwerveSubsystem} integrates odometry, but with no vision. The path starts at the
+   * origin, facing the raw gyro yaw.
+   *
+   * <p>Inputs are only logged when they change, so the latest value of each is kept between
+   * cycles. The odometry sample timestamps always change when there are new samples, so they're
+   * only used in a cycle they were logged in.
+   */
+  private static class OdometryReplay {
+    private final SwerveDriveKinematics kinematics =
+        new SwerveDriveKinematics(SwerveSubsystem.getModuleTranslations());
+    private final PoseSamples path = new PoseSamples();
+
+    // The latest logged inputs
+    private final double[] drivePositions = new double[4];
+    private final double[] azimuthPositions = new double[4];
+    private double[] sampleTimestamps = new double[0];
+    private final double[][] sampleDrivePositions = new double[4][0];
+    private final double[][] sampleAzimuthPositions = new double[4][0];
+    private boolean newSamples = false;
+    private boolean gyroConnected = false;
+    private double yaw = 0;
+    private double[] yawSamples = new double[0];
+    private boolean newYawSamples = false;
+
+    /** If odometry samples have been logged, in which case only they are used. */
+    private boolean usingSamples = false;
+    /** The module positions of the last step, or null before the first step. */
+    private SwerveModulePosition[] lastPositions = null;
+    private Pose2d pose = new Pose2d();
+    /** The heading of the path, not wrapped. */
+    private double theta = 0;
+
+    private void readModule(int module, String field, DataLogRecord record, String type) {
+      switch (field) {
+        case "DrivePositionMeters" -> drivePositions[module] = record.getDouble();
+        case "AzimuthAbsolutePosition" -> {
+          double angle = decodeRotation(record, type);
+          if (!Double.isNaN(angle)) {
+            azimuthPositions[module] = angle;
+          }
+        }
+        case "OdometryTimestamps" -> {
+          // Every module has the same samples, so the first module's timestamps are used
+          if (module == 0) {
+            sampleTimestamps = record.getDoubleArray();
+            newSamples = true;
+          }
+        }
+        case "OdometryDrivePositionsMeters" ->
+            sampleDrivePositions[module] = record.getDoubleArray();
+        case "OdometryAzimuthPositionsRad" ->
+            sampleAzimuthPositions[module] = record.getDoubleArray();
+        default -> {}
+      }
+    }
+
+    private void readGyro(String field, DataLogRecord record, String type) {
+      switch (field) {
+        case "Connected" -> gyroConnected = record.getBoolean();
+        case "YawPosition" -> {
+          double angle = decodeRotation(record, type);
+          if (!Double.isNaN(angle)) {
+            yaw = angle;
+          }
+        }
+        case "OdometryYawTimestamps" -> newYawSamples = true;
+        case "OdometryYawPositionsRad" -> yawSamples = record.getDoubleArray();
+        default -> {}
+      }
+    }
+
+    /** Integrates the inputs of a cycle once all of them have been read. */
+    private void endCycle(double cycleTimestamp) {
+      if (newSamples && sampleTimestamps.length > 0) {
+        usingSamples = true;
+      }
+      if (usingSamples) {
+        if (newSamples) {
+          int sampleCount = sampleTimestamps.length;
+          for (int module = 0; module < 4; module++) {
+            sampleCount = Math.min(sampleCount, sampleDrivePositions[module].length);
+            sampleCount = Math.min(sampleCount, sampleAzimuthPositions[module].length);
+          }
+          boolean hasYawSamples = newYawSamples && yawSamples.length == sampleTimestamps.length;
+          for (int i = 0; i < sampleCount; i++) {
+            double[] distances = new double[4];
+            double[] angles = new double[4];
+            for (int module = 0; module < 4; module++) {
+              distances[module] = sampleDrivePositions[module][i];
+              angles[module] = sampleAzimuthPositions[module][i];
+            }
+            step(sampleTimestamps[i], distances, angles, hasYawSamples ? yawSamples[i] : yaw);
+          }
+        }
+      } else {
+        step(cycleTimestamp, drivePositions, azimuthPositions, yaw);
+      }
+      newSamples = false;
+      newYawSamples = false;
+    }
+
+    private void step(double timestamp, double[] distances, double[] angles, double gyroYaw) {
+      SwerveModulePosition[] positions = new SwerveModulePosition[4];
+      for (int i = 0; i < 4; i++) {
+        positions[i] = new SwerveModulePosition(distances[i], new Rotation2d(angles[i]));
+      }
+      if (lastPositions == null) {
+        theta = gyroConnected ? gyroYaw : 0;
+        pose = new Pose2d(0, 0, new Rotation2d(theta));
+      } else {
+        SwerveModulePosition[] deltas = new SwerveModulePosition[4];
+        for (int i = 0; i < 4; i++) {
+          deltas[i] =
+              new SwerveModulePosition(
+                  positions[i].distanceMeters - lastPositions[i].distanceMeters,
+                  positions[i].angle);
+        }
+        Twist2d twist = kinematics.toTwist2d(deltas);
+        // Use the gyro if it's connected, like the robot does
+        double newTheta = gyroConnected ? gyroYaw : theta + twist.dtheta;
+        pose = pose.exp(new Twist2d(twist.dx, twist.dy, newTheta - theta));
+        theta = newTheta;
+      }
+      lastPositions = positions;
+      path.add(timestamp, pose.getX(), pose.getY(), theta);
+    }
+  }
+
+  /** A path of the robot, in time order. */
+  private static class PoseSamples {
+    private double[] timestamps = new double[4096];
+    private double[] xs = new double[4096];
+    private double[] ys = new double[4096];
+    private double[] thetas = new double[4096];
+    private int size = 0;
+
+    private void add(double timestamp, double x, double y, double theta) {
+      // Samples out of time order can't be interpolated between
+      if (size > 0 && timestamp <= timestamps[size - 1]) {
+        return;
+      }
+      if (size == timestamps.length) {
+        timestamps = Arrays.copyOf(timestamps, size * 2);
+        xs = Arrays.copyOf(xs, size * 2);
+        ys = Arrays.copyOf(ys, size * 2);
+        thetas = Arrays.copyOf(thetas, size * 2);
+      }
+      timestamps[size] = timestamp;
+      xs[size] = x;
+      ys[size] = y;
+      thetas[size] = theta;
+      size++;
+    }
+
+    /**
+     * Interpolates the pose at a timestamp.
+     *
+     * @return The X, Y, and heading, or null if the timestamp is outside the path.
+     */
+    private double[] interpolate(double timestamp) {
+      if (size == 0 || timestamp < timestamps[0] || timestamp > timestamps[size - 1]) {
+        return null;
+      }
+      int index = Arrays.binarySearch(timestamps, 0, size, timestamp);
+      if (index >= 0) {
+        return new double[] {xs[index], ys[index], thetas[index]};
+      }
+      int after = -index - 1;
+      int before = after - 1;
+      double t = (timestamp - timestamps[before]) / (timestamps[after] - timestamps[before]);
+      return new double[] {
+        MathUtil.interpolate(xs[before], xs[after], t),
+        MathUtil.interpolate(ys[before], ys[after], t),
+        MathUtil.interpolate(thetas[before], thetas[after], t)
+      };
+    }
+  }
+}
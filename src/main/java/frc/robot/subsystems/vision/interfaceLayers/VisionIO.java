@@ -18,6 +18,7 @@ import edu.wpi.first.math.Matrix;
 import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Transform3d;
 import edu.wpi.first.math.numbers.N1;
 import edu.wpi.first.math.numbers.N3;
 import org.littletonrobotics.junction.AutoLog;
@@ -25,10 +26,30 @@ import org.littletonrobotics.junction.AutoLog;
 public interface VisionIO {
   @AutoLog
   public class VisionIOInputs {
+    /**
+     * The pose solved from the frame. Only meaningful if {@link #singleTagId} is -1, otherwise it's
+     * null since the camera didn't solve a pose.
+     */
     public Pose2d poseEstimate = null;
     public Pose3d[] trackedTags = new Pose3d[0];
+    public int[] trackedTagIds = new int[0];
+    /**
+     * The ID of the tag in the frame if it only had one tag in it and the camera leaves those to be
+     * solved from the gyro, or -1 otherwise. If set, {@link #trackedTagIds} holds just this tag.
+     */
+    public int singleTagId = -1;
+    /** Where the camera saw the tag in {@link #singleTagId}, relative to the camera. */
+    public Transform3d singleTagCameraToTarget = new Transform3d();
     public double timestamp = 0;
     public VisionStatusCode statusCode = VisionStatusCode.CAMERA_FAIL;
+    public VisionFrameStatus frameStatus = VisionFrameStatus.STALE;
+
+    // Every frame since the last update, oldest first, for cameras that can queue frames. Empty
+    // for cameras that only report the latest frame in the fields above.
+    public Pose2d[] queuedPoseEstimates = new Pose2d[0];
+    public double[] queuedTimestamps = new double[0];
+    public int[] queuedTagCounts = new int[0];
+    public double[] queuedAverageTagDistances = new double[0];
   }
 
   public enum VisionStatusCode {
@@ -37,9 +58,23 @@ public interface VisionIO {
     NO_DATA,
     BAD_TAG,
     BAD_POSE,
+    /** The pose is too far from the estimated pose to be believable. */
+    OUTLIER,
+    /** The heading is too far from the gyro heading. */
+    YAW_MISMATCH,
+    /** The robot was turning too fast for the frame to be sharp. */
+    SPINNING,
     OK
   }
 
+  /** If the inputs came from a camera frame that hasn't been processed before. */
+  public enum VisionFrameStatus {
+    /** The camera produced a frame since the last update. */
+    NEW,
+    /** The camera hasn't produced a frame since the last update, or isn't producing frames. */
+    STALE
+  }
+
   public class VisionPoseEstimate {
     public VisionPoseEstimate(
         Pose2d poseEstimate,
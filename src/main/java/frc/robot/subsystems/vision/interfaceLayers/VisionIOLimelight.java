@@ -19,53 +19,129 @@ import static edu.wpi.first.units.Units.*;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Pose3d;
 import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.networktables.DoubleArraySubscriber;
 import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.networktables.TimestampedDoubleArray;
 import frc.robot.Constants.Field;
-import org.littletonrobotics.junction.Logger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+/**
+ * Limelight implementation of vision IO.
+ *
+ * <p>Reads every pose the Limelight published since the last update from a queue, rather than only
+ * the latest one, so no frame is lost when the Limelight runs faster than the robot loop. Each pose
+ * is timestamped with the time NetworkTables received it, minus the latency the Limelight reported
+ * for that frame.
+ */
 public class VisionIOLimelight implements VisionIO {
+  /** How many frames to keep between updates. A few loops' worth at the Limelight's frame rate. */
+  private static final int FRAME_QUEUE_SIZE = 20;
+
+  // Indices into the botpose array
+  private static final int X = 0;
+  private static final int Y = 1;
+  private static final int YAW = 5;
+  private static final int TOTAL_LATENCY_MS = 6;
+  private static final int TAG_COUNT = 7;
+  private static final int AVERAGE_TAG_DISTANCE = 9;
+  private static final int BOTPOSE_LENGTH = 11;
+
+  private final String name;
+  private final DoubleArraySubscriber botposeSubscriber;
+
+  // Reused between updates
+  private final List<Pose2d> poseEstimates = new ArrayList<>(FRAME_QUEUE_SIZE);
+  private final double[] timestamps = new double[FRAME_QUEUE_SIZE];
+  private final int[] tagCounts = new int[FRAME_QUEUE_SIZE];
+  private final double[] averageTagDistances = new double[FRAME_QUEUE_SIZE];
+
+  /**
+   * Constructs a new Limelight.
+   *
+   * @param name The name of the Limelight, which is also its NetworkTables table.
+   */
+  public VisionIOLimelight(String name) {
+    this.name = name;
+    botposeSubscriber =
+        NetworkTableInstance.getDefault()
+            .getTable(name)
+            .getDoubleArrayTopic("botpose_wpiblue")
+            .subscribe(
+                new double[0],
+                PubSubOption.keepDuplicates(true),
+                PubSubOption.pollStorage(FRAME_QUEUE_SIZE));
+  }
+
   @Override
   public void updateInputs(VisionIOInputs inputs) {
-    // inputs = new VisionIOInputs();
     inputs.trackedTags = new Pose3d[0];
-    // If the Limelight doesn't see any tags to track, stop.
-    if (!hasTracking()) {
+    TimestampedDoubleArray[] frames = botposeSubscriber.readQueue();
+    // If the Limelight hasn't published anything since the last update, stop.
+    if (frames.length == 0) {
+      inputs.statusCode =
+          botposeSubscriber.exists() ? VisionStatusCode.NO_DATA : VisionStatusCode.CAMERA_FAIL;
+      inputs.frameStatus = VisionFrameStatus.STALE;
+      clearQueuedFrames(inputs);
       return;
     }
+    inputs.frameStatus = VisionFrameStatus.NEW;
 
-    double[] poseArray =
-        NetworkTableInstance.getDefault()
-            .getTable("limelight")
-            .getEntry("botpose_wpiblue")
-            .getDoubleArray(new double[6]);
+    poseEstimates.clear();
+    inputs.statusCode = VisionStatusCode.NO_DATA;
+    for (TimestampedDoubleArray frame : frames) {
+      double[] botpose = frame.value;
+      // If the Limelight doesn't see any tags, skip the frame.
+      if (botpose.length < BOTPOSE_LENGTH || botpose[TAG_COUNT] < 1) {
+        continue;
+      }
+      // If the pose is outside the field, it's obviously a bad pose so skip the frame.
+      if (botpose[X] < 0
+          || botpose[Y] < 0
+          || botpose[X] > Field.FIELD_LENGTH.in(Meters)
+          || botpose[Y] > Field.FIELD_WIDTH.in(Meters)) {
+        inputs.statusCode = VisionStatusCode.BAD_POSE;
+        continue;
+      }
 
-    // If the pose is outside the field, it's obviously a bad pose so stop.
-    if (poseArray[0] < 0
-        || poseArray[1] < 0
-        || poseArray[0] > Field.FIELD_LENGTH.in(Meters)
-        || poseArray[1] > Field.FIELD_WIDTH.in(Meters)) {
+      int i = poseEstimates.size();
+      if (i == FRAME_QUEUE_SIZE) {
+        break;
+      }
+      poseEstimates.add(new Pose2d(botpose[X], botpose[Y], Rotation2d.fromDegrees(botpose[YAW])));
+      // NetworkTables timestamps are in microseconds, and the latency is in milliseconds.
+      timestamps[i] = frame.timestamp / 1e6 - botpose[TOTAL_LATENCY_MS] / 1e3;
+      tagCounts[i] = (int) botpose[TAG_COUNT];
+      averageTagDistances[i] = botpose[AVERAGE_TAG_DISTANCE];
+    }
+
+    int count = poseEstimates.size();
+    if (count == 0) {
+      clearQueuedFrames(inputs);
       return;
     }
 
-    // If all checks succeed, then write data.
-    inputs.poseEstimate =
-        new Pose2d(poseArray[0], poseArray[1], Rotation2d.fromDegrees(poseArray[5]));
+    // If any frame succeeds, then write data, with the newest frame as the single estimate.
     inputs.statusCode = VisionStatusCode.OK;
-    inputs.timestamp = getTimeStamp();
+    inputs.poseEstimate = poseEstimates.get(count - 1);
+    inputs.timestamp = timestamps[count - 1];
+    inputs.queuedPoseEstimates = poseEstimates.toArray(new Pose2d[count]);
+    inputs.queuedTimestamps = Arrays.copyOf(timestamps, count);
+    inputs.queuedTagCounts = Arrays.copyOf(tagCounts, count);
+    inputs.queuedAverageTagDistances = Arrays.copyOf(averageTagDistances, count);
   }
 
-  private double getTimeStamp() {
-    return Logger.getRealTimestamp()
-        + ((NetworkTableInstance.getDefault().getTable("limelight").getEntry("tl").getDouble(0)
-                + NetworkTableInstance.getDefault()
-                    .getTable("limelight")
-                    .getEntry("cl")
-                    .getDouble(0))
-            / 1000.0);
+  @Override
+  public String getName() {
+    return name;
   }
 
-  private boolean hasTracking() {
-    return NetworkTableInstance.getDefault().getTable("limelight").getEntry("tv").getDouble(0)
-        == 1.0;
+  private static void clearQueuedFrames(VisionIOInputs inputs) {
+    inputs.queuedPoseEstimates = new Pose2d[0];
+    inputs.queuedTimestamps = new double[0];
+    inputs.queuedTagCounts = new int[0];
+    inputs.queuedAverageTagDistances = new double[0];
   }
 }
@@ -17,46 +17,67 @@ package frc.robot.subsystems.vision.interfaceLayers;
 import static edu.wpi.first.units.Units.*;
 
 import edu.wpi.first.apriltag.AprilTagFieldLayout;
-import edu.wpi.first.apriltag.AprilTagFields;
 import edu.wpi.first.math.geometry.Pose3d;
 import edu.wpi.first.math.geometry.Transform3d;
 import edu.wpi.first.wpilibj.DriverStation;
 import frc.robot.Constants.Field;
+import frc.robot.util.FieldLayout;
 import java.util.Optional;
 import org.photonvision.EstimatedRobotPose;
 import org.photonvision.PhotonCamera;
 import org.photonvision.PhotonPoseEstimator;
 import org.photonvision.PhotonPoseEstimator.PoseStrategy;
+import org.photonvision.targeting.PhotonPipelineResult;
 
 public class VisionIOPhoton implements VisionIO {
   private String name = "";
   private PhotonCamera camera;
   private PhotonPoseEstimator poseEstimator;
   private Transform3d robotToCameraTransform;
+  /**
+   * If frames with only one tag are solved from the gyro by the vision subsystem. If so, they're
+   * only reported as a tag ID and transform, and PhotonVision doesn't solve a pose for them.
+   */
+  private boolean useGyroAssistedSingleTag;
+  /** The timestamp of the last frame that was processed. */
+  private double lastFrameTimestamp = Double.NaN;
 
-  public VisionIOPhoton(String name, Transform3d robotToCameraTransform) {
+  /**
+   * Constructs a new PhotonVision camera.
+   *
+   * @param name The name of the camera.
+   * @param robotToCameraTransform Where the camera is on the robot.
+   * @param useGyroAssistedSingleTag If frames with only one tag should be reported for the vision
+   *     subsystem to solve from the gyro, rather than solved here.
+   */
+  public VisionIOPhoton(
+      String name, Transform3d robotToCameraTransform, boolean useGyroAssistedSingleTag) {
     this.name = name;
     this.robotToCameraTransform = robotToCameraTransform;
+    this.useGyroAssistedSingleTag = useGyroAssistedSingleTag;
     camera = new PhotonCamera(name);
-    try {
-      poseEstimator =
-          new PhotonPoseEstimator(
-              AprilTagFieldLayout.loadFromResource(AprilTagFields.k2024Crescendo.m_resourceFile),
-              PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR,
-              camera,
-              robotToCameraTransform);
-      poseEstimator.setMultiTagFallbackStrategy(PoseStrategy.LOWEST_AMBIGUITY);
-    } catch (Exception e) {
+    Optional<AprilTagFieldLayout> fieldLayout = FieldLayout.getInstance().getAprilTagFieldLayout();
+    if (fieldLayout.isEmpty()) {
       DriverStation.reportError(
-          "PhotonVision failed to load camera " + name + "! Failed with error " + e.getMessage(),
-          false);
+          "PhotonVision failed to load camera " + name + "! No AprilTag field layout", false);
       poseEstimator = null;
+      return;
     }
+    poseEstimator =
+        new PhotonPoseEstimator(
+            fieldLayout.get(),
+            PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR,
+            camera,
+            robotToCameraTransform);
+    poseEstimator.setMultiTagFallbackStrategy(PoseStrategy.LOWEST_AMBIGUITY);
   }
 
   @Override
   public void updateInputs(VisionIOInputs inputs) {
     inputs.trackedTags = new Pose3d[0];
+    inputs.trackedTagIds = new int[0];
+    inputs.singleTagId = -1;
+    inputs.frameStatus = VisionFrameStatus.STALE;
     // If the camera isn't connected, stop.
     if (camera.isConnected() == false) {
       // System.out.println("Camera connected check failed");
@@ -75,7 +96,32 @@ public class VisionIOPhoton implements VisionIO {
 
     // System.out.println("Estimator was initialized");
 
-    Optional<EstimatedRobotPose> data = poseEstimator.update();
+    // If the camera hasn't produced a new frame, stop before doing any work on the old one.
+    PhotonPipelineResult result = camera.getLatestResult();
+    if (result.getTimestampSeconds() == lastFrameTimestamp) {
+      inputs.statusCode = VisionStatusCode.NO_DATA;
+      return;
+    }
+    lastFrameTimestamp = result.getTimestampSeconds();
+    inputs.frameStatus = VisionFrameStatus.NEW;
+    inputs.timestamp = result.getTimestampSeconds();
+
+    // Report a lone tag on its own to be solved with the gyro, and skip the pose solve for it
+    if (useGyroAssistedSingleTag && result.getTargets().size() == 1) {
+      int tagId = result.getTargets().get(0).getFiducialId();
+      if (!FieldLayout.getInstance().hasTag(tagId)) {
+        inputs.statusCode = VisionStatusCode.BAD_TAG;
+        return;
+      }
+      inputs.statusCode = VisionStatusCode.OK;
+      inputs.poseEstimate = null;
+      inputs.trackedTagIds = new int[] {tagId};
+      inputs.singleTagId = tagId;
+      inputs.singleTagCameraToTarget = result.getTargets().get(0).getBestCameraToTarget();
+      return;
+    }
+
+    Optional<EstimatedRobotPose> data = poseEstimator.update(result);
     // If the pose estimator doesn't have any data, stop.
     if (data.isEmpty()) {
       inputs.statusCode = VisionStatusCode.NO_DATA;
@@ -102,7 +148,9 @@ public class VisionIOPhoton implements VisionIO {
     inputs.poseEstimate = botPoseEstimate.estimatedPose.toPose2d();
     inputs.timestamp = botPoseEstimate.timestampSeconds;
     inputs.trackedTags = new Pose3d[botPoseEstimate.targetsUsed.size()];
+    inputs.trackedTagIds = new int[botPoseEstimate.targetsUsed.size()];
     for (int i = 0; i < inputs.trackedTags.length; i++) {
+      inputs.trackedTagIds[i] = botPoseEstimate.targetsUsed.get(i).getFiducialId();
       inputs.trackedTags[i] =
           new Pose3d(inputs.poseEstimate)
               .plus(robotToCameraTransform)
@@ -0,0 +1,63 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.util;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures how many bytes the current thread has allocated on the heap, so that code that is meant
+ * to be allocation-free can prove it in the logs.
+ *
+ * <p>Usage: call {@link #getAllocatedBytes()} before and after a block and log the difference. If
+ * the JVM can't measure allocations, every reading is -1.
+ */
+public class AllocationMeter {
+  private static final com.sun.management.ThreadMXBean threadBean = getThreadBean();
+
+  private AllocationMeter() {
+    throw new UnsupportedOperationException("This is a utility class!");
+  }
+
+  private static com.sun.management.ThreadMXBean getThreadBean() {
+    if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean)) {
+      return null;
+    }
+    try {
+      if (!bean.isThreadAllocatedMemorySupported()) {
+        return null;
+      }
+      bean.setThreadAllocatedMemoryEnabled(true);
+      return bean;
+    } catch (UnsupportedOperationException e) {
+      return null;
+    }
+  }
+
+  /** Returns if allocations can be measured on this JVM. */
+  public static boolean isSupported() {
+    return threadBean != null;
+  }
+
+  /**
+   * Returns the total number of bytes the current thread has allocated since it started, or -1 if
+   * allocations can't be measured.
+   */
+  public static long getAllocatedBytes() {
+    if (threadBean == null) {
+      return -1;
+    }
+    return threadBean.getCurrentThreadAllocatedBytes();
+  }
+}
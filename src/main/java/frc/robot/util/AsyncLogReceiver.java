@@ -0,0 +1,217 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.util;
+
+import frc.robot.util.LoggingPolicy.Tier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import org.littletonrobotics.junction.LogDataReceiver;
+import org.littletonrobotics.junction.LogTable;
+import org.littletonrobotics.junction.LogTable.LogValue;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Wraps a slow data receiver, such as the log file writer, so it runs on its own thread and can
+ * never hold up the other receivers or the robot loop.
+ *
+ * <p>Tables are handed to the writer thread through a bounded queue. AdvantageKit hands every
+ * receiver the same shallow copy of each table, which holds the very arrays that were logged, and
+ * the writer can fall seconds behind. So every table is copied before it's queued, arrays
+ * included, and the code that logged an array is free to reuse it. If the writer falls behind,
+ * such as while a USB drive is flushing, the queue fills up and tables are thinned out as they're
+ * copied: first the {@link Tier#DIAGNOSTIC} outputs are left out, then the {@link Tier#CONTROL}
+ * outputs, and only when the queue is completely full is a whole table dropped. Inputs are only
+ * left out if the policy allows it, since log replay needs them.
+ *
+ * <p>Call {@link #logMetrics(LogKey)} from the main loop to log how the writer is keeping up.
+ */
+public class AsyncLogReceiver implements LogDataReceiver {
+  /** How many tables the queue can hold. 5 seconds of loops at 50 Hz. */
+  private static final int QUEUE_CAPACITY = 250;
+  /** How full the queue can get before diagnostic outputs are left out. */
+  private static final int DIAGNOSTIC_DROP_THRESHOLD = QUEUE_CAPACITY / 2;
+  /** How full the queue can get before control outputs are left out too. */
+  private static final int CONTROL_DROP_THRESHOLD = QUEUE_CAPACITY * 4 / 5;
+
+  private final LogDataReceiver receiver;
+  private final LoggingPolicy policy;
+  private final ArrayBlockingQueue<LogTable> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+  private final Thread thread;
+  private volatile boolean running = false;
+  /** The tier of every key seen so far. Only touched by the thread calling putTable. */
+  private final Map<String, Tier> tiers = new HashMap<>();
+
+  // Stats, taken by the main loop
+  private final AtomicLong droppedTables = new AtomicLong();
+  private final AtomicLong thinnedTables = new AtomicLong();
+  private final AtomicLong writtenTables = new AtomicLong();
+  private final AtomicLong writtenValues = new AtomicLong();
+  private final AtomicLong writeNanos = new AtomicLong();
+  private final AtomicLong maxWriteNanos = new AtomicLong();
+  private final AtomicLong maxHandoffNanos = new AtomicLong();
+  /** When the stats were last logged, in seconds. Only touched by the main loop. */
+  private double lastLogSecs = Double.NaN;
+
+  /**
+   * Constructs a new async receiver.
+   *
+   * @param receiver The receiver to run on the writer thread.
+   * @param policy The policy that decides which outputs are left out first when falling behind.
+   */
+  public AsyncLogReceiver(LogDataReceiver receiver, LoggingPolicy policy) {
+    this.receiver = receiver;
+    this.policy = policy;
+    thread = new Thread(this::run, "LogWriter");
+    thread.setDaemon(true);
+  }
+
+  @Override
+  public void start() {
+    receiver.start();
+    running = true;
+    thread.start();
+  }
+
+  @Override
+  public void end() {
+    running = false;
+    thread.interrupt();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    // Write whatever was still queued before closing the receiver
+    LogTable table;
+    while ((table = queue.poll()) != null) {
+      write(table);
+    }
+    receiver.end();
+  }
+
+  /** Queues a table for the writer thread. Never blocks. */
+  @Override
+  public void putTable(LogTable table) {
+    long startNanos = System.nanoTime();
+    int queued = queue.size();
+    boolean thin = queued >= DIAGNOSTIC_DROP_THRESHOLD;
+    if (thin) {
+      thinnedTables.incrementAndGet();
+    }
+    if (queued >= QUEUE_CAPACITY
+        || !queue.offer(copy(table, thin, queued >= CONTROL_DROP_THRESHOLD))) {
+      droppedTables.incrementAndGet();
+    }
+    updateMax(maxHandoffNanos, System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Logs how the writer is keeping up since the last call. Should be called once per main loop.
+   *
+   * @param logKey The prefix for the telemetry keys.
+   */
+  public void logMetrics(LogKey logKey) {
+    double nowSecs = Logger.getRealTimestamp() / 1e6;
+    double elapsedSecs = nowSecs - lastLogSecs;
+    lastLogSecs = nowSecs;
+    long tables = writtenTables.getAndSet(0);
+    long values = writtenValues.getAndSet(0);
+    long busyNanos = writeNanos.getAndSet(0);
+    Logger.recordOutput(logKey.key("QueuedTables"), queue.size());
+    Logger.recordOutput(logKey.key("DroppedTables"), droppedTables.get());
+    Logger.recordOutput(logKey.key("ThinnedTables"), thinnedTables.get());
+    Logger.recordOutput(logKey.key("MaxHandoffMicros"), maxHandoffNanos.getAndSet(0) / 1e3);
+    Logger.recordOutput(logKey.key("MaxWriteMs"), maxWriteNanos.getAndSet(0) / 1e6);
+    if (elapsedSecs > 0) { // False the first time, since lastLogSecs is NaN
+      Logger.recordOutput(logKey.key("TablesPerSec"), tables / elapsedSecs);
+      Logger.recordOutput(logKey.key("ValuesPerSec"), values / elapsedSecs);
+      Logger.recordOutput(logKey.key("WriterUtilization"), busyNanos / 1e9 / elapsedSecs);
+    }
+  }
+
+  /** Writes queued tables until ended. Runs on the writer thread. */
+  private void run() {
+    while (running) {
+      try {
+        write(queue.take());
+      } catch (InterruptedException e) {
+        // Woken up by end(), which writes the rest of the queue itself
+        return;
+      }
+    }
+  }
+
+  /** Passes one table to the receiver and records how long it took. */
+  private void write(LogTable table) {
+    long startNanos = System.nanoTime();
+    try {
+      receiver.putTable(table);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+    long elapsedNanos = System.nanoTime() - startNanos;
+    writtenTables.incrementAndGet();
+    writtenValues.addAndGet(table.getAll(false).size());
+    writeNanos.addAndGet(elapsedNanos);
+    updateMax(maxWriteNanos, elapsedNanos);
+  }
+
+  /**
+   * Returns a copy of a table that shares no arrays with it.
+   *
+   * @param table The table to copy.
+   * @param dropDiagnostic If the diagnostic outputs should be left out.
+   * @param dropControl If the control outputs should be left out too.
+   */
+  private LogTable copy(LogTable table, boolean dropDiagnostic, boolean dropControl) {
+    LogTable copy = new LogTable(table.getTimestamp());
+    for (Map.Entry<String, LogValue> entry : table.getAll(false).entrySet()) {
+      // Keys are stored with the leading slash of the root table
+      String key = entry.getKey().substring(1);
+      if (dropDiagnostic && (policy.isDecimatingInputs() || LoggingPolicy.isOutput(key))) {
+        Tier tier = tiers.computeIfAbsent(key, policy::getTier);
+        if (tier == Tier.DIAGNOSTIC || (dropControl && tier == Tier.CONTROL)) {
+          continue;
+        }
+      }
+      copy.put(key, copyArray(entry.getValue()));
+    }
+    return copy;
+  }
+
+  /** Returns a value with its own copy of its array, or the value itself if it isn't an array. */
+  private static LogValue copyArray(LogValue value) {
+    return switch (value.type) {
+      case Raw -> new LogValue(value.getRaw().clone(), value.customTypeStr);
+      case BooleanArray -> new LogValue(value.getBooleanArray().clone(), value.customTypeStr);
+      case IntegerArray -> new LogValue(value.getIntegerArray().clone(), value.customTypeStr);
+      case FloatArray -> new LogValue(value.getFloatArray().clone(), value.customTypeStr);
+      case DoubleArray -> new LogValue(value.getDoubleArray().clone(), value.customTypeStr);
+      case StringArray -> new LogValue(value.getStringArray().clone(), value.customTypeStr);
+      default -> value;
+    };
+  }
+
+  /** Raises a max to a value, if it's higher. */
+  private static void updateMax(AtomicLong max, long value) {
+    long current = max.get();
+    while (value > current && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+}
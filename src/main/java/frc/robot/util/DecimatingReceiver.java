@@ -0,0 +1,118 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.util;
+
+import frc.robot.util.LoggingPolicy.Phase;
+import frc.robot.util.LoggingPolicy.Tier;
+import java.util.HashMap;
+import java.util.Map;
+import org.littletonrobotics.junction.LogDataReceiver;
+import org.littletonrobotics.junction.LogTable;
+import org.littletonrobotics.junction.LogTable.LogValue;
+
+/**
+ * Wraps a data receiver so it only gets the keys that its {@link LoggingPolicy} says are due this
+ * loop.
+ *
+ * <p>Each tier is written together, whenever its period has passed since it was last written, so a
+ * 5 Hz tier is written every 10th loop. Keys that aren't due are left out of the table entirely.
+ * The log file and NetworkTables receivers only send values that changed since the previous table,
+ * so a left out key just holds its last value until its tier is next written.
+ *
+ * <p>The match phase is read from the driver station inputs in the table itself, so this never
+ * touches the driver station from the receiver thread, and replayed logs are thinned out the same
+ * way.
+ */
+public class DecimatingReceiver implements LogDataReceiver {
+  /** How early a tier can be written, to allow for loop timing jitter. */
+  private static final double PERIOD_TOLERANCE_SECS = 0.01;
+
+  private final LogDataReceiver receiver;
+  private final LoggingPolicy policy;
+  /** The tier of every key seen so far. Only touched by the receiver thread. */
+  private final Map<String, Tier> tiers = new HashMap<>();
+  /** When each tier was last written, in seconds, indexed by tier. */
+  private final double[] lastWrittenSecs = new double[Tier.values().length];
+  /** If each tier is due this loop, indexed by tier. */
+  private final boolean[] due = new boolean[Tier.values().length];
+
+  /**
+   * Constructs a new decimating receiver.
+   *
+   * @param receiver The receiver to pass the thinned out tables to.
+   * @param policy How often each key should be written.
+   */
+  public DecimatingReceiver(LogDataReceiver receiver, LoggingPolicy policy) {
+    this.receiver = receiver;
+    this.policy = policy;
+    for (int i = 0; i < lastWrittenSecs.length; i++) {
+      lastWrittenSecs[i] = Double.NEGATIVE_INFINITY;
+    }
+  }
+
+  @Override
+  public void start() {
+    receiver.start();
+  }
+
+  @Override
+  public void end() {
+    receiver.end();
+  }
+
+  @Override
+  public void putTable(LogTable table) throws InterruptedException {
+    double timestampSecs = table.getTimestamp() / 1e6;
+    Phase phase = getPhase(table);
+    boolean allDue = true;
+    for (Tier tier : Tier.values()) {
+      double rateHz = policy.getRateHz(phase, tier);
+      int i = tier.ordinal();
+      due[i] =
+          rateHz > 0 && timestampSecs - lastWrittenSecs[i] >= 1 / rateHz - PERIOD_TOLERANCE_SECS;
+      if (due[i]) {
+        lastWrittenSecs[i] = timestampSecs;
+      }
+      allDue &= due[i];
+    }
+    if (allDue) {
+      receiver.putTable(table);
+      return;
+    }
+
+    LogTable decimated = new LogTable(table.getTimestamp());
+    for (Map.Entry<String, LogValue> entry : table.getAll(false).entrySet()) {
+      // Keys are stored with the leading slash of the root table
+      String key = entry.getKey().substring(1);
+      Tier tier = tiers.computeIfAbsent(key, policy::getTier);
+      if (due[tier.ordinal()] || (!policy.isDecimatingInputs() && !LoggingPolicy.isOutput(key))) {
+        decimated.put(key, entry.getValue());
+      }
+    }
+    receiver.putTable(decimated);
+  }
+
+  /** Returns the match phase logged in a table. */
+  private static Phase getPhase(LogTable table) {
+    if (!table.get("DriverStation/Enabled", false)) {
+      return Phase.DISABLED;
+    } else if (table.get("DriverStation/Autonomous", false)) {
+      return Phase.AUTONOMOUS;
+    } else if (table.get("DriverStation/Test", false)) {
+      return Phase.TEST;
+    }
+    return Phase.TELEOP;
+  }
+}
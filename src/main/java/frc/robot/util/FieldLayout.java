@@ -0,0 +1,164 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.util;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.wpilibj.DriverStation;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The AprilTag layout of the field, loaded once and shared by everything that needs it.
+ *
+ * <p>Parsing the layout takes a while, so {@link #preload()} can start loading it on a background
+ * thread early in robot init. {@link #getInstance()} waits for it to finish.
+ *
+ * <p>Besides the WPILib layout, the position of every tag is kept in primitive arrays indexed by
+ * tag ID, so that distance and visibility checks don't need any {@code Pose3d} math or allocation.
+ * Immutable once loaded, so safe to use from any thread.
+ */
+public class FieldLayout {
+  private static final CompletableFuture<FieldLayout> instance = new CompletableFuture<>();
+  private static boolean loadStarted = false;
+
+  private final AprilTagFieldLayout layout;
+  // Indexed by tag ID. NaN for IDs without a tag.
+  private final double[] tagXMeters;
+  private final double[] tagYMeters;
+  private final double[] tagZMeters;
+  /** The direction each tag faces, as the cosine and sine of its yaw. */
+  private final double[] tagFacingX;
+  private final double[] tagFacingY;
+
+  /** Starts loading the layout on a background thread, if it hasn't started loading already. */
+  public static synchronized void preload() {
+    if (loadStarted) {
+      return;
+    }
+    loadStarted = true;
+    Thread loader = new Thread(FieldLayout::load, "FieldLayoutLoader");
+    loader.setDaemon(true);
+    loader.start();
+  }
+
+  /** Returns the field layout, waiting for it to load if it hasn't yet. */
+  public static FieldLayout getInstance() {
+    preload();
+    return instance.join();
+  }
+
+  private static void load() {
+    AprilTagFieldLayout layout;
+    try {
+      layout = AprilTagFieldLayout.loadFromResource(AprilTagFields.k2024Crescendo.m_resourceFile);
+    } catch (IOException e) {
+      DriverStation.reportError(
+          "Failed to load the AprilTag field layout! Failed with error " + e.getMessage(), false);
+      layout = null;
+    }
+    instance.complete(new FieldLayout(layout));
+  }
+
+  private FieldLayout(AprilTagFieldLayout layout) {
+    this.layout = layout;
+    int maxId = 0;
+    if (layout != null) {
+      for (AprilTag tag : layout.getTags()) {
+        maxId = Math.max(maxId, tag.ID);
+      }
+    }
+    tagXMeters = new double[maxId + 1];
+    tagYMeters = new double[maxId + 1];
+    tagZMeters = new double[maxId + 1];
+    tagFacingX = new double[maxId + 1];
+    tagFacingY = new double[maxId + 1];
+    Arrays.fill(tagXMeters, Double.NaN);
+    if (layout == null) {
+      return;
+    }
+    for (AprilTag tag : layout.getTags()) {
+      tagXMeters[tag.ID] = tag.pose.getX();
+      tagYMeters[tag.ID] = tag.pose.getY();
+      tagZMeters[tag.ID] = tag.pose.getZ();
+      double yaw = tag.pose.getRotation().getZ();
+      tagFacingX[tag.ID] = Math.cos(yaw);
+      tagFacingY[tag.ID] = Math.sin(yaw);
+    }
+  }
+
+  /** Returns the WPILib field layout, or empty if it failed to load. */
+  public Optional<AprilTagFieldLayout> getAprilTagFieldLayout() {
+    return Optional.ofNullable(layout);
+  }
+
+  /** Returns the highest tag ID on the field. IDs from 0 up to this can be iterated over. */
+  public int getMaxTagId() {
+    return tagXMeters.length - 1;
+  }
+
+  /** Returns if there's a tag with an ID on the field. */
+  public boolean hasTag(int id) {
+    return id >= 0 && id < tagXMeters.length && !Double.isNaN(tagXMeters[id]);
+  }
+
+  /** Returns the X coordinate of a tag, in meters, or NaN if there's no tag with the ID. */
+  public double getTagXMeters(int id) {
+    return hasTag(id) ? tagXMeters[id] : Double.NaN;
+  }
+
+  /** Returns the Y coordinate of a tag, in meters, or NaN if there's no tag with the ID. */
+  public double getTagYMeters(int id) {
+    return hasTag(id) ? tagYMeters[id] : Double.NaN;
+  }
+
+  /**
+   * Returns the distance from a point on the floor to a tag.
+   *
+   * @param id The ID of the tag.
+   * @param xMeters The X coordinate of the point.
+   * @param yMeters The Y coordinate of the point.
+   * @return The distance, in meters, or NaN if there's no tag with the ID.
+   */
+  public double getDistanceToTag(int id, double xMeters, double yMeters) {
+    if (!hasTag(id)) {
+      return Double.NaN;
+    }
+    double dx = tagXMeters[id] - xMeters;
+    double dy = tagYMeters[id] - yMeters;
+    double dz = tagZMeters[id];
+    return Math.sqrt(dx * dx + dy * dy + dz * dz);
+  }
+
+  /**
+   * Returns if a tag faces a point on the floor, which is required for it to be seen from there.
+   *
+   * @param id The ID of the tag.
+   * @param xMeters The X coordinate of the point.
+   * @param yMeters The Y coordinate of the point.
+   * @return If the point is in front of the tag. False if there's no tag with the ID.
+   */
+  public boolean isTagFacing(int id, double xMeters, double yMeters) {
+    if (!hasTag(id)) {
+      return false;
+    }
+    double dx = xMeters - tagXMeters[id];
+    double dy = yMeters - tagYMeters[id];
+    return dx * tagFacingX[id] + dy * tagFacingY[id] > 0;
+  }
+}
@@ -0,0 +1,80 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A log key that is built once and reused, so that logging on the hot path doesn't build strings.
+ *
+ * <p>Keys are interned: {@link #of(String)} returns the same handle every time it's called with the
+ * same path. Each key also caches its children, so after the first call, {@link #child(String)} and
+ * {@link #key(String)} with a literal name are just a map lookup and never allocate. Prefixes that
+ * depend on the instance, such as a module index or a camera name, should be built once in the
+ * constructor and kept in a field.
+ *
+ * <p>Safe to use from any thread.
+ */
+public final class LogKey {
+  private static final ConcurrentHashMap<String, LogKey> registry = new ConcurrentHashMap<>();
+
+  private final String path;
+  private final ConcurrentHashMap<String, LogKey> children = new ConcurrentHashMap<>();
+
+  private LogKey(String path) {
+    this.path = path;
+  }
+
+  /**
+   * Returns the key with a path, creating it the first time.
+   *
+   * @param path The full path of the key, such as "Odometry/Estimator".
+   */
+  public static LogKey of(String path) {
+    return registry.computeIfAbsent(path, LogKey::new);
+  }
+
+  /**
+   * Returns a child of this key, creating it the first time.
+   *
+   * @param name The name of the child, relative to this key. May contain slashes.
+   */
+  public LogKey child(String name) {
+    LogKey child = children.get(name);
+    if (child == null) {
+      child = children.computeIfAbsent(name, n -> of(path + "/" + n));
+    }
+    return child;
+  }
+
+  /**
+   * Returns the full path of a child of this key, to pass to {@code Logger}.
+   *
+   * @param name The name of the child, relative to this key. May contain slashes.
+   */
+  public String key(String name) {
+    return child(name).path;
+  }
+
+  /** Returns the full path of this key, to pass to {@code Logger}. */
+  public String path() {
+    return path;
+  }
+
+  @Override
+  public String toString() {
+    return path;
+  }
+}
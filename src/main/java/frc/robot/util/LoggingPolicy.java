@@ -0,0 +1,176 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Decides how often each log key is written, so that purely diagnostic data doesn't fill the log
+ * file or the network at the full loop rate.
+ *
+ * <p>Every key belongs to a {@link Tier}, and each tier has its own rate for each {@link Phase} of
+ * the match. Keys are assigned to tiers with {@link #tag(String, Tier)}, and untagged keys are
+ * {@link Tier#CRITICAL}, so nothing is thinned out unless it's tagged. A policy only describes what
+ * to do, and is applied by a {@link DecimatingReceiver}, so each receiver can have its own policy.
+ *
+ * <p>Configure a policy before giving it to a receiver. It must not be changed afterwards.
+ */
+public class LoggingPolicy {
+  /** How important a key is, which decides how often it's written. */
+  public static enum Tier {
+    /** Needed to understand what the robot did, such as the pose and driver station state. */
+    CRITICAL,
+    /** Setpoints and other control data that is useful at a lower rate. */
+    CONTROL,
+    /** Data only useful when debugging, such as motor currents and tuning outputs. */
+    DIAGNOSTIC
+  }
+
+  /** The part of the match the robot is in. */
+  public static enum Phase {
+    DISABLED,
+    AUTONOMOUS,
+    TELEOP,
+    TEST
+  }
+
+  /** The rate at which every tier is written by default, in hertz, indexed by tier. */
+  private static final double[] DEFAULT_RATES_HZ = {50, 25, 5};
+  /** The rate at which every tier is written while disabled by default, in hertz. */
+  private static final double[] DEFAULT_DISABLED_RATES_HZ = {50, 5, 1};
+
+  /** The rate of each tier in each phase, in hertz, indexed by phase then tier. */
+  private final double[][] ratesHz = new double[Phase.values().length][];
+  /** The tagged key patterns, in the order they were added. */
+  private final List<Pattern> patterns = new ArrayList<>();
+  /** The length of each pattern, used to pick the most specific one. */
+  private final List<Integer> patternLengths = new ArrayList<>();
+  /** The tier of each pattern. */
+  private final List<Tier> patternTiers = new ArrayList<>();
+  /** If inputs can be thinned out too, and not just outputs. */
+  private boolean decimateInputs = false;
+
+  /** Constructs a policy with the default rates and no tagged keys. */
+  public LoggingPolicy() {
+    for (Phase phase : Phase.values()) {
+      ratesHz[phase.ordinal()] =
+          (phase == Phase.DISABLED ? DEFAULT_DISABLED_RATES_HZ : DEFAULT_RATES_HZ).clone();
+    }
+  }
+
+  /**
+   * Assigns every key matching a pattern to a tier. If several patterns match a key, the longest
+   * one wins.
+   *
+   * @param pattern The full key, without a leading slash, such as
+   *     "RealOutputs/SwerveSubsystem/yawAlign". Matches the key itself and everything under it. A
+   *     {@code *} matches any part of one level, so "Drive/* Module/*Amps" matches the currents of
+   *     every module.
+   * @param tier The tier of the matching keys.
+   * @return This policy, for chaining.
+   */
+  public LoggingPolicy tag(String pattern, Tier tier) {
+    StringBuilder regex = new StringBuilder();
+    String[] parts = pattern.split("\\*", -1);
+    for (int i = 0; i < parts.length; i++) {
+      if (i > 0) {
+        regex.append("[^/]*");
+      }
+      regex.append(Pattern.quote(parts[i]));
+    }
+    regex.append("(/.*)?");
+    patterns.add(Pattern.compile(regex.toString()));
+    patternLengths.add(pattern.length());
+    patternTiers.add(tier);
+    return this;
+  }
+
+  /**
+   * Sets the rate of a tier in every phase.
+   *
+   * @param tier The tier.
+   * @param rateHz How often the tier is written, in hertz. 0 to never write it.
+   * @return This policy, for chaining.
+   */
+  public LoggingPolicy setRate(Tier tier, double rateHz) {
+    for (Phase phase : Phase.values()) {
+      setRate(phase, tier, rateHz);
+    }
+    return this;
+  }
+
+  /**
+   * Sets the rate of a tier in one phase.
+   *
+   * @param phase The phase.
+   * @param tier The tier.
+   * @param rateHz How often the tier is written, in hertz. 0 to never write it.
+   * @return This policy, for chaining.
+   */
+  public LoggingPolicy setRate(Phase phase, Tier tier, double rateHz) {
+    ratesHz[phase.ordinal()][tier.ordinal()] = rateHz;
+    return this;
+  }
+
+  /**
+   * Sets if inputs can be thinned out too. Off by default, since log replay needs every input from
+   * every loop to reproduce the outputs, so it should stay off for log files.
+   *
+   * @param decimateInputs If inputs should follow their tier like outputs do.
+   * @return This policy, for chaining.
+   */
+  public LoggingPolicy setDecimateInputs(boolean decimateInputs) {
+    this.decimateInputs = decimateInputs;
+    return this;
+  }
+
+  /** Returns if inputs can be thinned out too. */
+  public boolean isDecimatingInputs() {
+    return decimateInputs;
+  }
+
+  /** Returns how often a tier is written in a phase, in hertz. */
+  public double getRateHz(Phase phase, Tier tier) {
+    return ratesHz[phase.ordinal()][tier.ordinal()];
+  }
+
+  /**
+   * Returns if a key is an output rather than an input.
+   *
+   * @param key The full key, without a leading slash.
+   */
+  public static boolean isOutput(String key) {
+    return key.startsWith("RealOutputs/") || key.startsWith("ReplayOutputs/");
+  }
+
+  /**
+   * Returns the tier of a key. Matches every pattern, so callers should cache the result.
+   *
+   * @param key The full key, without a leading slash.
+   */
+  public Tier getTier(String key) {
+    Tier tier = Tier.CRITICAL;
+    int bestLength = -1;
+    for (int i = 0; i < patterns.size(); i++) {
+      if (patternLengths.get(i) > bestLength && patterns.get(i).matcher(key).matches()) {
+        tier = patternTiers.get(i);
+        bestLength = patternLengths.get(i);
+      }
+    }
+    return tier;
+  }
+}
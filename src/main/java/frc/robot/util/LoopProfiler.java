@@ -0,0 +1,236 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.util;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Times each part of the robot loop, so that a loop overrun can be pinned on whatever caused it.
+ *
+ * <p>Each timed part is a {@link Section}. Subsystems time their own {@code periodic()} with a
+ * section made once in a field, and every command's {@code execute()} is timed automatically once
+ * {@link #startCommandTiming()} is called. For each section, the percentiles and max of the last
+ * {@link #WINDOW_SIZE} loops are logged every {@link #LOG_PERIOD_SECS}, and when the robot is
+ * disabled, a summary of the whole time it was enabled is logged.
+ *
+ * <p>Timing a section and logging the percentiles never allocate, except the first time a command
+ * runs. Only use from the main loop.
+ */
+public class LoopProfiler {
+  /** How many samples the percentiles are taken over. 5 seconds of loops at 50 Hz. */
+  private static final int WINDOW_SIZE = 250;
+  /** How often the percentiles are logged. */
+  private static final double LOG_PERIOD_SECS = 1;
+  /** The width of each summary histogram bucket. */
+  private static final long SUMMARY_BUCKET_NANOS = 100_000;
+  /** The number of summary histogram buckets, the last being everything longer. */
+  private static final int SUMMARY_BUCKETS = 501;
+
+  private static final LogKey LOG_KEY = LogKey.of("LoopProfiler");
+  private static final List<Section> sections = new ArrayList<>();
+  private static final Map<String, Section> commandSections = new HashMap<>();
+  /** Scratch space for sorting a window. */
+  private static final long[] sortScratch = new long[WINDOW_SIZE];
+  /** When the last section finished, for timing commands. */
+  private static long checkpointNanos = System.nanoTime();
+  private static double lastLogSecs = Double.NEGATIVE_INFINITY;
+  /** If the robot was enabled at the start of this loop. */
+  private static boolean enabled = false;
+
+  private LoopProfiler() {
+    throw new UnsupportedOperationException("This is a utility class!");
+  }
+
+  /**
+   * Returns the section with a name, creating it the first time.
+   *
+   * @param name The name of the section, such as "SwerveSubsystem.periodic()".
+   */
+  public static Section section(String name) {
+    for (Section section : sections) {
+      if (section.name.equals(name)) {
+        return section;
+      }
+    }
+    Section section = new Section(name);
+    sections.add(section);
+    return section;
+  }
+
+  /**
+   * Times every command's {@code execute()} from now on.
+   *
+   * <p>The scheduler only reports when a command has finished executing, so each command is timed
+   * from the previous checkpoint, which is the end of the last subsystem or command that was timed.
+   * The first command of each loop also includes the scheduler polling the buttons.
+   */
+  public static void startCommandTiming() {
+    CommandScheduler.getInstance().onCommandExecute(LoopProfiler::recordCommand);
+  }
+
+  /**
+   * Marks the start of a loop. Starts a new summary if the robot was just enabled, and logs the
+   * summary if it was just disabled. Should be called before anything in the loop is timed.
+   */
+  public static void startLoop() {
+    boolean isEnabled = DriverStation.isEnabled();
+    if (isEnabled && !enabled) {
+      for (Section section : sections) {
+        section.resetSummary();
+      }
+    } else if (!isEnabled && enabled) {
+      logSummary();
+    }
+    enabled = isEnabled;
+    checkpointNanos = System.nanoTime();
+  }
+
+  /**
+   * Logs the percentiles of every section if they're due. Should be called at the end of every
+   * loop, after everything has been timed.
+   */
+  public static void endLoop() {
+    double nowSecs = Logger.getRealTimestamp() / 1e6;
+    if (nowSecs - lastLogSecs < LOG_PERIOD_SECS) {
+      return;
+    }
+    lastLogSecs = nowSecs;
+    for (Section section : sections) {
+      section.logWindow();
+    }
+  }
+
+  /** Logs how long each section took while the robot was enabled. */
+  private static void logSummary() {
+    List<String> lines = new ArrayList<>();
+    lines.add(
+        String.format("%-40s %8s %8s %8s %8s", "Section", "P50 ms", "P95 ms", "P99 ms", "Max ms"));
+    for (Section section : sections) {
+      if (section.summaryCount == 0) {
+        continue;
+      }
+      lines.add(
+          String.format(
+              "%-40s %8.2f %8.2f %8.2f %8.2f",
+              section.name,
+              section.summaryPercentileMs(0.5),
+              section.summaryPercentileMs(0.95),
+              section.summaryPercentileMs(0.99),
+              section.summaryMaxNanos / 1e6));
+    }
+    Logger.recordOutput(LOG_KEY.key("Summary"), lines.toArray(new String[0]));
+  }
+
+  /** Times a command that just finished executing. */
+  private static void recordCommand(Command command) {
+    Section section = commandSections.get(command.getName());
+    if (section == null) {
+      section = section("Commands/" + command.getName() + ".execute()");
+      commandSections.put(command.getName(), section);
+    }
+    section.record(checkpointNanos);
+  }
+
+  /** One timed part of the robot loop. */
+  public static class Section {
+    private final String name;
+    private final LogKey logKey;
+    /** The durations of the last {@link #WINDOW_SIZE} samples. */
+    private final long[] windowNanos = new long[WINDOW_SIZE];
+    /** The number of samples ever recorded. Sample {@code n} lives at {@code n % WINDOW_SIZE}. */
+    private long sampleCount = 0;
+    /** The number of samples recorded in each summary bucket since the robot was enabled. */
+    private final long[] summaryHistogram = new long[SUMMARY_BUCKETS];
+    private long summaryCount = 0;
+    private long summaryMaxNanos = 0;
+
+    private Section(String name) {
+      this.name = name;
+      logKey = LOG_KEY.child(name);
+    }
+
+    /**
+     * Records that the section ran from a start time until now, and marks now as the latest
+     * checkpoint.
+     *
+     * @param startNanos When the section started, from {@link System#nanoTime()}.
+     */
+    public void record(long startNanos) {
+      long nowNanos = System.nanoTime();
+      recordDuration(nowNanos - startNanos);
+      checkpointNanos = nowNanos;
+    }
+
+    /**
+     * Records a duration measured some other way.
+     *
+     * @param durationNanos How long the section took.
+     */
+    public void recordDuration(long durationNanos) {
+      windowNanos[(int) (sampleCount % WINDOW_SIZE)] = durationNanos;
+      sampleCount++;
+      if (enabled) {
+        int bucket = (int) Math.min(durationNanos / SUMMARY_BUCKET_NANOS, SUMMARY_BUCKETS - 1);
+        summaryHistogram[bucket]++;
+        summaryCount++;
+        summaryMaxNanos = Math.max(summaryMaxNanos, durationNanos);
+      }
+    }
+
+    /** Logs the percentiles and max of the window. */
+    private void logWindow() {
+      int count = (int) Math.min(sampleCount, WINDOW_SIZE);
+      if (count == 0) {
+        return;
+      }
+      System.arraycopy(windowNanos, 0, sortScratch, 0, count);
+      Arrays.sort(sortScratch, 0, count);
+      Logger.recordOutput(logKey.key("P50Ms"), sortScratch[(int) (count * 0.5)] / 1e6);
+      Logger.recordOutput(logKey.key("P95Ms"), sortScratch[(int) (count * 0.95)] / 1e6);
+      Logger.recordOutput(logKey.key("P99Ms"), sortScratch[(int) (count * 0.99)] / 1e6);
+      Logger.recordOutput(logKey.key("MaxMs"), sortScratch[count - 1] / 1e6);
+    }
+
+    private void resetSummary() {
+      Arrays.fill(summaryHistogram, 0);
+      summaryCount = 0;
+      summaryMaxNanos = 0;
+    }
+
+    /**
+     * Estimates a percentile since the robot was enabled. Returns the upper edge of the bucket the
+     * percentile falls in, or the max if it is in the overflow bucket.
+     */
+    private double summaryPercentileMs(double percentile) {
+      long target = (long) Math.ceil(summaryCount * percentile);
+      long seen = 0;
+      for (int i = 0; i < SUMMARY_BUCKETS - 1; i++) {
+        seen += summaryHistogram[i];
+        if (seen >= target) {
+          return (i + 1) * SUMMARY_BUCKET_NANOS / 1e6;
+        }
+      }
+      return summaryMaxNanos / 1e6;
+    }
+  }
+}
@@ -0,0 +1,158 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.subsystems.swerve;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.math.MathUtil;
+import org.junit.jupiter.api.Test;
+
+class PoseHistoryTest {
+  private static final double EPSILON = 1e-9;
+
+  private final double[] pose = new double[3];
+
+  @Test
+  void emptyHistoryHasNoPoses() {
+    PoseHistory history = new PoseHistory(10);
+    assertFalse(history.getPoseAt(0, pose));
+    assertTrue(history.getPoseAt(0).isEmpty());
+    assertTrue(Double.isNaN(history.getOldestTimestamp()));
+    assertTrue(Double.isNaN(history.getNewestTimestamp()));
+  }
+
+  @Test
+  void interpolatesBetweenSamples() {
+    PoseHistory history = new PoseHistory(10);
+    history.add(1.0, 0, 0, 0, 0, 0, 0);
+    history.add(1.1, 1, 2, 0.5, 0, 0, 0);
+
+    assertTrue(history.getPoseAt(1.025, pose));
+    assertArrayEquals(new double[] {0.25, 0.5, 0.125}, pose, EPSILON);
+    assertTrue(history.getPoseAt(1.0, pose));
+    assertArrayEquals(new double[] {0, 0, 0}, pose, EPSILON);
+  }
+
+  @Test
+  void findsSamplesWithUnevenTimestamps() {
+    // Gaps from 1 ms to 300 ms, so guesses from the average period land on the wrong sample
+    double[] timestamps = {0, 0.001, 0.002, 0.05, 0.051, 0.35, 0.36, 0.37, 0.5, 0.502};
+    PoseHistory history = new PoseHistory(timestamps.length);
+    for (double timestamp : timestamps) {
+      history.add(timestamp, 10 * timestamp, -3 * timestamp, 0, 0, 0, 0);
+    }
+
+    // X and Y are linear in time, so every lookup between samples has an exact answer
+    for (double timestamp = 0; timestamp < 0.502; timestamp += 0.0005) {
+      assertTrue(history.getPoseAt(timestamp, pose), "timestamp " + timestamp);
+      assertEquals(10 * timestamp, pose[0], EPSILON, "timestamp " + timestamp);
+      assertEquals(-3 * timestamp, pose[1], EPSILON, "timestamp " + timestamp);
+    }
+  }
+
+  @Test
+  void wrapsAroundWhenFull() {
+    PoseHistory history = new PoseHistory(10);
+    for (int i = 0; i < 25; i++) {
+      history.add(i * 0.02, i, 0, 0, 0, 0, 0);
+    }
+
+    // Only samples 15 through 24 are left
+    assertEquals(0.30, history.getOldestTimestamp(), EPSILON);
+    assertEquals(0.48, history.getNewestTimestamp(), EPSILON);
+    assertFalse(history.getPoseAt(0.29, pose));
+    assertTrue(history.getPoseAt(history.getOldestTimestamp(), pose));
+    assertEquals(15, pose[0], EPSILON);
+    // Between the sample at the end of the ring and the one at the start
+    assertTrue(history.getPoseAt(0.39, pose));
+    assertEquals(19.5, pose[0], EPSILON);
+    assertTrue(history.getPoseAt(0.41, pose));
+    assertEquals(20.5, pose[0], EPSILON);
+    assertTrue(history.getPoseAt(0.47, pose));
+    assertEquals(23.5, pose[0], EPSILON);
+  }
+
+  @Test
+  void rejectsLookupsBeforeOldestSample() {
+    PoseHistory history = new PoseHistory(10);
+    history.add(1.0, 1, 2, 3, 0, 0, 0);
+    history.add(1.1, 2, 3, 3, 0, 0, 0);
+
+    double[] untouched = {7, 8, 9};
+    assertFalse(history.getPoseAt(0.999, untouched));
+    assertArrayEquals(new double[] {7, 8, 9}, untouched);
+    assertTrue(history.getPoseAt(0.999).isEmpty());
+  }
+
+  @Test
+  void extrapolatesAfterNewestSample() {
+    PoseHistory history = new PoseHistory(10);
+    history.add(1.0, 0, 0, 0, 0, 0, 0);
+    history.add(1.1, 1, 2, 0.5, 2, -1, 0.4);
+
+    assertTrue(history.getPoseAt(1.1, pose));
+    assertArrayEquals(new double[] {1, 2, 0.5}, pose, EPSILON);
+    assertTrue(history.getPoseAt(1.2, pose));
+    assertArrayEquals(new double[] {1.2, 1.9, 0.54}, pose, EPSILON);
+    assertTrue(history.getPoseAt(1.1 + PoseHistory.MAX_EXTRAPOLATION_SECS, pose));
+    assertArrayEquals(new double[] {1.5, 1.75, 0.6}, pose, EPSILON);
+
+    double[] untouched = {7, 8, 9};
+    assertFalse(history.getPoseAt(1.1 + PoseHistory.MAX_EXTRAPOLATION_SECS + 0.01, untouched));
+    assertArrayEquals(new double[] {7, 8, 9}, untouched);
+  }
+
+  @Test
+  void interpolatesHeadingAcrossPi() {
+    PoseHistory history = new PoseHistory(10);
+    history.add(0, 0, 0, Math.PI - 0.1, 0, 0, 0);
+    history.add(1, 0, 0, -Math.PI + 0.1, 0, 0, 0);
+
+    // The short way round, through pi, not the long way through 0
+    assertTrue(history.getPoseAt(0.5, pose));
+    assertEquals(0, MathUtil.angleModulus(pose[2] - Math.PI), EPSILON);
+    assertTrue(history.getPoseAt(0.25, pose));
+    assertEquals(0, MathUtil.angleModulus(pose[2] - (Math.PI - 0.05)), EPSILON);
+  }
+
+  @Test
+  void ignoresOutOfOrderSamples() {
+    PoseHistory history = new PoseHistory(10);
+    history.add(1.0, 0, 0, 0, 0, 0, 0);
+    history.add(1.1, 1, 0, 0, 0, 0, 0);
+    history.add(1.05, 100, 0, 0, 0, 0, 0);
+
+    assertEquals(1.1, history.getNewestTimestamp(), EPSILON);
+    assertTrue(history.getPoseAt(1.05, pose));
+    assertEquals(0.5, pose[0], EPSILON);
+  }
+
+  @Test
+  void clearRemovesEverySample() {
+    PoseHistory history = new PoseHistory(10);
+    history.add(1.0, 0, 0, 0, 0, 0, 0);
+    history.add(1.1, 1, 0, 0, 0, 0, 0);
+    history.clear();
+
+    assertFalse(history.getPoseAt(1.05, pose));
+    history.add(5.0, 3, 0, 0, 0, 0, 0);
+    assertEquals(5.0, history.getOldestTimestamp(), EPSILON);
+    assertTrue(history.getPoseAt(5.0, pose));
+    assertEquals(3, pose[0], EPSILON);
+  }
+}
@@ -0,0 +1,264 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.subsystems.swerve;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks {@link SwervePoseEstimator} against WPILib's {@link SwerveDrivePoseEstimator}. Both are
+ * fed the same synthetic drive, sampled at {@link Module#ODOMETRY_FREQUENCY}, with the same trust.
+ */
+class SwervePoseEstimatorTest {
+  private static final double SAMPLE_PERIOD_SECS = 1 / Module.ODOMETRY_FREQUENCY;
+  /** The same odometry trust as {@link SwerveSubsystem}. */
+  private static final Matrix<N3, N1> STATE_STD_DEVS = VecBuilder.fill(0.15, 0.15, 0.1);
+  private static final Matrix<N3, N1> VISION_STD_DEVS = VecBuilder.fill(0.3, 0.3, 0.5);
+  private static final Pose2d START_POSE = new Pose2d(2, 4, Rotation2d.fromDegrees(30));
+  /** The gyro doesn't read the field heading, so the gyro offset is exercised too. */
+  private static final double START_GYRO_RADIANS = 1.2;
+  private static final Translation2d[] MODULE_TRANSLATIONS = {
+    new Translation2d(0.3, 0.3),
+    new Translation2d(0.3, -0.3),
+    new Translation2d(-0.3, 0.3),
+    new Translation2d(-0.3, -0.3)
+  };
+
+  /**
+   * How far apart the estimators may end up when odometry and vision agree on the heading. They do
+   * the same math in a different order, so only rounding separates them.
+   */
+  private static final double EXACT_TOLERANCE = 1e-6;
+  /**
+   * How far apart the estimators may end up in X and Y when a vision measurement also corrects the
+   * heading. WPILib scales the correction as a twist, which curves it, while SwervePoseEstimator
+   * scales X, Y and heading separately. For the 0.05 rad, 0.4 m errors used here that's about 2 mm.
+   */
+  private static final double TWIST_TOLERANCE_METERS = 5e-3;
+
+  private final SwerveDriveKinematics kinematics = new SwerveDriveKinematics(MODULE_TRANSLATIONS);
+
+  // The state of the synthetic drive
+  private double timestamp;
+  private Pose2d truePose;
+  private double gyroRadians;
+  private final double[] distancesMeters = new double[4];
+  private final Rotation2d[] moduleAngles = new Rotation2d[4];
+
+  private SwervePoseEstimator ours;
+  private SwerveDrivePoseEstimator wpilib;
+
+  @BeforeEach
+  void setUp() {
+    timestamp = 0;
+    truePose = START_POSE;
+    gyroRadians = START_GYRO_RADIANS;
+    for (int i = 0; i < 4; i++) {
+      distancesMeters[i] = 0;
+      moduleAngles[i] = new Rotation2d();
+    }
+    ours =
+        new SwervePoseEstimator(
+            MODULE_TRANSLATIONS,
+            new Rotation2d(gyroRadians),
+            modulePositions(),
+            START_POSE,
+            STATE_STD_DEVS,
+            VISION_STD_DEVS);
+    wpilib =
+        new SwerveDrivePoseEstimator(
+            kinematics,
+            new Rotation2d(gyroRadians),
+            modulePositions(),
+            START_POSE,
+            STATE_STD_DEVS,
+            VISION_STD_DEVS);
+  }
+
+  @Test
+  void straightLineMatchesWPILib() {
+    drive(new ChassisSpeeds(2, 0.5, 0), 2);
+    assertPosesEqual(wpilib.getEstimatedPosition(), ours.getEstimatedPosition(), EXACT_TOLERANCE);
+    assertPosesEqual(truePose, ours.getEstimatedPosition(), EXACT_TOLERANCE);
+  }
+
+  @Test
+  void arcMatchesWPILib() {
+    drive(new ChassisSpeeds(1.5, 0, 0.8), 3);
+    drive(new ChassisSpeeds(1, -0.5, -1.5), 2);
+    assertPosesEqual(wpilib.getEstimatedPosition(), ours.getEstimatedPosition(), EXACT_TOLERANCE);
+    assertPosesEqual(truePose, ours.getEstimatedPosition(), EXACT_TOLERANCE);
+  }
+
+  @Test
+  void driveWithVisionMatchesWPILib() {
+    // Vision that sees the robot 0.3 m off from where the wheels say, a few loops late
+    FieldOffset visionBias = new FieldOffset(0.3, -0.2, 0);
+    double[] captureTimestamps = new double[6];
+    Pose2d[] capturedPoses = new Pose2d[6];
+    for (int i = 0; i < 600; i++) {
+      double t = i * SAMPLE_PERIOD_SECS;
+      step(new ChassisSpeeds(2 * Math.cos(0.5 * t), 1.5 * Math.sin(0.3 * t), Math.sin(0.7 * t)));
+      captureTimestamps[i % 6] = timestamp;
+      capturedPoses[i % 6] = visionBias.apply(truePose);
+      if (i >= 5 && i % 3 == 0) {
+        int captured = (i - 5) % 6;
+        addVisionMeasurement(capturedPoses[captured], captureTimestamps[captured]);
+      }
+    }
+    assertPosesEqual(wpilib.getEstimatedPosition(), ours.getEstimatedPosition(), EXACT_TOLERANCE);
+  }
+
+  @Test
+  void headingCorrectionMatchesWPILib() {
+    drive(new ChassisSpeeds(1.5, 0, 0.8), 1);
+    addVisionMeasurement(new FieldOffset(0.3, 0.25, 0.05).apply(truePose), timestamp);
+    drive(new ChassisSpeeds(1.5, 0.5, -0.5), 1);
+    assertPosesEqual(
+        wpilib.getEstimatedPosition(), ours.getEstimatedPosition(), TWIST_TOLERANCE_METERS);
+  }
+
+  @Test
+  void lateVisionInsideHistoryMatchesWPILib() {
+    drive(new ChassisSpeeds(1.5, 0, 0.8), 1);
+    double captureTimestamp = timestamp;
+    Pose2d capturedPose = new FieldOffset(-0.4, 0.2, 0).apply(truePose);
+    // Captured a second ago, still inside the history window
+    drive(new ChassisSpeeds(1, 0.5, -0.5), 1);
+    Pose2d before = ours.getEstimatedPosition();
+    addVisionMeasurement(capturedPose, captureTimestamp);
+
+    assertPosesEqual(wpilib.getEstimatedPosition(), ours.getEstimatedPosition(), EXACT_TOLERANCE);
+    // Applied a third of the way from the estimate to the vision pose, and carried to the present
+    double correction =
+        before.getTranslation().getDistance(ours.getEstimatedPosition().getTranslation());
+    assertEquals(Math.hypot(0.4, 0.2) / 3, correction, EXACT_TOLERANCE);
+
+    drive(new ChassisSpeeds(-1, 0, 1), 0.5);
+    assertPosesEqual(wpilib.getEstimatedPosition(), ours.getEstimatedPosition(), EXACT_TOLERANCE);
+  }
+
+  @Test
+  void visionOutsideHistoryIsRejected() {
+    drive(new ChassisSpeeds(1.5, 0, 0.8), 1);
+    double captureTimestamp = timestamp;
+    Pose2d capturedPose = new FieldOffset(-0.4, 0.2, 0.1).apply(truePose);
+    drive(new ChassisSpeeds(1, 0.5, -0.5), SwervePoseEstimator.HISTORY_SECS + 0.5);
+    Pose2d before = ours.getEstimatedPosition();
+    addVisionMeasurement(capturedPose, captureTimestamp);
+
+    assertPosesEqual(before, ours.getEstimatedPosition(), 0);
+    assertPosesEqual(wpilib.getEstimatedPosition(), ours.getEstimatedPosition(), EXACT_TOLERANCE);
+  }
+
+  @Test
+  void resetPositionMatchesWPILib() {
+    drive(new ChassisSpeeds(1.5, 0, 0.8), 1);
+    addVisionMeasurement(new FieldOffset(0.3, -0.2, 0).apply(truePose), timestamp);
+    drive(new ChassisSpeeds(1, 0.5, -0.5), 0.5);
+    double captureTimestamp = timestamp;
+
+    Pose2d resetPose = new Pose2d(10, 3, Rotation2d.fromDegrees(-120));
+    ours.resetPosition(new Rotation2d(gyroRadians), modulePositions(), resetPose);
+    wpilib.resetPosition(new Rotation2d(gyroRadians), modulePositions(), resetPose);
+    truePose = resetPose;
+    assertPosesEqual(resetPose, ours.getEstimatedPosition(), 0);
+
+    // The history was cleared, so a measurement from before the reset is ignored
+    addVisionMeasurement(new Pose2d(), captureTimestamp - SAMPLE_PERIOD_SECS);
+    assertPosesEqual(resetPose, ours.getEstimatedPosition(), 0);
+
+    drive(new ChassisSpeeds(-1, 1, 1.2), 1);
+    assertPosesEqual(wpilib.getEstimatedPosition(), ours.getEstimatedPosition(), EXACT_TOLERANCE);
+    assertPosesEqual(truePose, ours.getEstimatedPosition(), EXACT_TOLERANCE);
+  }
+
+  /** Drives at constant robot-relative speeds for a while. */
+  private void drive(ChassisSpeeds speeds, double durationSecs) {
+    int samples = (int) Math.round(durationSecs / SAMPLE_PERIOD_SECS);
+    for (int i = 0; i < samples; i++) {
+      step(speeds);
+    }
+  }
+
+  /** Advances the drive by one sample and feeds it to both estimators. */
+  private void step(ChassisSpeeds speeds) {
+    timestamp += SAMPLE_PERIOD_SECS;
+    truePose =
+        truePose.exp(
+            new Twist2d(
+                speeds.vxMetersPerSecond * SAMPLE_PERIOD_SECS,
+                speeds.vyMetersPerSecond * SAMPLE_PERIOD_SECS,
+                speeds.omegaRadiansPerSecond * SAMPLE_PERIOD_SECS));
+    gyroRadians += speeds.omegaRadiansPerSecond * SAMPLE_PERIOD_SECS;
+    SwerveModuleState[] states = kinematics.toSwerveModuleStates(speeds);
+    for (int i = 0; i < 4; i++) {
+      distancesMeters[i] += states[i].speedMetersPerSecond * SAMPLE_PERIOD_SECS;
+      moduleAngles[i] = states[i].angle;
+    }
+    ours.updateWithTime(timestamp, new Rotation2d(gyroRadians), modulePositions());
+    wpilib.updateWithTime(timestamp, new Rotation2d(gyroRadians), modulePositions());
+  }
+
+  private void addVisionMeasurement(Pose2d visionPose, double captureTimestamp) {
+    ours.addVisionMeasurement(visionPose, captureTimestamp, VISION_STD_DEVS);
+    wpilib.addVisionMeasurement(visionPose, captureTimestamp, VISION_STD_DEVS);
+  }
+
+  private SwerveModulePosition[] modulePositions() {
+    SwerveModulePosition[] positions = new SwerveModulePosition[4];
+    for (int i = 0; i < 4; i++) {
+      positions[i] = new SwerveModulePosition(distancesMeters[i], moduleAngles[i]);
+    }
+    return positions;
+  }
+
+  private static void assertPosesEqual(Pose2d expected, Pose2d actual, double toleranceMeters) {
+    assertEquals(expected.getX(), actual.getX(), toleranceMeters, "X");
+    assertEquals(expected.getY(), actual.getY(), toleranceMeters, "Y");
+    assertEquals(
+        0,
+        MathUtil.angleModulus(
+            expected.getRotation().getRadians() - actual.getRotation().getRadians()),
+        Math.max(toleranceMeters, EXACT_TOLERANCE),
+        "heading");
+  }
+
+  /** A field-relative offset, for building vision poses that disagree with the odometry. */
+  private record FieldOffset(double dxMeters, double dyMeters, double dthetaRadians) {
+    Pose2d apply(Pose2d pose) {
+      return new Pose2d(
+          pose.getX() + dxMeters,
+          pose.getY() + dyMeters,
+          new Rotation2d(pose.getRotation().getRadians() + dthetaRadians));
+    }
+  }
+}
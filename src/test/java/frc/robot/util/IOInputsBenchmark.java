@@ -0,0 +1,171 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.util;
+
+import static edu.wpi.first.units.Units.*;
+
+import edu.wpi.first.units.Measure;
+import edu.wpi.first.units.Unit;
+import java.util.ArrayList;
+import java.util.List;
+import org.littletonrobotics.junction.LogTable;
+
+/**
+ * Measures what the IO inputs of the robot cost per loop when their fields are Measures, as they
+ * used to be, and when they're primitive doubles, as they are now. Runs on a dev machine, not the
+ * robot, so it lives with the tests to stay out of the deployed code. Run its main method from an
+ * IDE.
+ *
+ * <p>Only the fields that changed from Measures to doubles are compared, across the modules, gyro,
+ * flywheels, pivot, climber and feeder. For each field, the Measure side creates a new Measure and
+ * keeps it, like updateInputs did, then logs its value in the base unit, which is how AdvantageKit
+ * logs a Measure. The double side stores and logs a double. Prints the bytes allocated and the
+ * time taken per loop by each.
+ *
+ * <p>This stands in for comparing Allocations/MainLoopBytes in sim before and after the change,
+ * which can't be done directly since that metric was added along with it.
+ *
+ * <p>Usage: {@code IOInputsBenchmark}
+ */
+public class IOInputsBenchmark {
+  private static final int WARMUP_LOOPS = 200_000;
+  private static final int TIMED_LOOPS = 1_000_000;
+
+  /** One kind of device, and the units of the input fields it used to hold as Measures. */
+  private record Device(String name, int count, Unit<?>... measureUnits) {}
+
+  private static final Device[] DEVICES = {
+    new Device("Module", 4, Meters, MetersPerSecond, Volts, Amps, RadiansPerSecond, Volts, Amps),
+    new Device("Gyro", 1, RadiansPerSecond),
+    new Device(
+        "Flywheel",
+        1,
+        RPM,
+        RPM,
+        RPM,
+        Rotations,
+        RotationsPerSecond,
+        Volts,
+        Amps,
+        Rotations,
+        RotationsPerSecond,
+        Volts,
+        Amps,
+        Rotations,
+        RotationsPerSecond,
+        Volts,
+        Amps),
+    new Device(
+        "Pivot", 1, DegreesPerSecond, DegreesPerSecond, DegreesPerSecond, Volts, Amps, Volts, Amps),
+    new Device(
+        "Climber",
+        1,
+        RadiansPerSecond,
+        Volts,
+        Amps,
+        Volts,
+        Amps,
+        DegreesPerSecond,
+        DegreesPerSecond),
+    new Device("Feeder", 1, Rotations, RotationsPerSecond, Volts, Amps)
+  };
+
+  /** The totals of one side over the timed loops. */
+  private static class Totals {
+    private long nanos = 0;
+    private long allocatedBytes = 0;
+  }
+
+  /** The unit of every field, across every device. */
+  private final Unit<?>[] units;
+  /** The log key of every field, built once so neither side builds strings. */
+  private final String[] keys;
+  /** The fields of the Measure side. */
+  private final Measure<?>[] measures;
+  /** The fields of the double side. */
+  private final double[] values;
+  private final LogTable table = new LogTable(0);
+
+  public static void main(String[] args) {
+    IOInputsBenchmark benchmark = new IOInputsBenchmark();
+    Totals measureTotals = new Totals();
+    Totals doubleTotals = new Totals();
+    benchmark.run(true, WARMUP_LOOPS, new Totals());
+    benchmark.run(false, WARMUP_LOOPS, new Totals());
+    benchmark.run(true, TIMED_LOOPS, measureTotals);
+    benchmark.run(false, TIMED_LOOPS, doubleTotals);
+
+    System.out.printf(
+        "%d fields per loop, %d timed loops%n%n", benchmark.units.length, TIMED_LOOPS);
+    System.out.printf("%-16s %14s %14s%n", "", "ns/loop", "bytes/loop");
+    print("Measure fields", measureTotals);
+    print("double fields", doubleTotals);
+    if (!AllocationMeter.isSupported()) {
+      System.out.println("\nThis JVM can't measure allocations, so bytes/loop reads -1.");
+    }
+  }
+
+  private static void print(String name, Totals totals) {
+    System.out.printf(
+        "%-16s %14.1f %14.1f%n",
+        name,
+        (double) totals.nanos / TIMED_LOOPS,
+        AllocationMeter.isSupported() ? (double) totals.allocatedBytes / TIMED_LOOPS : -1);
+  }
+
+  private IOInputsBenchmark() {
+    List<Unit<?>> unitList = new ArrayList<>();
+    List<String> keyList = new ArrayList<>();
+    for (Device device : DEVICES) {
+      for (int i = 0; i < device.count(); i++) {
+        for (int j = 0; j < device.measureUnits().length; j++) {
+          unitList.add(device.measureUnits()[j]);
+          keyList.add(device.name() + i + "/Field" + j);
+        }
+      }
+    }
+    units = unitList.toArray(new Unit<?>[0]);
+    keys = keyList.toArray(new String[0]);
+    measures = new Measure<?>[units.length];
+    values = new double[units.length];
+  }
+
+  /**
+   * Fills and logs every field once per loop.
+   *
+   * @param useMeasures If the fields should be Measures rather than doubles.
+   * @param loops How many loops to run.
+   * @param totals The totals to add to.
+   */
+  private void run(boolean useMeasures, int loops, Totals totals) {
+    long startBytes = AllocationMeter.getAllocatedBytes();
+    long startNanos = System.nanoTime();
+    for (int loop = 0; loop < loops; loop++) {
+      if (useMeasures) {
+        for (int i = 0; i < units.length; i++) {
+          measures[i] = units[i].of(loop + i);
+          table.put(keys[i], measures[i].baseUnitMagnitude());
+        }
+      } else {
+        for (int i = 0; i < units.length; i++) {
+          values[i] = loop + i;
+          table.put(keys[i], values[i]);
+        }
+      }
+    }
+    totals.nanos += System.nanoTime() - startNanos;
+    totals.allocatedBytes += AllocationMeter.getAllocatedBytes() - startBytes;
+  }
+}
@@ -0,0 +1,164 @@
+// Copyright (c) 2024 FRC 167
+// https://www.thebluealliance.com/team/167
+// https://github.com/icrobotics-team167
+//
+// This program is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License
+// version 3 as published by the Free Software Foundation or
+// available in the root directory of this project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+
+package frc.robot.util;
+
+import org.littletonrobotics.junction.LogTable;
+
+/**
+ * Measures the per loop cost of logging with keys built by string concatenation, as the code used
+ * to, and with {@link LogKey} handles built once, as it does now. Runs on a dev machine, not the
+ * robot, so it lives with the tests to stay out of the deployed code. Run its main method from an
+ * IDE.
+ *
+ * <p>Each loop logs what one robot loop logged from the call sites that were moved to {@link
+ * LogKey}: the inputs of the four modules and one camera, the camera's frame and gating stats, the
+ * pose estimator's metrics and the vision scheduler's stats. Both sides log the same values to the
+ * same table, so the difference is only the keys. Prints the time taken and bytes allocated per
+ * loop by each.
+ *
+ * <p>Usage: {@code LogKeyBenchmark}
+ */
+public class LogKeyBenchmark {
+  private static final int WARMUP_LOOPS = 200_000;
+  private static final int TIMED_LOOPS = 1_000_000;
+
+  /** The totals of one side over the timed loops. */
+  private static class Totals {
+    private long nanos = 0;
+    private long allocatedBytes = 0;
+  }
+
+  private final LogTable table = new LogTable(0);
+
+  // The prefixes the old code was passed or read from fields, so they aren't compile time constants
+  private String cameraName = "Camera_Module_v1";
+  private String estimatorPrefix = "Odometry/Estimator";
+  private String schedulerPrefix = "VisionPoseEstimator/Scheduler";
+
+  // The handles the code uses now, built once like in the constructors
+  private final LogKey[] moduleLogKeys = new LogKey[4];
+  private final LogKey cameraLogKey = LogKey.of("VisionPoseEstimator/" + cameraName);
+  private final LogKey estimatorLogKey = LogKey.of(estimatorPrefix);
+  private final LogKey schedulerLogKey = LogKey.of(schedulerPrefix);
+
+  public static void main(String[] args) {
+    LogKeyBenchmark benchmark = new LogKeyBenchmark();
+    Totals builtTotals = new Totals();
+    Totals cachedTotals = new Totals();
+    benchmark.run(false, WARMUP_LOOPS, new Totals());
+    benchmark.run(true, WARMUP_LOOPS, new Totals());
+    benchmark.run(false, TIMED_LOOPS, builtTotals);
+    benchmark.run(true, TIMED_LOOPS, cachedTotals);
+
+    System.out.printf("%d timed loops%n%n", TIMED_LOOPS);
+    System.out.printf("%-16s %14s %14s%n", "", "ns/loop", "bytes/loop");
+    print("Built keys", builtTotals);
+    print("LogKey handles", cachedTotals);
+    if (!AllocationMeter.isSupported()) {
+      System.out.println("\nThis JVM can't measure allocations, so bytes/loop reads -1.");
+    }
+  }
+
+  private static void print(String name, Totals totals) {
+    System.out.printf(
+        "%-16s %14.1f %14.1f%n",
+        name,
+        (double) totals.nanos / TIMED_LOOPS,
+        AllocationMeter.isSupported() ? (double) totals.allocatedBytes / TIMED_LOOPS : -1);
+  }
+
+  private LogKeyBenchmark() {
+    for (int i = 0; i < 4; i++) {
+      moduleLogKeys[i] = LogKey.of("Drive/" + i + " Module");
+    }
+  }
+
+  /**
+   * Logs one robot loop's worth of values, many times over.
+   *
+   * @param useLogKeys If the keys should come from {@link LogKey} handles rather than be built.
+   * @param loops How many loops to run.
+   * @param totals The totals to add to.
+   */
+  private void run(boolean useLogKeys, int loops, Totals totals) {
+    long startBytes = AllocationMeter.getAllocatedBytes();
+    long startNanos = System.nanoTime();
+    for (int loop = 0; loop < loops; loop++) {
+      if (useLogKeys) {
+        logWithLogKeys(loop);
+      } else {
+        logWithBuiltKeys(loop);
+      }
+    }
+    totals.nanos += System.nanoTime() - startNanos;
+    totals.allocatedBytes += AllocationMeter.getAllocatedBytes() - startBytes;
+  }
+
+  /** Logs the way the code did before {@link LogKey}. */
+  private void logWithBuiltKeys(double value) {
+    for (int i = 0; i < 4; i++) {
+      table.getSubtable("Drive/" + String.valueOf(i) + " Module").put("DrivePositionMeters", value);
+    }
+
+    table.getSubtable("VisionPoseEstimator/" + cameraName).put("Timestamp", value);
+    table.put("VisionPoseEstimator/" + cameraName + "/MaxPollMicros", value);
+    table.put("VisionPoseEstimator/" + cameraName + "/FreshFrames", value);
+    table.put("VisionPoseEstimator/" + cameraName + "/StaleFrames", value);
+    String gatingPrefix = "VisionPoseEstimator/" + cameraName + "/Gating";
+    table.put(gatingPrefix + "/OutlierRejections", value);
+    table.put(gatingPrefix + "/YawRejections", value);
+    table.put(gatingPrefix + "/SpinRejections", value);
+    table.put(gatingPrefix + "/DownweightedMeasurements", value);
+    table.put("VisionPoseEstimator/" + cameraName + "/Gating/LastResult", value);
+
+    table.put(estimatorPrefix + "/VisionUpdates", value);
+    table.put(estimatorPrefix + "/MeanVisionUpdateMicros", value);
+    table.put(estimatorPrefix + "/MaxVisionUpdateMicros", value);
+    table.put(estimatorPrefix + "/MeanOdometryUpdateMicros", value);
+
+    table.put(schedulerPrefix + "/SkippedCameraLoops/TooFast", value);
+    table.put(schedulerPrefix + "/SkippedCameraLoops/NoVisibleTags", value);
+    table.put(schedulerPrefix + "/DeferredFrames", value);
+    table.put(schedulerPrefix + "/EstimatedMsSaved", value);
+  }
+
+  /** Logs the same values the way the code does now. */
+  private void logWithLogKeys(double value) {
+    for (int i = 0; i < 4; i++) {
+      table.getSubtable(moduleLogKeys[i].path()).put("DrivePositionMeters", value);
+    }
+
+    table.getSubtable(cameraLogKey.path()).put("Timestamp", value);
+    table.put(cameraLogKey.key("MaxPollMicros"), value);
+    table.put(cameraLogKey.key("FreshFrames"), value);
+    table.put(cameraLogKey.key("StaleFrames"), value);
+    LogKey gatingLogKey = cameraLogKey.child("Gating");
+    table.put(gatingLogKey.key("OutlierRejections"), value);
+    table.put(gatingLogKey.key("YawRejections"), value);
+    table.put(gatingLogKey.key("SpinRejections"), value);
+    table.put(gatingLogKey.key("DownweightedMeasurements"), value);
+    table.put(cameraLogKey.key("Gating/LastResult"), value);
+
+    table.put(estimatorLogKey.key("VisionUpdates"), value);
+    table.put(estimatorLogKey.key("MeanVisionUpdateMicros"), value);
+    table.put(estimatorLogKey.key("MaxVisionUpdateMicros"), value);
+    table.put(estimatorLogKey.key("MeanOdometryUpdateMicros"), value);
+
+    table.put(schedulerLogKey.key("SkippedCameraLoops/TooFast"), value);
+    table.put(schedulerLogKey.key("SkippedCameraLoops/NoVisibleTags"), value);
+    table.put(schedulerLogKey.key("DeferredFrames"), value);
+    table.put(schedulerLogKey.key("EstimatedMsSaved"), value);
+  }
+}